@@ -0,0 +1,365 @@
+package com.mycompany.snake;
+
+import java.util.SplittableRandom;
+
+/**
+ * Arena
+ * Several snakes on one board: GameEngine's rules, plus snakes colliding with each other.
+ * Design notes:
+ *  - Same cells, Board (stepping and item placement included), SnakeBody, InputQueue and
+ *    GameMode constants as GameEngine, and the same rule order: a head is checked against the board before any tail moves, so running
+ *    into a tail that would leave this tick is still a crash, as in single player.
+ *  - All heads move at once. Two heads entering one cell both die; a dead snake's body is
+ *    cleared and it respawns (length 3, score 0) after RESPAWN_TICKS.
+ *  - Turns may name the tick they are meant for (a predicting client runs ahead of the
+ *    server); they wait in the queue until then, so a turn that arrives in time lands on
+ *    exactly the tick the client showed it on.
+ *  - tick() reports every change as Events (head added, tail removed, died, spawned, apple
+ *    moved, score, input ack). GameServer encodes those as deltas; a client mirror applies
+ *    the same Events to its own Arena, so both sides share one state representation.
+ *  - predict() + steer() + copyFrom() let a client run ahead of the server on its own copy
+ *    and roll back to the last authoritative state (see Prediction).
+ *  - Player ids are small ints (slots); not thread-safe apart from turn(), which only queues.
+ */
+public final class Arena {
+    public static final int MAX_PLAYERS = 32;
+    public static final int RESPAWN_TICKS = 10;
+    private static final int SPAWN_TRIES = 64;
+
+    /** Receives what a tick changed, in order; also what a mirror applies. */
+    public interface Events {
+        Events NONE = new Events() { };
+
+        default void head(int id, int cell) { }
+        default void tail(int id) { }
+        default void died(int id) { }
+        /** Snake id (re)appears with cells head first, heading dir. */
+        default void spawned(int id, int[] cells, int length, Direction dir) { }
+        default void apple(int cell) { }
+        default void golden(int cell) { }
+        default void score(int id, int score) { }
+        /** Player id's input with this sequence number was applied (or dropped) this tick. */
+        default void ack(int id, int seq) { }
+    }
+
+    private final int cols, rows;
+    private final Board board;
+    private final boolean wrapWalls;
+    private final SplittableRandom rng;
+
+    // Per player slot
+    private final SnakeBody[] snakes = new SnakeBody[MAX_PLAYERS];
+    private final Direction[] dirs = new Direction[MAX_PLAYERS];
+    private final boolean[] present = new boolean[MAX_PLAYERS];
+    private final boolean[] alive = new boolean[MAX_PLAYERS];
+    private final long[] respawnAt = new long[MAX_PLAYERS];
+    private final int[] scores = new int[MAX_PLAYERS];
+    private final InputQueue[] inputs = new InputQueue[MAX_PLAYERS]; // stamps carry client seqs
+    private final int[] ackedSeq = new int[MAX_PLAYERS];               // seq of the last turn consumed
+
+    // Tick scratch
+    private final int[] next = new int[MAX_PLAYERS];
+    private final int[] spawnCells = new int[3];
+
+    private int apple = GameEngine.NO_CELL, goldenApple = GameEngine.NO_CELL;
+    private long ticks;
+
+    public Arena(int cols, int rows, boolean wrapWalls, long seed) {
+        if (cols < 8 || rows < 4 || cols > GameEngine.MAX_SIZE || rows > GameEngine.MAX_SIZE)
+            throw new IllegalArgumentException("arena must be 8x4 to " + GameEngine.MAX_SIZE + "x" + GameEngine.MAX_SIZE);
+        this.cols = cols;
+        this.rows = rows;
+        this.wrapWalls = wrapWalls;
+        this.board = new Board(cols, rows);
+        this.rng = new SplittableRandom(seed);
+    }
+
+    // ---- Players ----
+
+    /** Adds a player; returns its id, or -1 if the arena is full. It spawns on the next tick. */
+    public int join() {
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (present[id]) continue;
+            present[id] = true;
+            alive[id] = false;
+            respawnAt[id] = ticks;
+            scores[id] = 0;
+            ensure(id);
+            snakes[id].clear();
+            inputs[id].clear();
+            ackedSeq[id] = 0;
+            return id;
+        }
+        return -1;
+    }
+
+    /** Removes a player and its snake; reported as died so mirrors clear it. */
+    public void leave(int id, Events out) {
+        if (!present[id]) return;
+        if (alive[id]) kill(id, out);
+        present[id] = false;
+    }
+
+    /**
+     * Any thread. Queues a turn tagged with the client's sequence number, to be applied at
+     * tick atTick (held until then), or as soon as possible when atTick has passed or is 0.
+     */
+    public boolean turn(int id, Direction d, int seq, long atTick) {
+        if (!present[id]) return false;
+        return inputs[id].offer(d, Math.max(0, Math.min(atTick, Integer.MAX_VALUE)) << 32 | (seq & 0xFFFFFFFFL));
+    }
+
+    // ---- Simulation ----
+
+    /** One step for every snake; changes go to out. */
+    public void tick(Events out) { step(out, true); }
+
+    /**
+     * A client's guess at the next tick: the same movement, eating and collision checks as
+     * tick(), but turns come from steer() instead of the input queues, nothing spawns, and a
+     * snake that would crash just stops; only the server decides deaths, apples and respawns.
+     */
+    public void predict(Events out) { step(out, false); }
+
+    private void step(Events out, boolean authoritative) {
+        ticks++;
+        if (authoritative && apple == GameEngine.NO_CELL) spawnApple(out);
+
+        // Turns, then where every head wants to go
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (!alive[id]) continue;
+            if (authoritative) applyInput(id, out);
+            next[id] = neighbor(snakes[id].head(), dirs[id]);
+        }
+
+        // Collisions against the board as it stands, and head-on (same target cell)
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (!alive[id]) continue;
+            int c = next[id];
+            boolean dead = c == GameEngine.NO_CELL || board.isBlocked(c);
+            for (int o = 0; o < MAX_PLAYERS && !dead; o++)
+                if (o != id && alive[o] && next[o] == c) dead = true;
+            if (dead) next[id] = GameEngine.NO_CELL; // marked; killed (or held, predicting) below
+        }
+        if (authoritative) {
+            for (int id = 0; id < MAX_PLAYERS; id++)
+                if (alive[id] && next[id] == GameEngine.NO_CELL) kill(id, out);
+        }
+
+        // Moves
+        boolean ateApple = false;
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (!alive[id] || next[id] == GameEngine.NO_CELL) continue;
+            int head = next[id];
+            SnakeBody s = snakes[id];
+            s.pushHead(head);
+            out.head(id, head);
+            boolean grew = false;
+            if (head == apple) {
+                scores[id]++;
+                grew = ateApple = true;
+                apple = GameEngine.NO_CELL;
+            } else if (head == goldenApple) {
+                scores[id] += GameMode.GOLDEN_POINTS;
+                grew = true;
+                goldenApple = GameEngine.NO_CELL;
+                out.golden(GameEngine.NO_CELL);
+            }
+            board.set(head, Board.SNAKE); // after the apple check: set() overwrites APPLE
+            if (grew) out.score(id, scores[id]);
+            else {
+                board.set(s.popTail(), Board.EMPTY);
+                out.tail(id);
+            }
+        }
+        if (!authoritative) return;
+        if (ateApple) spawnApple(out);
+
+        // Respawns
+        for (int id = 0; id < MAX_PLAYERS; id++)
+            if (present[id] && !alive[id] && respawnAt[id] <= ticks) spawn(id, out);
+    }
+
+    /** Predicting only: turns snake id now if d is a legal turn (same rule as a queued input). */
+    public boolean steer(int id, Direction d) {
+        if (!alive[id] || d == dirs[id] || d == dirs[id].opposite()) return false;
+        dirs[id] = d;
+        return true;
+    }
+
+    /** Makes this arena a copy of src (same size): the rollback point for prediction. */
+    public void copyFrom(Arena src) {
+        if (src.cols != cols || src.rows != rows) throw new IllegalArgumentException("arena size differs");
+        board.copyFrom(src.board);
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (src.snakes[id] != null) { ensure(id); snakes[id].copyFrom(src.snakes[id]); }
+            else if (snakes[id] != null) snakes[id].clear();
+        }
+        System.arraycopy(src.dirs, 0, dirs, 0, MAX_PLAYERS);
+        System.arraycopy(src.present, 0, present, 0, MAX_PLAYERS);
+        System.arraycopy(src.alive, 0, alive, 0, MAX_PLAYERS);
+        System.arraycopy(src.respawnAt, 0, respawnAt, 0, MAX_PLAYERS);
+        System.arraycopy(src.scores, 0, scores, 0, MAX_PLAYERS);
+        System.arraycopy(src.ackedSeq, 0, ackedSeq, 0, MAX_PLAYERS);
+        apple = src.apple;
+        goldenApple = src.goldenApple;
+        ticks = src.ticks;
+    }
+
+    private void applyInput(int id, Events out) {
+        InputQueue q = inputs[id];
+        Direction d;
+        boolean any = false;
+        while (q.peekStamp() >>> 32 <= ticks && (d = q.poll()) != null) {
+            any = true;
+            if (d == dirs[id] || d == dirs[id].opposite()) continue;
+            dirs[id] = d;
+            break;
+        }
+        if (any) {
+            ackedSeq[id] = (int) q.lastStamp();
+            out.ack(id, ackedSeq[id]);
+        }
+    }
+
+    private void kill(int id, Events out) {
+        SnakeBody s = snakes[id];
+        for (int i = 0; i < s.length(); i++) board.set(s.get(i), Board.EMPTY);
+        s.clear();
+        alive[id] = false;
+        respawnAt[id] = ticks + RESPAWN_TICKS;
+        scores[id] = 0;
+        out.died(id);
+    }
+
+    /** Three free cells in a row, heading right; retried next tick if none is found. */
+    private void spawn(int id, Events out) {
+        for (int t = 0; t < SPAWN_TRIES; t++) {
+            int c = board.randomEmpty(rng);
+            if (c < 0) return;
+            int x = x(c);
+            if (x < 2 || !board.isEmpty(c - 1) || !board.isEmpty(c - 2)) continue;
+            if (x + 1 < cols && !board.isEmpty(c + 1)) continue; // don't spawn facing a body
+            SnakeBody s = snakes[id];
+            s.clear();
+            for (int i = 0; i < 3; i++) {
+                spawnCells[i] = c - i;
+                s.addTail(c - i);
+                board.set(c - i, Board.SNAKE);
+            }
+            dirs[id] = Direction.RIGHT;
+            alive[id] = true;
+            scores[id] = 0;
+            out.spawned(id, spawnCells, 3, Direction.RIGHT);
+            return;
+        }
+    }
+
+    /** GameEngine's spawnApple() and GOLDEN spawn hook, in the same order (same RNG draws). */
+    private void spawnApple(Events out) {
+        apple = board.place(rng, Board.APPLE);
+        out.apple(apple);
+        if (apple != GameEngine.NO_CELL && goldenApple == GameEngine.NO_CELL && rng.nextInt(GameMode.GOLDEN_ODDS) == 0) {
+            goldenApple = board.place(rng, Board.GOLDEN);
+            out.golden(goldenApple);
+        }
+    }
+
+    // ---- Mirror: apply Events produced by another Arena ----
+
+    /** Events that replay a server's changes onto this arena (a client-side copy). */
+    public final Events mirror = new Events() {
+        @Override public void head(int id, int cell) {
+            snakes[id].pushHead(cell);
+            board.set(cell, Board.SNAKE);
+            if (cell == apple) apple = GameEngine.NO_CELL;
+            if (cell == goldenApple) goldenApple = GameEngine.NO_CELL;
+            if (snakes[id].length() > 1) dirs[id] = step(snakes[id].get(1), cell);
+        }
+        @Override public void tail(int id) { board.set(snakes[id].popTail(), Board.EMPTY); }
+        @Override public void died(int id) {
+            SnakeBody s = snakes[id];
+            if (s != null) for (int i = 0; i < s.length(); i++) board.set(s.get(i), Board.EMPTY);
+            if (s != null) s.clear();
+            alive[id] = false;
+            scores[id] = 0;
+        }
+        @Override public void spawned(int id, int[] cells, int length, Direction dir) {
+            ensure(id);
+            SnakeBody s = snakes[id];
+            for (int i = 0; i < s.length(); i++) board.set(s.get(i), Board.EMPTY);
+            s.clear();
+            for (int i = 0; i < length; i++) { s.addTail(cells[i]); board.set(cells[i], Board.SNAKE); }
+            dirs[id] = dir;
+            alive[id] = present[id] = true;
+        }
+        @Override public void apple(int cell) {
+            if (apple != GameEngine.NO_CELL && board.get(apple) == Board.APPLE) board.set(apple, Board.EMPTY);
+            apple = cell;
+            if (cell != GameEngine.NO_CELL) board.set(cell, Board.APPLE);
+        }
+        @Override public void golden(int cell) {
+            if (goldenApple != GameEngine.NO_CELL && board.get(goldenApple) == Board.GOLDEN) board.set(goldenApple, Board.EMPTY);
+            goldenApple = cell;
+            if (cell != GameEngine.NO_CELL) board.set(cell, Board.GOLDEN);
+        }
+        @Override public void score(int id, int score) { scores[id] = score; }
+        @Override public void ack(int id, int seq) { ackedSeq[id] = seq; }
+    };
+
+    private void ensure(int id) {
+        if (snakes[id] == null) {
+            snakes[id] = new SnakeBody(16);
+            inputs[id] = new InputQueue(GameEngine.INPUT_QUEUE);
+        }
+    }
+
+    /** Mirror only: jump to a server's tick number (from a snapshot or delta header). */
+    public void setTicks(long ticks) { this.ticks = ticks; }
+
+    /** Writes the whole state as Events: a keyframe for a joining client or viewer. */
+    public void describe(Events out) {
+        out.apple(apple);
+        out.golden(goldenApple);
+        int[] buf = new int[16];
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (!alive[id]) continue;
+            SnakeBody s = snakes[id];
+            if (buf.length < s.length()) buf = new int[Integer.highestOneBit(s.length()) << 1];
+            s.toArray(buf);
+            out.spawned(id, buf, s.length(), dirs[id]);
+            out.score(id, scores[id]);
+        }
+    }
+
+    // ---- Geometry and read-only view ----
+
+    /** GameEngine's WRAP or walled route: wrap if enabled, NO_CELL off the board. */
+    public int neighbor(int c, Direction d) { return wrapWalls ? board.wrapped(c, d) : board.walled(c, d); }
+
+    /** The direction that moves from one cell to an adjacent one. */
+    public Direction step(int from, int to) {
+        for (Direction d : Direction.values()) if (neighbor(from, d) == to) return d;
+        return Direction.RIGHT; // not adjacent: only after a desync, fixed by the next keyframe
+    }
+
+    public int x(int cell) { return cell % cols; }
+    public int y(int cell) { return cell / cols; }
+    public int cols() { return cols; }
+    public int rows() { return rows; }
+    public boolean isWrapWalls() { return wrapWalls; }
+    public long ticks() { return ticks; }
+    public int apple() { return apple; }
+    public int goldenApple() { return goldenApple; }
+    public boolean isAlive(int id) { return alive[id]; }
+    public boolean isPresent(int id) { return present[id]; }
+    public int score(int id) { return scores[id]; }
+    public Direction direction(int id) { return dirs[id]; }
+    public int snakeLength(int id) { return snakes[id] == null ? 0 : snakes[id].length(); }
+    /** i = 0 is the head. */
+    public int snakeCell(int id, int i) { return snakes[id].get(i); }
+    public byte cellKind(int cell) { return board.get(cell); }
+    public boolean isBlocked(int cell) { return board.isBlocked(cell); }
+    public int ackedSeq(int id) { return ackedSeq[id]; }
+    public int players() { int n = 0; for (boolean p : present) if (p) n++; return n; }
+}
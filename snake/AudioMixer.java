@@ -0,0 +1,252 @@
+package com.mycompany.snake;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AudioMixer
+ * Game sounds on a thread of their own: play() queues a clip and returns; the mixer thread
+ * sums whatever is playing into a small SourceDataLine buffer.
+ * Design notes:
+ *  - play() is called from GameLoop's tick with the engine lock held, so it must never
+ *    block: it's one CAS into a bounded lock-free queue (the slot/sequence scheme of
+ *    InputQueue), and a full queue drops the sound instead of waiting.
+ *  - Clips are 16-bit mono PCM synthesized once at construction; mixing is integer adds
+ *    into a reused buffer, so the audio thread allocates nothing while running.
+ *  - The line is kept fed (silence when nothing plays) in PERIOD_MS chunks with only
+ *    LINE_PERIODS of them buffered, so a new sound starts at most that far behind.
+ *    Blocking write() paces the thread; no timers or sleeps.
+ *  - Latency is measured per sound, from play() to when its first sample will leave the
+ *    line (queue wait plus what was still buffered). An underrun is a write that found
+ *    the line already drained, i.e. the thread fell behind and the speaker went silent.
+ *  - No audio device (servers, CI, headless): start() notes why and play() does nothing.
+ */
+public final class AudioMixer {
+    public enum Clip { EAT, GOLDEN, GAME_OVER, WON }
+
+    static final int RATE = 48_000;
+    static final int PERIOD_MS = 5;
+    private static final int LINE_PERIODS = 4;
+    private static final int PERIOD = RATE * PERIOD_MS / 1000;   // frames
+    private static final int VOICES = 8;
+    private static final int QUEUE = 16;
+    private static final Clip[] CLIPS = Clip.values();
+
+    private final short[][] pcm = new short[CLIPS.length][];
+    private final Events events = new Events(QUEUE);
+
+    // Voices: mixer thread only
+    private final short[][] voice = new short[VOICES][];
+    private final int[] voicePos = new int[VOICES];
+    private final long[] voiceStamp = new long[VOICES];  // play() time, 0 once measured
+    private final int[] mix = new int[PERIOD];
+    private final byte[] out = new byte[PERIOD * 2];
+
+    private volatile boolean muted;
+    private volatile Thread thread;
+    private volatile String status = "not started";
+
+    // Stats, written by the mixer thread
+    private volatile long played, underruns, lastLatency, maxLatency, totalLatency;
+
+    public AudioMixer() {
+        pcm[Clip.EAT.ordinal()] = tone(60, 660, 990, 0.45);
+        pcm[Clip.GOLDEN.ordinal()] = concat(tone(55, 1047, 1047, 0.4), tone(55, 1319, 1319, 0.4), tone(90, 1568, 1568, 0.4));
+        pcm[Clip.GAME_OVER.ordinal()] = tone(450, 440, 110, 0.5);
+        // A rising major arpeggio held on the octave: longer and lower than GOLDEN's chime
+        pcm[Clip.WON.ordinal()] = concat(tone(110, 523, 523, 0.45), tone(110, 659, 659, 0.45),
+                tone(110, 784, 784, 0.45), tone(500, 1047, 1047, 0.45));
+    }
+
+    /** Opens the default output and starts mixing; a no-op if already running. */
+    public synchronized void start() {
+        if (thread != null) return;
+        Thread t = new Thread(this::run, "snake-audio");
+        t.setDaemon(true);
+        t.setPriority(Thread.MAX_PRIORITY);
+        thread = t;
+        t.start();
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) t.interrupt();
+    }
+
+    /** Any thread, never blocks. Dropped when muted, not running, or the queue is full. */
+    public void play(Clip c) {
+        if (muted || thread == null) return;
+        events.offer(c.ordinal(), System.nanoTime());
+    }
+
+    public void setMuted(boolean muted) { this.muted = muted; }
+    public boolean isMuted() { return muted; }
+
+    private void run() {
+        SourceDataLine line;
+        AudioFormat format = new AudioFormat(RATE, 16, 1, true, false);
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, out.length * LINE_PERIODS);
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            status = "no audio output (" + e.getMessage() + ")";
+            thread = null;
+            return;
+        }
+        status = String.format("%.0f kHz, %d ms buffer", RATE / 1000.0, line.getBufferSize() / 2 * 1000 / RATE);
+        line.start();
+        boolean primed = false;
+        try {
+            while (thread == Thread.currentThread()) {
+                mix(PERIOD);
+                int buffered = line.getBufferSize() - line.available();
+                if (primed && buffered <= 0) underruns++;
+                measure(System.nanoTime(), buffered / 2 * 1_000_000_000L / RATE);
+                line.write(out, 0, out.length);
+                primed = true;
+            }
+        } finally {
+            line.stop();
+            line.close();
+            status = "stopped";
+        }
+    }
+
+    /** Takes queued sounds, then mixes the next frames into out. Mixer thread (or a test) only. */
+    void mix(int frames) {
+        int c;
+        while ((c = events.poll()) >= 0) start(pcm[c], events.lastStamp());
+        java.util.Arrays.fill(mix, 0, frames, 0);
+        for (int v = 0; v < VOICES; v++) {
+            short[] s = voice[v];
+            if (s == null) continue;
+            int p = voicePos[v], n = Math.min(frames, s.length - p);
+            for (int i = 0; i < n; i++) mix[i] += s[p + i];
+            voicePos[v] = p + n;
+            if (p + n >= s.length) voice[v] = null;
+        }
+        for (int i = 0; i < frames; i++) {
+            int m = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[2 * i] = (byte) m;
+            out[2 * i + 1] = (byte) (m >> 8);
+        }
+    }
+
+    /** A free voice, else the one closest to its end. */
+    private void start(short[] clip, long stamp) {
+        int pick = 0, left = Integer.MAX_VALUE;
+        for (int v = 0; v < VOICES; v++) {
+            if (voice[v] == null) { pick = v; break; }
+            int l = voice[v].length - voicePos[v];
+            if (l < left) { left = l; pick = v; }
+        }
+        voice[pick] = clip;
+        voicePos[pick] = 0;
+        voiceStamp[pick] = stamp;
+        played++;
+    }
+
+    /** Sounds started in the chunk about to be written reach the speaker after what's buffered. */
+    private void measure(long now, long bufferedNanos) {
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceStamp[v] == 0) continue;
+            long l = now - voiceStamp[v] + bufferedNanos;
+            voiceStamp[v] = 0;
+            lastLatency = l;
+            totalLatency += l;
+            if (l > maxLatency) maxLatency = l;
+        }
+    }
+
+    // ---- Stats ----
+
+    /** Output format and buffer, or why there is no sound. */
+    public String status() { return muted ? "muted" : status; }
+    public boolean isPlaying() { return thread != null; }
+    public long played() { return played; }
+    public long dropped() { return events.rejected(); }
+    public long underruns() { return underruns; }
+    public long lastLatencyNanos() { return lastLatency; }
+    public long maxLatencyNanos() { return maxLatency; }
+    public long meanLatencyNanos() { long n = played; return n == 0 ? 0 : totalLatency / n; }
+
+    // ---- Clips ----
+
+    /** A triangle-wave tone gliding from f0 to f1 Hz, with a short attack and a linear fade. */
+    private static short[] tone(int ms, double f0, double f1, double volume) {
+        int n = RATE * ms / 1000, attack = RATE / 500;
+        short[] s = new short[n];
+        double phase = 0;
+        for (int i = 0; i < n; i++) {
+            double t = i / (double) n;
+            phase += (f0 + (f1 - f0) * t) / RATE;
+            double tri = 4 * Math.abs(phase - Math.floor(phase + 0.5)) - 1;
+            double env = Math.min(1, i / (double) attack) * (1 - t);
+            s[i] = (short) (tri * env * volume * Short.MAX_VALUE);
+        }
+        return s;
+    }
+
+    private static short[] concat(short[]... parts) {
+        int n = 0;
+        for (short[] p : parts) n += p.length;
+        short[] s = new short[n];
+        int at = 0;
+        for (short[] p : parts) { System.arraycopy(p, 0, s, at, p.length); at += p.length; }
+        return s;
+    }
+
+    /** Many producers, one consumer (the mixer thread); same scheme as InputQueue. */
+    private static final class Events {
+        private final int mask;
+        private final byte[] clips;
+        private final long[] stamps;
+        private final AtomicLongArray seq;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private long head, lastStamp;              // consumer only
+
+        Events(int capacity) {
+            mask = capacity - 1;
+            clips = new byte[capacity];
+            stamps = new long[capacity];
+            seq = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) seq.set(i, i);
+        }
+
+        void offer(int clip, long nanos) {
+            for (;;) {
+                long pos = tail.get();
+                int i = (int) pos & mask;
+                long dif = seq.get(i) - pos;
+                if (dif == 0) {
+                    if (!tail.compareAndSet(pos, pos + 1)) continue;
+                    clips[i] = (byte) clip;
+                    stamps[i] = nanos;
+                    seq.lazySet(i, pos + 1);
+                    return;
+                }
+                if (dif < 0) { rejected.incrementAndGet(); return; }
+            }
+        }
+
+        /** Next clip ordinal, or -1 if empty. */
+        int poll() {
+            int i = (int) head & mask;
+            if (seq.get(i) != head + 1) return -1;
+            int c = clips[i];
+            lastStamp = stamps[i];
+            seq.lazySet(i, head + mask + 1);
+            head++;
+            return c;
+        }
+
+        long lastStamp() { return lastStamp; }
+        long rejected() { return rejected.get(); }
+    }
+}
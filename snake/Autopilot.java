@@ -0,0 +1,389 @@
+package com.mycompany.snake;
+
+/**
+ * Autopilot
+ * Built-in Controller: A* to the nearest apple, checked against a path back to the tail.
+ * Design notes:
+ *  - All search state (visit stamps, distances, parents, the BFS queue / A* heap) lives in
+ *    int arrays sized to the board and reused every tick. A visit stamp replaces clearing,
+ *    so a decision costs what the search touches, not the board size, and allocates nothing.
+ *  - A* with a (wrap-aware) Manhattan heuristic keeps that small on open boards, where a
+ *    plain BFS would flood everything closer than the apple. Steps come from
+ *    GameEngine.neighbor(), so portals are just edges; they can make the heuristic
+ *    overestimate, which costs path length, never safety.
+ *  - Moving obstacles are judged where they stand, and the search reruns every tick; only
+ *    the first step dodges a cell an obstacle is about to step into.
+ *  - Apple step: play the shortest path on a virtual snake and take its first step only if
+ *    the virtual head can still reach the virtual tail; a snake that can follow its own
+ *    tail can't be trapped.
+ *  - Otherwise chase the tail (the reachable neighbour farthest from it, to waste space
+ *    slowly), and as a last resort take the neighbour with the largest open area.
+ *  - Tail chasing can settle into a loop that never uncovers the apple on a crowded board.
+ *    After STALL_BOARDS board-areas of ticks without eating, the tail chase leans towards
+ *    the apple; after twice that, the apple path is taken even if it fails the tail check,
+ *    so every game ends (the cycle below can't be joined mid-game, so it isn't the fallback).
+ *  - The tail cell counts as blocked: GameEngine checks the new head before the tail moves.
+ *  - Hamiltonian mode (optional; even row count, no obstacles or portals) follows a fixed cycle through
+ *    every cell, taking shortcuts towards the apple only while the whole body stays behind
+ *    the head in cycle order. That invariant means it never dies and eventually fills the
+ *    board. If the snake isn't on the cycle (turned by hand, unsupported board) it falls
+ *    back to the search above.
+ *  - Not thread-safe; one instance per game or worker.
+ */
+public final class Autopilot implements Controller {
+    private static final Direction[] DIRS = Direction.values();
+    private static final int STALL_BOARDS = 4;
+
+    private final boolean hamiltonian;
+
+    // Search buffers, (re)sized to the board on newGame
+    private int[] seen = new int[0];      // seen[c] == stamp: visited in the current search
+    private int[] dist = new int[0];
+    private int[] parent = new int[0];
+    private int[] queue = new int[0];     // BFS queue, or A*'s heap
+    private int[] heapPos = new int[0];
+    private int[] fkey = new int[0];
+    private int[] occ = new int[0];       // occ[c] == occStamp: virtual body in safeAfterPath
+    private int stamp, occStamp, heapSize;
+
+    // Hamiltonian cycle: pos[c] is c's index along it, order[i] the cell at index i
+    private int[] pos, order;
+    private int cycleCols, cycleRows;
+    private boolean onCycle;
+    private long lastTick = -1;
+    private long lastMeal;                // tick the score last changed
+    private int lastScore;
+
+    public Autopilot() { this(false); }
+
+    public Autopilot(boolean hamiltonian) { this.hamiltonian = hamiltonian; }
+
+    @Override public void newGame(GameEngine e) {
+        int n = e.cols() * e.rows();
+        if (seen.length != n) {
+            seen = new int[n];
+            dist = new int[n];
+            parent = new int[n];
+            queue = new int[n];
+            heapPos = new int[n];
+            fkey = new int[n];
+            occ = new int[n];
+            stamp = occStamp = 0;
+        }
+        lastTick = -1;
+        lastMeal = 0;
+        lastScore = 0;
+    }
+
+    @Override public Direction decide(GameEngine e) {
+        if (seen.length != e.cols() * e.rows()) newGame(e);
+        int head = e.snakeCell(0);
+        if (e.score() != lastScore || e.ticks() < lastMeal) { lastScore = e.score(); lastMeal = e.ticks(); }
+        Direction d = null;
+        if (hamiltonian) {
+            // Re-check alignment whenever someone else may have steered since our last move.
+            if (e.ticks() != lastTick + 1 || e.ticks() == 0) onCycle = alignedToCycle(e);
+            if (onCycle) d = cycleStep(e, head);
+        }
+        if (d == null) d = searchStep(e, head);
+        if (d != null && e.obstacleEntering(e.neighbor(head, d))) d = dodge(e, head, d);
+        lastTick = e.ticks();
+        return d == e.direction() ? null : d;
+    }
+
+    // ---- Search ----
+
+    private Direction searchStep(GameEngine e, int head) {
+        int tail = e.snakeCell(e.snakeLength() - 1);
+        long hungry = e.ticks() - lastMeal, stall = (long) STALL_BOARDS * e.cols() * e.rows();
+
+        // 1. Shortest path to an apple (the nearer one first), if after walking it the snake
+        //    could still reach its tail.
+        int a = e.apple(), b = e.goldenApple();
+        if (b != GameEngine.NO_CELL && (a == GameEngine.NO_CELL || h(e, head, b) < h(e, head, a))) { int t = a; a = b; b = t; }
+        for (int i = 0; i < 2; i++) {
+            int target = i == 0 ? a : b;
+            if (target == GameEngine.NO_CELL || astar(e, head, target, 0) == GameEngine.NO_CELL) continue;
+            int step = firstStep(head, target);
+            if (safeAfterPath(e, head, target) || hungry > 2 * stall) return dirTo(e, head, step);
+        }
+
+        // 2. Follow the tail: among neighbours that can reach it, the one farthest from it;
+        //    when stalled, the one nearest the apple first.
+        bfs(e, tail);
+        int toward = hungry > stall ? a : GameEngine.NO_CELL;
+        Direction best = null;
+        int bestDist = -1, bestH = Integer.MAX_VALUE;
+        for (Direction d : DIRS) {
+            int c = e.neighbor(head, d);
+            if (!open(e, c) || seen[c] != stamp) continue;
+            int hc = toward == GameEngine.NO_CELL ? 0 : h(e, c, toward);
+            if (hc < bestH || hc == bestH && dist[c] > bestDist) { bestH = hc; bestDist = dist[c]; best = d; }
+        }
+        if (best != null) return best;
+
+        // 3. Trapped: the neighbour with the most room.
+        int bestArea = -1;
+        for (Direction d : DIRS) {
+            int c = e.neighbor(head, d);
+            if (!open(e, c)) continue;
+            int area = floodCount(e, c);
+            if (area > bestArea) { bestArea = area; best = d; }
+        }
+        return best;
+    }
+
+    /** Another way out of head with the most room, or d if every one is closed or about to be. */
+    private Direction dodge(GameEngine e, int head, Direction d) {
+        Direction best = d;
+        int bestArea = -1;
+        for (Direction o : DIRS) {
+            int c = e.neighbor(head, o);
+            if (!open(e, c) || e.obstacleEntering(c)) continue;
+            int area = floodCount(e, c);
+            if (area > bestArea) { bestArea = area; best = o; }
+        }
+        return best;
+    }
+
+    /** The head may enter c next tick. The tail counts as blocked: it moves only after the head. */
+    private static boolean open(GameEngine e, int c) {
+        return c != GameEngine.NO_CELL && !e.isBlocked(c);
+    }
+
+    /** BFS from 'from' over free cells, filling dist for every cell it reaches. */
+    private void bfs(GameEngine e, int from) {
+        int s = nextStamp();
+        int qh = 0, qt = 0;
+        seen[from] = s;
+        dist[from] = 0;
+        queue[qt++] = from;
+        while (qh < qt) {
+            int c = queue[qh++];
+            for (Direction d : DIRS) {
+                int n = e.neighbor(c, d);
+                if (!open(e, n) || seen[n] == s) continue;
+                seen[n] = s;
+                dist[n] = dist[c] + 1;
+                queue[qt++] = n;
+            }
+        }
+    }
+
+    /** Grid distance ignoring obstacles (wrap-aware); A*'s admissible heuristic. */
+    private static int h(GameEngine e, int c, int goal) {
+        int dx = Math.abs(e.x(c) - e.x(goal)), dy = Math.abs(e.y(c) - e.y(goal));
+        if (e.isWrapWalls()) { dx = Math.min(dx, e.cols() - dx); dy = Math.min(dy, e.rows() - dy); }
+        return dx + dy;
+    }
+
+    /**
+     * A* from 'from' towards goal over free cells, leaving parent links for firstStep().
+     * With vs == 0 "free" means free on the board; otherwise not in the virtual body marked
+     * with occ stamp vs (the goal itself may be occupied, e.g. a tail, and is never entered
+     * directly from 'from'). Returns goal, or NO_CELL if it can't be reached.
+     */
+    private int astar(GameEngine e, int from, int goal, int vs) {
+        int s = nextStamp();
+        heapSize = 0;
+        seen[from] = s;
+        dist[from] = 0;
+        parent[from] = GameEngine.NO_CELL;
+        push(from, h(e, from, goal));
+        while (heapSize > 0) {
+            int c = pop();
+            for (Direction d : DIRS) {
+                int n = e.neighbor(c, d);
+                if (n == GameEngine.NO_CELL) continue;
+                if (n == goal && (vs == 0 || c != from)) { parent[n] = c; return goal; }
+                if (vs == 0 ? e.isBlocked(n) : occ[n] == vs || e.isBlocked(n) && e.cellKind(n) != Board.SNAKE) continue;
+                int g = dist[c] + 1;
+                if (seen[n] == s && g >= dist[n]) continue;
+                dist[n] = g;
+                parent[n] = c;
+                if (seen[n] != s) { seen[n] = s; push(n, g + h(e, n, goal)); }
+                else { fkey[n] = g + h(e, n, goal); siftUp(heapPos[n]); }
+            }
+        }
+        return GameEngine.NO_CELL;
+    }
+
+    // Binary min-heap of cells in queue[0..heapSize), by fkey then deeper (larger dist) first.
+    private void push(int c, int f) {
+        fkey[c] = f;
+        queue[heapSize] = c;
+        heapPos[c] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int top = queue[0];
+        int last = queue[--heapSize];
+        if (heapSize > 0) { queue[0] = last; heapPos[last] = 0; siftDown(0); }
+        return top;
+    }
+
+    private boolean before(int a, int b) {
+        return fkey[a] < fkey[b] || fkey[a] == fkey[b] && dist[a] > dist[b];
+    }
+
+    private void siftUp(int i) {
+        int c = queue[i];
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (!before(c, queue[p])) break;
+            queue[i] = queue[p];
+            heapPos[queue[i]] = i;
+            i = p;
+        }
+        queue[i] = c;
+        heapPos[c] = i;
+    }
+
+    private void siftDown(int i) {
+        int c = queue[i];
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= heapSize) break;
+            int m = l + 1 < heapSize && before(queue[l + 1], queue[l]) ? l + 1 : l;
+            if (!before(queue[m], c)) break;
+            queue[i] = queue[m];
+            heapPos[queue[i]] = i;
+            i = m;
+        }
+        queue[i] = c;
+        heapPos[c] = i;
+    }
+
+    private int nextStamp() {
+        if (stamp == Integer.MAX_VALUE) { java.util.Arrays.fill(seen, 0); stamp = 0; }
+        return ++stamp;
+    }
+
+    private int firstStep(int from, int target) {
+        int c = target;
+        while (parent[c] != from) c = parent[c];
+        return c;
+    }
+
+    /**
+     * Plays the path to target on a virtual snake and asks whether its head can still reach
+     * its tail there. After k steps the body is the path (newest first) followed by the
+     * first len - k + 1 real cells (one extra for the apple eaten), so only those are marked.
+     */
+    private boolean safeAfterPath(GameEngine e, int head, int target) {
+        int len = e.snakeLength();
+        if (len < 3) return true;
+        int k = 0;
+        for (int c = target; c != head; c = parent[c]) k++;
+        if (occStamp == Integer.MAX_VALUE) { java.util.Arrays.fill(occ, 0); occStamp = 0; }
+        int vs = ++occStamp;
+        int vtail = GameEngine.NO_CELL, i = 0;
+        for (int c = target; c != head && i <= len; c = parent[c], i++) { occ[c] = vs; vtail = c; }
+        int keep = len - k + 1;                     // real cells still in the body
+        for (int j = 0; j < keep; j++) occ[vtail = e.snakeCell(j)] = vs;
+        return astar(e, target, vtail, vs) != GameEngine.NO_CELL;
+    }
+
+    private int floodCount(GameEngine e, int from) {
+        int s = nextStamp();
+        int qh = 0, qt = 0;
+        seen[from] = s;
+        queue[qt++] = from;
+        while (qh < qt) {
+            int c = queue[qh++];
+            for (Direction d : DIRS) {
+                int n = e.neighbor(c, d);
+                if (!open(e, n) || seen[n] == s) continue;
+                seen[n] = s;
+                queue[qt++] = n;
+            }
+        }
+        return qt;
+    }
+
+    private static Direction dirTo(GameEngine e, int from, int to) {
+        for (Direction d : DIRS) if (e.neighbor(from, d) == to) return d;
+        return null;
+    }
+
+    // ---- Hamiltonian cycle ----
+
+    private boolean alignedToCycle(GameEngine e) {
+        if (e.obstacleCount() > 0 || e.portalCount() > 0 || e.rows() % 2 != 0 || e.rows() < 2) return false;
+        if (pos == null || cycleCols != e.cols() || cycleRows != e.rows()) buildCycle(e.cols(), e.rows());
+        // The body must run backwards along the cycle from the head, in one direction or
+        // the other; if it runs the other way, flip the cycle.
+        for (int flip = 0; flip < 2; flip++) {
+            if (bodyFollowsCycle(e)) return true;
+            reverseCycle();
+        }
+        return false;
+    }
+
+    /**
+     * Tail to head must climb in cycle order, and either lie contiguous along the cycle or
+     * leave the head at least len cells short of the tail; cycleStep() keeps both true.
+     */
+    private boolean bodyFollowsCycle(GameEngine e) {
+        int n = order.length, len = e.snakeLength();
+        int tailPos = pos[e.snakeCell(len - 1)];
+        int prev = -1;
+        for (int i = len - 1; i >= 0; i--) {
+            int rel = Math.floorMod(pos[e.snakeCell(i)] - tailPos, n);
+            if (rel <= prev) return false;
+            prev = rel;
+        }
+        return prev == len - 1 || prev <= n - 1 - len;
+    }
+
+    /** Rows snake through columns 1..cols-1; column 0 leads back up to the start. */
+    private void buildCycle(int cols, int rows) {
+        int n = cols * rows;
+        order = new int[n];
+        pos = new int[n];
+        int k = 0;
+        for (int y = 0; y < rows; y++) {
+            if (y % 2 == 0) for (int x = 1; x < cols; x++) order[k++] = y * cols + x;
+            else for (int x = cols - 1; x >= 1; x--) order[k++] = y * cols + x;
+        }
+        for (int y = rows - 1; y >= 0; y--) order[k++] = y * cols;
+        for (int i = 0; i < n; i++) pos[order[i]] = i;
+        cycleCols = cols;
+        cycleRows = rows;
+    }
+
+    private void reverseCycle() {
+        int n = order.length;
+        for (int i = 0, j = n - 1; i < j; i++, j--) { int t = order[i]; order[i] = order[j]; order[j] = t; }
+        for (int i = 0; i < n; i++) pos[order[i]] = i;
+    }
+
+    /**
+     * Next cycle cell, or a shortcut: the neighbour furthest ahead in cycle order that doesn't
+     * pass the apple, keeps a margin before the tail, and is only taken while the snake fills
+     * less than half the board. Every body cell stays between tail and head in cycle order.
+     */
+    private Direction cycleStep(GameEngine e, int head) {
+        int n = order.length, len = e.snakeLength();
+        int tailPos = pos[e.snakeCell(len - 1)];
+        int headRel = Math.floorMod(pos[head] - tailPos, n);
+        int next = order[(pos[head] + 1) % n];
+        if (len < n / 2) {
+            int goal = n - 1;
+            if (e.apple() != GameEngine.NO_CELL) goal = Math.floorMod(pos[e.apple()] - tailPos, n);
+            if (e.goldenApple() != GameEngine.NO_CELL) goal = Math.min(goal, Math.floorMod(pos[e.goldenApple()] - tailPos, n));
+            int limit = Math.min(goal, n - 1 - len); // leave room to grow without catching the tail
+            int bestRel = headRel + 1;
+            for (Direction d : DIRS) {
+                int c = e.neighbor(head, d);
+                if (c == GameEngine.NO_CELL || e.isBlocked(c)) continue;
+                int rel = Math.floorMod(pos[c] - tailPos, n);
+                if (rel > bestRel && rel <= limit) { bestRel = rel; next = c; }
+            }
+        }
+        Direction d = dirTo(e, head, next);
+        if (d == null || e.isBlocked(next)) { onCycle = false; return null; }
+        return d;
+    }
+}
@@ -0,0 +1,210 @@
+package com.mycompany.snake;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * BatchRunner
+ * Plays many independent headless games with a Controller and reports how they went.
+ * Design notes:
+ *  - Game i is seeded with seed + i, so every result can be replayed on its own and a
+ *    batch gives the same scores whatever the thread count.
+ *  - Games are split into ranges on a ForkJoinPool. Each leaf reuses one GameEngine
+ *    (reset(seed) per game) and one Controller, and writes results into its own slots of
+ *    plain arrays, so workers share nothing while running and scale with cores.
+ *  - Turns still go through engine.turn(), the same path as the keyboard, so controllers
+ *    are judged on exactly the rules a player gets.
+ *  - --require-end fails the run (exit 1, listing seeds) if any game hit the tick limit, so
+ *    a controller that loops forever is caught like a benchmark regression.
+ *
+ * Usage: java -cp out com.mycompany.snake.BatchRunner [--games=1000] [--board=24x24]
+ *            [--modes=wrap,obstacles,...] [--wrap] [--obstacles] [--seed=1] [--threads=N] [--max-ticks=N] [--controller=greedy|autopilot|hamiltonian]
+ *            [--require-end]
+ */
+public final class BatchRunner {
+    private static final int LEAF_GAMES = 16;
+
+    private int cols = GamePanel.COLS, rows = GamePanel.ROWS;
+    private int modes = GameMode.CLASSIC;
+    private long seed = 1;
+    private long maxTicks;                 // 0: a default scaled to the board
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Supplier<Controller> controllers = () -> Controller.GREEDY;
+
+    public BatchRunner board(int cols, int rows) { this.cols = cols; this.rows = rows; return this; }
+    /** GameMode bits every game is played with; GameMode.CLASSIC by default. */
+    public BatchRunner modes(int modes) { this.modes = modes; return this; }
+    public BatchRunner wrapWalls(boolean on) { return mode(GameMode.WRAP, on); }
+    public BatchRunner obstacles(boolean on) { return mode(GameMode.OBSTACLES, on); }
+    private BatchRunner mode(GameMode m, boolean on) { modes = on ? modes | m.bit() : modes & ~m.bit(); return this; }
+    public BatchRunner seed(long seed) { this.seed = seed; return this; }
+    /** Games still running after this many ticks are stopped and counted as timeouts. */
+    public BatchRunner maxTicks(long ticks) { maxTicks = ticks; return this; }
+    public BatchRunner threads(int n) { threads = Math.max(1, n); return this; }
+    /** Called once per worker leaf; each Controller is used by one thread at a time. */
+    public BatchRunner controllers(Supplier<Controller> factory) { controllers = factory; return this; }
+
+    /** Outcome of a batch. Per-game arrays are indexed by game number (seed offset). */
+    public static final class Stats {
+        public final int[] scores;
+        public final long[] ticks;
+        public final GameState[] endStates;   // GAME_OVER, WON, or RUNNING for a timeout
+        public final long wallNanos;
+        public final int threads;
+
+        Stats(long wallNanos, int threads, int[] scores, long[] ticks, GameState[] endStates) {
+            this.scores = scores; this.ticks = ticks; this.endStates = endStates;
+            this.wallNanos = wallNanos; this.threads = threads;
+        }
+
+        public int games() { return scores.length; }
+        public long totalTicks() { long t = 0; for (long x : ticks) t += x; return t; }
+        public double ticksPerSecond() { return totalTicks() / (wallNanos / 1e9); }
+        public long count(GameState s) { return Arrays.stream(endStates).filter(e -> e == s).count(); }
+        /** Game numbers stopped by the tick limit, still running. */
+        public int[] timedOut() { return java.util.stream.IntStream.range(0, games()).filter(i -> endStates[i] == GameState.RUNNING).toArray(); }
+
+        /** p in [0, 100]; nearest-rank percentile over scores. */
+        public int scorePercentile(double p) { return percentile(Arrays.stream(scores).asLongStream().toArray(), p); }
+        public int ticksPercentile(double p) { return percentile(ticks.clone(), p); }
+
+        private static int percentile(long[] v, double p) {
+            if (v.length == 0) return 0;
+            Arrays.sort(v);
+            int i = (int) Math.ceil(p / 100 * v.length) - 1;
+            return (int) v[Math.max(0, Math.min(v.length - 1, i))];
+        }
+
+        public double meanScore() { return Arrays.stream(scores).average().orElse(0); }
+        public double meanTicks() { return Arrays.stream(ticks).average().orElse(0); }
+
+        public String summary() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%d games on %d threads in %.2fs: %,.0f ticks/s%n",
+                    games(), threads, wallNanos / 1e9, ticksPerSecond()));
+            sb.append(String.format(Locale.ROOT, "outcome: %d died, %d won, %d timed out%n",
+                    count(GameState.GAME_OVER), count(GameState.WON), count(GameState.RUNNING)));
+            sb.append(String.format(Locale.ROOT, "score:   mean %.1f  min %d  p10 %d  p50 %d  p90 %d  max %d%n",
+                    meanScore(), scorePercentile(0), scorePercentile(10), scorePercentile(50),
+                    scorePercentile(90), scorePercentile(100)));
+            sb.append(String.format(Locale.ROOT, "ticks:   mean %.0f  p50 %d  p90 %d  max %d%n",
+                    meanTicks(), ticksPercentile(50), ticksPercentile(90), ticksPercentile(100)));
+            sb.append(histogram());
+            return sb.toString();
+        }
+
+        /** Score distribution in up to 10 equal-width buckets. */
+        private String histogram() {
+            int max = scorePercentile(100);
+            int width = Math.max(1, (max + 10) / 10);
+            int[] buckets = new int[max / width + 1];
+            for (int s : scores) buckets[s / width]++;
+            int most = Arrays.stream(buckets).max().orElse(1);
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < buckets.length; b++) {
+                String range = width == 1 ? String.valueOf(b) : (b * width) + "-" + (b * width + width - 1);
+                sb.append(String.format(Locale.ROOT, "  %9s %6d %s%n", range, buckets[b],
+                        "#".repeat((int) Math.round(40.0 * buckets[b] / Math.max(1, most)))));
+            }
+            return sb.toString();
+        }
+    }
+
+    public Stats run(int games) {
+        long area = (long) cols * rows;
+        long limit = maxTicks > 0 ? maxTicks : area * Math.max(50, area / 4); // room to fill the board
+        int[] scores = new int[games];
+        long[] ticks = new long[games];
+        GameState[] ends = new GameState[games];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long t0 = System.nanoTime();
+        try {
+            pool.invoke(new Range(0, games, limit, scores, ticks, ends));
+        } finally {
+            pool.shutdown();
+        }
+        return new Stats(System.nanoTime() - t0, threads, scores, ticks, ends);
+    }
+
+    private final class Range extends RecursiveAction {
+        private final int from, to;
+        private final long limit;
+        private final int[] scores;
+        private final long[] ticks;
+        private final GameState[] ends;
+
+        Range(int from, int to, long limit, int[] scores, long[] ticks, GameState[] ends) {
+            this.from = from; this.to = to; this.limit = limit;
+            this.scores = scores; this.ticks = ticks; this.ends = ends;
+        }
+
+        @Override protected void compute() {
+            if (to - from > LEAF_GAMES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Range(from, mid, limit, scores, ticks, ends), new Range(mid, to, limit, scores, ticks, ends));
+                return;
+            }
+            GameEngine e = new GameEngine(cols, rows);
+            e.setModes(modes);
+            Controller c = controllers.get();
+            for (int g = from; g < to; g++) {
+                e.reset(seed + g);
+                c.newGame(e);
+                e.start();
+                while (e.state() == GameState.RUNNING && e.ticks() < limit) {
+                    Direction d = c.decide(e);
+                    if (d != null) e.turn(d);
+                    e.tick();
+                }
+                scores[g] = e.score();
+                ticks[g] = e.ticks();
+                ends[g] = e.state();
+            }
+        }
+    }
+
+    /** Named controllers for the command line. */
+    static Supplier<Controller> controller(String name) {
+        return switch (name) {
+            case "greedy" -> () -> Controller.GREEDY;
+            case "autopilot" -> Autopilot::new;
+            case "hamiltonian" -> () -> new Autopilot(true);
+            default -> throw new IllegalArgumentException("unknown controller " + name);
+        };
+    }
+
+    public static void main(String[] args) {
+        BatchRunner r = new BatchRunner();
+        int games = 1000;
+        boolean requireEnd = false;
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--games=")) games = Integer.parseInt(v);
+            else if (a.startsWith("--board=")) {
+                String[] wh = v.toLowerCase(Locale.ROOT).split("x");
+                r.board(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+            }
+            else if (a.startsWith("--modes=")) r.modes(GameMode.parse(v));
+            else if (a.equals("--wrap")) r.wrapWalls(true);
+            else if (a.equals("--obstacles")) r.obstacles(true);
+            else if (a.startsWith("--seed=")) r.seed(Long.parseLong(v));
+            else if (a.startsWith("--threads=")) r.threads(Integer.parseInt(v));
+            else if (a.startsWith("--max-ticks=")) r.maxTicks(Long.parseLong(v));
+            else if (a.startsWith("--controller=")) r.controllers(controller(v));
+            else if (a.equals("--require-end")) requireEnd = true;
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+        Stats s = r.run(games);
+        System.out.print(s.summary());
+        int[] stuck = s.timedOut();
+        if (requireEnd && stuck.length > 0) {
+            StringBuilder seeds = new StringBuilder();
+            for (int i = 0; i < Math.min(stuck.length, 20); i++) seeds.append(' ').append(r.seed + stuck[i]);
+            System.out.println("FAIL: " + stuck.length + " games did not end; seeds" + seeds + (stuck.length > 20 ? " ..." : ""));
+            System.exit(1);
+        }
+    }
+}
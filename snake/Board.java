@@ -0,0 +1,147 @@
+package com.mycompany.snake;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Board
+ * Occupancy grid for COLS x ROWS, one byte per cell holding what sits there.
+ * Design notes:
+ *  - Self-collision, obstacle hits and spawn validation become single array lookups,
+ *    so their cost stays flat as the snake grows.
+ *  - The engine keeps it in sync: head push marks SNAKE, tail pop clears to EMPTY.
+ *  - Random empty cells come from a few bounded rejection samples while the board is sparse.
+ *    The first time they all miss, EMPTY cells get indexed in a swap-remove array (free/slot)
+ *    and every later pick is O(1). A mostly empty 4096x4096 arena never allocates the index
+ *    and stays at one byte per cell.
+ *  - "Board full" is just freeCount() == 0; the counter is maintained either way.
+ *  - Stepping between cells (walled or wrapping edges) and placing an item on a random
+ *    empty cell live here, so GameEngine and Arena share them instead of each keeping a copy.
+ *  - Mode items (portals, shrink pickups) are kinds of their own; the engine dispatches on
+ *    the kind under the new head, so a mode costs nothing on cells that don't hold its item.
+ */
+public final class Board {
+    public static final byte EMPTY = 0;
+    public static final byte SNAKE = 1;
+    public static final byte OBSTACLE = 2;
+    public static final byte APPLE = 3;
+    public static final byte GOLDEN = 4;
+    public static final byte PORTAL = 5;
+    public static final byte SHRINK = 6;
+    public static final int KINDS = 7;
+
+    private final int cols, rows;
+    private final byte[] cells;
+    private int[] free;         // free[0..freeCount) are the EMPTY cells, in no order
+    private int[] slot;         // slot[cell] = index into free, valid while the cell is EMPTY
+    private boolean indexed;    // free/slot are live
+    private int freeCount;
+
+    private static final int SAMPLE_TRIES = 8;
+
+    public Board(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cells = new byte[cols * rows];
+        this.freeCount = cells.length;
+    }
+
+    public void clear() {
+        Arrays.fill(cells, EMPTY);
+        freeCount = cells.length;
+        indexed = false; // rebuilt on demand, arrays are kept for reuse
+    }
+
+    /** Makes this board a copy of src (same size); the free index is rebuilt on demand. */
+    public void copyFrom(Board src) {
+        System.arraycopy(src.cells, 0, cells, 0, cells.length);
+        freeCount = src.freeCount;
+        indexed = false;
+    }
+
+    public byte get(int cell) { return cells[cell]; }
+
+    public void set(int cell, byte kind) {
+        byte old = cells[cell];
+        cells[cell] = kind;
+        if (old == EMPTY && kind != EMPTY) {
+            freeCount--;
+            if (indexed) {
+                // Swap-remove: move the last free cell into this one's slot.
+                int last = free[freeCount];
+                free[slot[cell]] = last;
+                slot[last] = slot[cell];
+            }
+        } else if (old != EMPTY && kind == EMPTY) {
+            if (indexed) {
+                free[freeCount] = cell;
+                slot[cell] = freeCount;
+            }
+            freeCount++;
+        }
+    }
+
+    /** Puts kind on a random EMPTY cell and returns it, or -1 if the board is full. */
+    public int place(RandomGenerator r, byte kind) {
+        int c = randomEmpty(r);
+        if (c >= 0) set(c, kind);
+        return c;
+    }
+
+    /** The cell one step from c towards d, or -1 off the edge. */
+    public int walled(int c, Direction d) {
+        int nx = c % cols + d.dx, ny = c / cols + d.dy;
+        return nx < 0 || nx >= cols || ny < 0 || ny >= rows ? -1 : ny * cols + nx;
+    }
+
+    /** The cell one step from c towards d, leaving one edge onto the opposite one. */
+    public int wrapped(int c, Direction d) {
+        int nx = c % cols + d.dx, ny = c / cols + d.dy;
+        if (nx < 0) nx = cols-1; else if (nx >= cols) nx = 0;
+        if (ny < 0) ny = rows-1; else if (ny >= rows) ny = 0;
+        return ny * cols + nx;
+    }
+
+    /** A uniformly random EMPTY cell, or -1 if the board is full. */
+    public int randomEmpty(RandomGenerator r) {
+        if (freeCount == 0) return -1;
+        if (!indexed) {
+            // Sparse board: a hit is likely within a few tries.
+            for (int i = 0; i < SAMPLE_TRIES; i++) {
+                int c = r.nextInt(cells.length);
+                if (cells[c] == EMPTY) return c;
+            }
+            buildIndex();
+        }
+        return free[r.nextInt(freeCount)];
+    }
+
+    private void buildIndex() {
+        if (free == null) {
+            free = new int[cells.length];
+            slot = new int[cells.length];
+        }
+        int n = 0;
+        for (int c = 0; c < cells.length; c++) {
+            if (cells[c] == EMPTY) {
+                free[n] = c;
+                slot[c] = n++;
+            }
+        }
+        indexed = true;
+    }
+
+    public int freeCount() { return freeCount; }
+
+    /** Would moving the head here end the game? */
+    public boolean isBlocked(int cell) {
+        byte k = cells[cell];
+        return k == SNAKE || k == OBSTACLE || k == PORTAL; // a step lands on a portal only when it leaves one next to it
+    }
+
+    public boolean isEmpty(int cell) { return cells[cell] == EMPTY; }
+
+    public int cols() { return cols; }
+    public int rows() { return rows; }
+    public int size() { return cells.length; }
+}
@@ -0,0 +1,124 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * BotSwarm
+ * Load generator for GameServer: many headless bots in many rooms, all on one thread.
+ * Design notes:
+ *  - Every bot is a NetClient on one shared Selector; it decides on its own mirror Arena
+ *    after each delta (greedy: the free neighbour closest to the apple), so the swarm
+ *    also checks that mirrors stay in step with the server (a desync shows up as crashes).
+ *  - Reports deltas per second and input latency (press to applied tick); with --server
+ *    it starts an in-process GameServer on a free port first, for a one-command localhost test.
+ *
+ * Usage: java -cp out com.mycompany.snake.BotSwarm [--host=localhost] [--port=7777]
+ *            [--rooms=100] [--per-room=4] [--seconds=30] [--server] [--tick-ms=100] [--board=32x32]
+ */
+public final class BotSwarm {
+
+    /** Greedy choice on a mirror: the free neighbour closest to the apple, or null to keep going. */
+    static Direction greedy(Arena a, int id) {
+        int head = a.snakeCell(id, 0), apple = a.apple();
+        Direction cur = a.direction(id), best = null;
+        int bestDist = Integer.MAX_VALUE;
+        for (Direction d : Direction.values()) {
+            if (d == cur.opposite()) continue;
+            int c = a.neighbor(head, d);
+            if (c == GameEngine.NO_CELL || a.isBlocked(c)) continue;
+            int dist = apple < 0 ? 0 : Math.abs(a.x(c) - a.x(apple)) + Math.abs(a.y(c) - a.y(apple));
+            if (dist < bestDist || (dist == bestDist && d == cur)) { best = d; bestDist = dist; }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = Protocol.DEFAULT_PORT, rooms = 100, perRoom = 4, seconds = 30;
+        GameServer server = null;
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--host=")) host = v;
+            else if (a.startsWith("--port=")) port = Integer.parseInt(v);
+            else if (a.startsWith("--rooms=")) rooms = Integer.parseInt(v);
+            else if (a.startsWith("--per-room=")) perRoom = Integer.parseInt(v);
+            else if (a.startsWith("--seconds=")) seconds = Integer.parseInt(v);
+            else if (a.equals("--server")) server = new GameServer().port(0);
+            else if (a.startsWith("--tick-ms=") && server != null) server.tickMs(Integer.parseInt(v));
+            else if (a.startsWith("--board=") && server != null) {
+                String[] wh = v.toLowerCase(Locale.ROOT).split("x");
+                server.board(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+            }
+            else throw new IllegalArgumentException("unknown option " + a + " (--tick-ms/--board need --server first)");
+        }
+        if (server != null) port = server.start().port();
+
+        long[] deltas = new long[1];
+        int[] closedCount = new int[1];
+        NetClient.Listener bot = new NetClient.Listener() {
+            @Override public void delta(NetClient c, long tick) {
+                deltas[0]++;
+                Arena a = c.arena();
+                int id = c.playerId();
+                if (!a.isAlive(id)) return;
+                Direction d = greedy(a, id);
+                if (d != null && d != a.direction(id)) c.turn(d);
+            }
+            @Override public void closed(NetClient c, IOException cause) { closedCount[0]++; }
+        };
+
+        Selector selector = Selector.open();
+        List<NetClient> clients = new ArrayList<>();
+        InetSocketAddress addr = new InetSocketAddress(host, port);
+        for (int r = 0; r < rooms; r++) {
+            for (int i = 0; i < perRoom; i++) {
+                NetClient c = NetClient.connect(addr, r, bot);
+                c.register(selector);
+                clients.add(c);
+            }
+        }
+
+        long start = System.nanoTime(), end = start + seconds * 1_000_000_000L, nextReport = start + 5_000_000_000L;
+        long lastDeltas = 0;
+        while (System.nanoTime() < end) {
+            selector.select(50);
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey k = it.next();
+                it.remove();
+                ((NetClient) k.attachment()).handle(k);
+            }
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                System.out.println(report(clients, (deltas[0] - lastDeltas) / 5.0, closedCount[0])
+                        + (server != null ? "  | server " + server.stats() : ""));
+                lastDeltas = deltas[0];
+                nextReport += 5_000_000_000L;
+            }
+        }
+        System.out.println("total: " + report(clients, deltas[0] / ((System.nanoTime() - start) / 1e9), closedCount[0]));
+        for (NetClient c : clients) c.close(null);
+        if (server != null) server.stop();
+    }
+
+    private static String report(List<NetClient> clients, double deltasPerSec, int closed) {
+        long n = 0, joined = 0, maxNs = 0;
+        double mean = 0;
+        for (NetClient c : clients) {
+            if (c.playerId() >= 0) joined++;
+            if (c.inputLatencyCount() == 0) continue;
+            mean += c.inputLatencyMeanNanos();
+            maxNs = Math.max(maxNs, c.inputLatencyMaxNanos());
+            n++;
+        }
+        return String.format(Locale.ROOT, "bots=%d joined=%d closed=%d deltas/s=%.0f input latency mean=%.1fms max=%.1fms",
+                clients.size(), joined, closed, deltasPerSec, n == 0 ? 0 : mean / n / 1e6, maxNs / 1e6);
+    }
+}
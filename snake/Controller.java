@@ -0,0 +1,37 @@
+package com.mycompany.snake;
+
+/**
+ * Controller
+ * Decides the snake's next turn; the seam between the rules and whoever plays them.
+ * Design notes:
+ *  - Called once before every tick with a consistent engine; returns a Direction to queue,
+ *    or null to keep going straight.
+ *  - Implementations may keep per-game state, so runners create one per game or per worker
+ *    thread and never share one across threads.
+ */
+public interface Controller {
+    Direction decide(GameEngine engine);
+
+    /** Called after reset(), before the first decide() of a new game. */
+    default void newGame(GameEngine engine) { }
+
+    /**
+     * Baseline: step towards the nearest apple along x then y, taking any free cell if that
+     * is blocked. No look-ahead, so it dies once the snake is long; cheap and stateless.
+     */
+    Controller GREEDY = engine -> {
+        int head = engine.snakeCell(0);
+        int target = engine.goldenApple() != GameEngine.NO_CELL ? engine.goldenApple() : engine.apple();
+        Direction cur = engine.direction(), best = null;
+        int bestDist = Integer.MAX_VALUE;
+        for (Direction d : Direction.values()) {
+            if (d == cur.opposite()) continue;
+            int c = engine.neighbor(head, d);
+            if (c == GameEngine.NO_CELL || engine.isBlocked(c)) continue;
+            int dist = target == GameEngine.NO_CELL ? 0
+                    : Math.abs(engine.x(c) - engine.x(target)) + Math.abs(engine.y(c) - engine.y(target));
+            if (dist < bestDist || (dist == bestDist && d == cur)) { bestDist = dist; best = d; }
+        }
+        return best == null || best == cur ? null : best;
+    };
+}
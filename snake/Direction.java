@@ -1,5 +1,18 @@
 package com.mycompany.snake;
 
 public enum Direction {
-    UP, DOWN, LEFT, RIGHT
-}
\ No newline at end of file
+    UP(0, -1), DOWN(0, 1), LEFT(-1, 0), RIGHT(1, 0);
+
+    public final int dx, dy;
+
+    Direction(int dx, int dy) { this.dx = dx; this.dy = dy; }
+
+    public Direction opposite() {
+        return switch (this) {
+            case UP -> DOWN;
+            case DOWN -> UP;
+            case LEFT -> RIGHT;
+            case RIGHT -> LEFT;
+        };
+    }
+}
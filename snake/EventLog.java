@@ -0,0 +1,470 @@
+package com.mycompany.snake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * EventLog
+ * Live stream of one GameEngine for spectators: an append-only, memory-mapped file of
+ * per-tick changes that any number of viewers (in this process or others) tail.
+ * Design notes:
+ *  - A tick costs one byte (MOVE: direction, whether the tail stayed or the head was
+ *    blocked), plus a few
+ *    varint bytes when the apple, score, speed or GameState changed. Nothing is allocated
+ *    per tick on either side.
+ *  - Modes need little more: an OBSTACLES record says moving obstacles stepped (the viewer
+ *    makes the same rule-bound move, so positions aren't sent), LENGTH follows a shrink,
+ *    and a pickup changes like an apple. Portals are part of the board, so keyframes only.
+ *  - A KEYFRAME (the whole state: modes, obstacles, portals, the snake as head plus 2-bit
+ *    steps, apples, score, speed, state) is written on reset, every KEYFRAME_EVERY ticks, and when the
+ *    file wraps. A viewer joining late starts from the last one instead of from tick 0.
+ *    Viewers already in step apply the ones that replace the board (RESET) and skip the
+ *    periodic checkpoints by their length.
+ *  - The header holds the committed end, the last keyframe and a generation, published
+ *    with release stores and read with acquire loads, so readers never lock. When the
+ *    file is full the writer starts over at the top: the generation goes odd while it
+ *    overwrites and even when the new keyframe is committed, and a reader that saw it
+ *    change under a read (a seqlock) drops what it read and resyncs from the keyframe.
+ *  - Readers decode straight from the mapped pages (zero-copy) into their own engine via
+ *    GameEngine.load()/apply*(), on the GameLoop thread under the engine lock.
+ *  - The writer runs wherever the engine changes, always under the engine lock.
+ *
+ * File layout: header(64: "SNKL" version capacity generation end keyframe) records...
+ * Record: op(1) [payload]; op = type << 4 | argument.
+ */
+public final class EventLog {
+    private static final int MAGIC = 0x534E4B4C; // "SNKL"
+    private static final int VERSION = 2;
+    public static final String EXTENSION = ".snkl";
+    public static final int KEYFRAME_EVERY = 256;  // ticks
+    static final int HEADER = 64;
+    private static final int H_MAGIC = 0, H_VERSION = 4, H_CAPACITY = 8, H_GENERATION = 16, H_END = 24, H_KEYFRAME = 32;
+    private static final long MIN_CAPACITY = 4L << 20;
+    private static final int TICK_RESERVE = 64;      // largest tick: OBSTACLES, MOVE, six varints, STATE
+
+    // Record types (high nibble); MOVE's low bits are the direction, GREW and BLOCKED
+    private static final int MOVE = 0x10, APPLE = 0x20, GOLDEN = 0x30, SCORE = 0x40, SPEED = 0x50, STATE = 0x60, KEYFRAME = 0x70,
+            OBSTACLES = 0x80, SHRINK = 0x90, LENGTH = 0xA0;
+    private static final int GREW = 4, BLOCKED = 8, RESET = 1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private EventLog() { }
+
+    /** ~/.snake/live.snkl, or the snake.stream system property. */
+    public static Path defaultPath() {
+        String p = System.getProperty("snake.stream");
+        return p != null ? Path.of(p) : Path.of(System.getProperty("user.home"), ".snake", "live" + EXTENSION);
+    }
+
+    /** Upper bound of one keyframe on a board of this size. */
+    private static long keyframeBound(int cols, int rows) {
+        long cells = (long) cols * rows;
+        long obstacles = Math.max(GameEngine.OBSTACLE_COUNT, cells / 48);
+        return 64 + 5L * obstacles + obstacles / 4 + 1 + 5L * 2 * GameMode.MAX_PORTAL_PAIRS + cells / 4 + 1;
+    }
+
+    // ---- Writing ----
+
+    /** Appends an engine's changes; install with GameEngine.setStream(). Engine lock held throughout. */
+    public static final class Writer implements Closeable {
+        private final Path file;
+        private final FileChannel ch;
+        private final MappedByteBuffer map;
+        private final int limit;
+        private final long keyframeBound;
+        private long generation;
+        private int sinceKeyframe;
+
+        // What the log says now; only differences are written
+        private int apple, golden, shrink, score, speedMs;
+        private GameState state;
+
+        // Stats
+        private long ticks, keyframes, wraps;
+
+        private Writer(Path file, FileChannel ch, MappedByteBuffer map, long keyframeBound, long generation) {
+            this.file = file;
+            this.ch = ch;
+            this.map = map;
+            this.limit = map.capacity();
+            this.keyframeBound = keyframeBound;
+            this.generation = generation;
+        }
+
+        /**
+         * Opens (or creates) the log for a board of this size. An existing file is reused in
+         * place, never truncated, so viewers that have it mapped just see a new generation.
+         */
+        public static Writer create(Path file, int cols, int rows) throws IOException {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long bound = keyframeBound(cols, rows);
+                long capacity = Math.max(MIN_CAPACITY, 8 * bound);
+                long oldGeneration = 0;
+                if (ch.size() >= HEADER) {
+                    ByteBuffer h = ByteBuffer.allocate(HEADER);
+                    ch.read(h, 0);
+                    if (h.getInt(H_MAGIC) == MAGIC) {
+                        capacity = Math.max(capacity, h.order(ByteOrder.nativeOrder()).getLong(H_CAPACITY));
+                        oldGeneration = h.getLong(H_GENERATION);
+                    }
+                }
+                capacity = Math.max(capacity, ch.size() - HEADER);
+                if (HEADER + capacity > Integer.MAX_VALUE) throw new IOException("board too large to stream: " + cols + "x" + rows);
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity);
+                Writer w = new Writer(file, ch, map, bound, (oldGeneration + 1) | 1);
+                // Odd generation until the first keyframe lands: readers wait
+                LONGS.setVolatile(map, H_GENERATION, w.generation);
+                VarHandle.storeStoreFence();
+                map.putInt(H_VERSION, VERSION);
+                map.order(ByteOrder.nativeOrder()).putLong(H_CAPACITY, capacity).order(ByteOrder.BIG_ENDIAN);
+                LONGS.setRelease(map, H_END, (long) HEADER);
+                LONGS.setRelease(map, H_KEYFRAME, 0L);
+                map.putInt(H_MAGIC, MAGIC);
+                map.position(HEADER);
+                return w;
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        /** After a tick: one MOVE and whatever else changed, then a keyframe if one is due. */
+        public void tick(GameEngine e, int events) {
+            if (limit - map.position() < TICK_RESERVE) { putKeyframe(e, false); commit(); return; }
+            if ((events & GameEngine.EVENT_OBSTACLES_MOVED) != 0) map.put((byte) OBSTACLES); // before the move, as in step()
+            int op = MOVE | e.direction().ordinal();
+            if ((events & GameEngine.EVENT_MOVED) == 0) op |= BLOCKED; // the tick that ended the game
+            else if (e.vacatedCell() == GameEngine.NO_CELL) op |= GREW;
+            map.put((byte) op);
+            if ((events & GameEngine.EVENT_SHRANK) != 0) { map.put((byte) LENGTH); Protocol.putVarLong(map, e.snakeLength()); }
+            ticks++;
+            putChanges(e);
+            if (++sinceKeyframe >= KEYFRAME_EVERY) putKeyframe(e, false);
+            commit();
+        }
+
+        /** After a change outside tick() (start, pause, speed): the differences only. */
+        public void changed(GameEngine e) {
+            if (limit - map.position() < TICK_RESERVE) { putKeyframe(e, false); commit(); return; }
+            putChanges(e);
+            commit();
+        }
+
+        /** After a reset or anything else that replaces the board: the whole state. */
+        public void keyframe(GameEngine e) {
+            putKeyframe(e, true);
+            commit();
+        }
+
+        private void putChanges(GameEngine e) {
+            if (e.apple() != apple) { map.put((byte) APPLE); Protocol.putVarLong(map, (apple = e.apple()) + 1); }
+            if (e.goldenApple() != golden) { map.put((byte) GOLDEN); Protocol.putVarLong(map, (golden = e.goldenApple()) + 1); }
+            if (e.shrinkPickup() != shrink) { map.put((byte) SHRINK); Protocol.putVarLong(map, (shrink = e.shrinkPickup()) + 1); }
+            if (e.score() != score) { map.put((byte) SCORE); Protocol.putVarLong(map, score = e.score()); }
+            if (e.speedMs() != speedMs) { map.put((byte) SPEED); Protocol.putVarLong(map, speedMs = e.speedMs()); }
+            if (e.state() != state) map.put((byte) (STATE | (state = e.state()).ordinal()));
+        }
+
+        /** reset: the board was replaced, so viewers in step must load it too. */
+        private void putKeyframe(GameEngine e, boolean reset) {
+            if (limit - map.position() < keyframeBound + TICK_RESERVE) wrap();
+            int at = map.position();
+            map.put((byte) (KEYFRAME | (reset ? RESET : 0)));
+            map.putInt(0); // length, below
+            int start = map.position();
+            Protocol.putVarLong(map, e.cols());
+            Protocol.putVarLong(map, e.rows());
+            Protocol.putVarLong(map, e.modes());
+            map.put((byte) (state = e.state()).ordinal());
+            map.put((byte) e.direction().ordinal());
+            Protocol.putVarLong(map, e.ticks());
+            Protocol.putVarLong(map, score = e.score());
+            Protocol.putVarLong(map, speedMs = e.speedMs());
+            Protocol.putVarLong(map, (apple = e.apple()) + 1);
+            Protocol.putVarLong(map, (golden = e.goldenApple()) + 1);
+            Protocol.putVarLong(map, (shrink = e.shrinkPickup()) + 1);
+            Protocol.putVarLong(map, e.obstacleCount());
+            for (int i = 0; i < e.obstacleCount(); i++) Protocol.putVarLong(map, e.obstacleCell(i));
+            if (GameMode.MOVING_OBSTACLES.in(e.modes())) putSteps(e.obstacleCount(), i -> e.obstacleHeading(i).ordinal());
+            Protocol.putVarLong(map, e.portalCount());
+            for (int i = 0; i < e.portalCount(); i++) Protocol.putVarLong(map, e.portalCell(i));
+            // Snake: head cell, then the step from each cell to the next towards the tail
+            int len = e.snakeLength();
+            Protocol.putVarLong(map, len);
+            Protocol.putVarLong(map, e.snakeCell(0));
+            putSteps(len - 1, i -> stepBetween(e, e.snakeCell(i), e.snakeCell(i + 1)));
+            map.putInt(at + 1, map.position() - start);
+            LONGS.setRelease(map, H_KEYFRAME, (long) at);
+            sinceKeyframe = 0;
+            keyframes++;
+        }
+
+        /** Directions, 2 bits each, four to a byte. */
+        private void putSteps(int count, java.util.function.IntUnaryOperator dir) {
+            int bits = 0, n = 0;
+            for (int i = 0; i < count; i++) {
+                bits |= dir.applyAsInt(i) << (2 * n);
+                if (++n == 4) { map.put((byte) bits); bits = n = 0; }
+            }
+            if (n > 0) map.put((byte) bits);
+        }
+
+        /**
+         * Through a portal too: GameEngine.neighbor() takes it, and so does the reader. Across
+         * an edge as well, since wrap may be switched off with the body still straddling it.
+         */
+        private static int stepBetween(GameEngine e, int from, int to) {
+            for (Direction d : Direction.values()) if (e.neighbor(from, d) == to || e.wrapped(from, d) == to) return d.ordinal();
+            return 0;
+        }
+
+        /** Back to the top of the file; the caller writes the keyframe that starts the generation. */
+        private void wrap() {
+            LONGS.setVolatile(map, H_GENERATION, ++generation); // odd: readers stand off
+            VarHandle.storeStoreFence();                         // ...before any record is overwritten
+            map.position(HEADER);
+            LONGS.setRelease(map, H_END, (long) HEADER);
+            wraps++;
+        }
+
+        private void commit() {
+            LONGS.setRelease(map, H_END, (long) map.position());
+            if ((generation & 1) != 0) LONGS.setRelease(map, H_GENERATION, ++generation);
+        }
+
+        public Path file() { return file; }
+        public long ticks() { return ticks; }
+        public long keyframes() { return keyframes; }
+        public long wraps() { return wraps; }
+        /** Bytes in the current generation, header excluded. */
+        public long bytes() { return map.position() - HEADER; }
+
+        @Override public void close() throws IOException { ch.close(); }
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Tails a log into a spectator's engine; install as the GameLoop's source. next() is
+     * called on the loop thread with the engine lock held.
+     */
+    public static final class Reader implements GameLoop.Source, Closeable {
+        private final Path file;
+        private final FileChannel ch;
+        private MappedByteBuffer map;
+        private final int cols, rows;
+        private final int[] obstacles, snake, portals = new int[2 * GameMode.MAX_PORTAL_PAIRS];
+        private final byte[] headings;
+        private int portalCount;
+        private long generation = -1;
+        private int pos = -1; // next record; -1 until synced from a keyframe
+        private volatile String problem;
+
+        // Stats
+        private volatile long ticks, syncs, tornReads;
+
+        private Reader(Path file, FileChannel ch, MappedByteBuffer map, int cols, int rows) {
+            this.file = file;
+            this.ch = ch;
+            this.map = map;
+            this.cols = cols;
+            this.rows = rows;
+            this.obstacles = new int[Math.max(GameEngine.OBSTACLE_COUNT, cols * rows / 48)];
+            this.headings = new byte[obstacles.length];
+            this.snake = new int[cols * rows];
+        }
+
+        /** Maps the log, waiting up to timeoutMillis for a writer to publish its first keyframe. */
+        public static Reader open(Path file, long timeoutMillis) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                try {
+                    FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+                    MappedByteBuffer map = mapped(ch);
+                    if (map != null) {
+                        long g = (long) LONGS.getAcquire(map, H_GENERATION);
+                        long kp = (long) LONGS.getAcquire(map, H_KEYFRAME);
+                        if ((g & 1) == 0 && kp >= HEADER) {
+                            ByteBuffer in = map.duplicate().position((int) kp + 5);
+                            int cols = (int) Protocol.getVarLong(in), rows = (int) Protocol.getVarLong(in);
+                            return new Reader(file, ch, map, cols, rows);
+                        }
+                    }
+                    ch.close();
+                } catch (NoSuchFileException e) {
+                    // not started yet
+                }
+                if (System.currentTimeMillis() > deadline) throw new IOException("no game is streaming to " + file);
+                Thread.sleep(100);
+            }
+        }
+
+        private static MappedByteBuffer mapped(FileChannel ch) throws IOException {
+            if (ch.size() < HEADER) return null;
+            MappedByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (head.getInt(H_MAGIC) != MAGIC || head.getInt(H_VERSION) != VERSION) return null;
+            long capacity = head.order(ByteOrder.nativeOrder()).getLong(H_CAPACITY);
+            if (ch.size() < HEADER + capacity) return null;
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER + capacity);
+        }
+
+        /** Applies the next tick (or a keyframe when out of step); returns its EVENT_* bits, 0 when caught up. */
+        @Override public int next(GameEngine e) {
+            if (e.cols() != cols || e.rows() != rows) throw new IllegalArgumentException("engine is not " + cols + "x" + rows);
+            try {
+                long g = (long) LONGS.getAcquire(map, H_GENERATION);
+                if ((g & 1) != 0) return 0; // wrapping; look again next frame
+                long end = (long) LONGS.getAcquire(map, H_END);
+                int events;
+                if (g != generation || pos < 0) {
+                    long kp = (long) LONGS.getAcquire(map, H_KEYFRAME);
+                    if (kp < HEADER || kp >= end) return 0;
+                    if (!load(e, (int) kp)) return 0;
+                    generation = g;
+                    events = GameEngine.EVENT_SYNCED;
+                } else {
+                    if (pos >= end) return 0;
+                    events = apply(e, (int) end);
+                }
+                VarHandle.acquireFence();
+                if ((long) LONGS.getAcquire(map, H_GENERATION) != g) return resync();
+                return events;
+            } catch (RuntimeException ex) {
+                // Only a torn read of an overwritten record gets here; the keyframe repairs it
+                return resync();
+            }
+        }
+
+        private int resync() {
+            tornReads++;
+            pos = -1;
+            return GameEngine.EVENT_SYNCED;
+        }
+
+        /** One tick's records: up to the next MOVE (or the committed end). */
+        private int apply(GameEngine e, int end) {
+            ByteBuffer in = map.duplicate().position(pos).limit(end);
+            int events = 0;
+            boolean moved = false;
+            loop:
+            while (in.hasRemaining()) {
+                int at = in.position(), op = in.get() & 0xFF;
+                switch (op & 0xF0) {
+                    case OBSTACLES -> {
+                        if (moved) { in.position(at); break loop; } // opens the next tick
+                        e.applyObstacleStep();
+                        events |= GameEngine.EVENT_OBSTACLES_MOVED;
+                    }
+                    case MOVE -> {
+                        if (moved) { in.position(at); break loop; }
+                        moved = true;
+                        ticks++;
+                        if ((op & BLOCKED) != 0) { e.applyBlocked(Protocol.direction(op)); continue; }
+                        boolean grew = (op & GREW) != 0;
+                        e.applyMove(Protocol.direction(op), grew);
+                        events |= GameEngine.EVENT_MOVED | (grew ? GameEngine.EVENT_ATE_APPLE : 0);
+                    }
+                    case APPLE -> e.applyApple((int) Protocol.getVarLong(in) - 1);
+                    case GOLDEN -> e.applyGolden((int) Protocol.getVarLong(in) - 1);
+                    case SHRINK -> e.applyShrink((int) Protocol.getVarLong(in) - 1);
+                    case LENGTH -> { e.applyLength((int) Protocol.getVarLong(in)); events |= GameEngine.EVENT_SHRANK; }
+                    case SCORE -> e.applyScore((int) Protocol.getVarLong(in));
+                    case SPEED -> { e.applySpeed((int) Protocol.getVarLong(in)); events |= GameEngine.EVENT_SPEED_CHANGED; }
+                    case STATE -> {
+                        GameState s = GameState.values()[op & 0x0F];
+                        e.applyState(s);
+                        if (s == GameState.GAME_OVER) events |= GameEngine.EVENT_GAME_OVER;
+                        else if (s == GameState.WON) events |= GameEngine.EVENT_WON;
+                    }
+                    case KEYFRAME -> {
+                        if ((op & RESET) == 0) { in.position(in.position() + 4 + in.getInt()); continue; } // in step already
+                        if (moved) { in.position(at); break loop; }
+                        if (!load(e, at)) return 0;
+                        return GameEngine.EVENT_SYNCED;
+                    }
+                    default -> throw new IllegalStateException("bad record " + op + " at " + at);
+                }
+            }
+            pos = in.position();
+            // Start, pause or a speed change outside a tick: nothing moved, but the view changed
+            return (events & ~GameEngine.EVENT_SPEED_CHANGED) == 0 ? events | GameEngine.EVENT_SYNCED : events;
+        }
+
+        private boolean load(GameEngine e, int at) {
+            ByteBuffer in = map.duplicate().position(at);
+            if ((in.get() & 0xF0) != KEYFRAME) throw new IllegalStateException("no keyframe at " + at);
+            int len = in.getInt(), start = in.position();
+            int c = (int) Protocol.getVarLong(in), r = (int) Protocol.getVarLong(in);
+            if (c != cols || r != rows) {
+                problem = "the game now streams a " + c + "x" + r + " board; reopen to watch it";
+                return false;
+            }
+            problem = null;
+            int modes = (int) Protocol.getVarLong(in);
+            GameState state = GameState.values()[in.get()];
+            Direction dir = Protocol.direction(in.get());
+            long ticks = Protocol.getVarLong(in);
+            int score = (int) Protocol.getVarLong(in), speed = (int) Protocol.getVarLong(in);
+            int apple = (int) Protocol.getVarLong(in) - 1, golden = (int) Protocol.getVarLong(in) - 1;
+            int shrink = (int) Protocol.getVarLong(in) - 1;
+            int nObstacles = (int) Protocol.getVarLong(in);
+            for (int i = 0; i < nObstacles; i++) obstacles[i] = (int) Protocol.getVarLong(in);
+            boolean moving = GameMode.MOVING_OBSTACLES.in(modes);
+            for (int i = 0; moving && i < nObstacles; i += 4) {
+                int bits = in.get();
+                for (int k = 0; k < 4 && i + k < nObstacles; k++) headings[i + k] = (byte) ((bits >> (2 * k)) & 3);
+            }
+            portalCount = (int) Protocol.getVarLong(in);
+            for (int i = 0; i < portalCount; i++) portals[i] = (int) Protocol.getVarLong(in);
+            int length = (int) Protocol.getVarLong(in);
+            snake[0] = (int) Protocol.getVarLong(in);
+            for (int i = 1; i < length; i += 4) {
+                int bits = in.get();
+                for (int k = 0; k < 4 && i + k < length; k++)
+                    snake[i + k] = stepFrom(snake[i + k - 1], Protocol.direction(bits >> (2 * k)));
+            }
+            e.load(modes, obstacles, moving ? headings : null, nObstacles, portals, portalCount, snake, length,
+                    dir, apple, golden, shrink, score, speed, ticks, state);
+            pos = start + len;
+            syncs++;
+            return true;
+        }
+
+        /** Neighbour with wrap-around (a walled board's snake never needs it) and through portals. */
+        private int stepFrom(int c, Direction d) {
+            int to = edgeStep(c, d);
+            for (int i = 0; i < portalCount; i++) if (portals[i] == to) return edgeStep(portals[i ^ 1], d);
+            return to;
+        }
+
+        private int edgeStep(int c, Direction d) {
+            int x = Math.floorMod(c % cols + d.dx, cols), y = Math.floorMod(c / cols + d.dy, rows);
+            return y * cols + x;
+        }
+
+        public Path file() { return file; }
+        public int cols() { return cols; }
+        public int rows() { return rows; }
+        /** Why the view is stuck, or null. */
+        public String problem() { return problem; }
+        public long ticks() { return ticks; }
+        /** Keyframes loaded: on joining, on every reset, and after a torn read. */
+        public long syncs() { return syncs; }
+        public long tornReads() { return tornReads; }
+
+        @Override public void close() throws IOException { ch.close(); }
+    }
+}
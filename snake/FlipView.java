@@ -0,0 +1,80 @@
+package com.mycompany.snake;
+
+import java.awt.*;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferStrategy;
+
+/**
+ * FlipView
+ * Heavyweight view for RenderBackend.FLIP: GamePanel draws each frame whole into this
+ * canvas's BufferStrategy, which shows it with a page flip (or a blit where the device
+ * doesn't offer flipping).
+ * Design notes:
+ *  - GamePanel stays the renderer and key handler but is never on screen; its frame
+ *    callback comes here instead of painting dirty cells through RepaintManager.
+ *  - A whole frame is one background blit plus the sprites inside the view, so drawing
+ *    everything costs about what the dirty-cell path does, and a frame can't tear.
+ *  - A heavyweight canvas can't live in a JViewport, so instead of scrolling GamePanel
+ *    moves its view over the board to follow the head.
+ *  - render() runs on the EDT like all other painting; expose/resize just asks for a frame.
+ */
+public final class FlipView extends Canvas {
+    private final GamePanel panel;
+    private BufferStrategy strategy;
+
+    public FlipView(GamePanel panel) {
+        this.panel = panel;
+        setFocusable(true);
+        setBackground(Color.BLACK);
+        for (KeyListener k : panel.getKeyListeners()) addKeyListener(k);
+        // Up to the board size, but no bigger than most of the screen
+        Dimension board = panel.getPreferredSize();
+        Rectangle screen = GraphicsEnvironment.isHeadless() ? new Rectangle(board)
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        setPreferredSize(new Dimension(Math.min(board.width, screen.width * 4/5), Math.min(board.height, screen.height * 4/5)));
+    }
+
+    @Override public void addNotify() {
+        super.addNotify();
+        BufferCapabilities flip = new BufferCapabilities(new ImageCapabilities(true), new ImageCapabilities(true),
+                BufferCapabilities.FlipContents.UNDEFINED);
+        try {
+            createBufferStrategy(2, flip);
+        } catch (AWTException e) {
+            createBufferStrategy(2); // best the device offers: usually an accelerated blit
+        }
+        strategy = getBufferStrategy();
+        BufferCapabilities caps = strategy.getCapabilities();
+        panel.flipShown(this, RenderBackend.FLIP + " on " + RenderBackend.pipeline(getGraphicsConfiguration())
+                + (caps.isPageFlipping() ? ", page flipping" : ", blit"));
+    }
+
+    @Override public void removeNotify() {
+        panel.flipShown(null, null);
+        strategy = null;
+        super.removeNotify();
+    }
+
+    // Expose, resize: draw a frame the usual way instead of letting AWT clear the canvas.
+    @Override public void paint(Graphics g) { panel.repaint(); }
+    @Override public void update(Graphics g) { panel.repaint(); }
+
+    /** Draws the given board area as one frame and shows it; false if there is nothing to draw on. */
+    boolean render(Rectangle view) {
+        BufferStrategy bs = strategy;
+        if (bs == null || getWidth() <= 0 || getHeight() <= 0) return false;
+        do {
+            do {
+                Graphics2D g = (Graphics2D) bs.getDrawGraphics();
+                try {
+                    panel.paintView(g, view);
+                } finally {
+                    g.dispose();
+                }
+            } while (bs.contentsRestored());
+            bs.show();
+        } while (bs.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // X11 queues drawing; push the flip out now
+        return true;
+    }
+}
@@ -0,0 +1,563 @@
+package com.mycompany.snake;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * GameEngine
+ * Headless Snake rules: grid, snake, apples and state transitions, plus the GameMode hooks
+ * (wrap, obstacles, golden apples, portals...) the current game was set up with.
+ * Design notes:
+ *  - No AWT/Swing types; cells are packed ints (y * cols + x) so the engine can step
+ *    millions of ticks per second and run outside a UI.
+ *  - Board mirrors the snake, obstacles and apples so collisions and spawn checks are O(1).
+ *  - tick() reports what happened as EVENT_* bits; the caller decides on sound, repaint, status.
+ *  - Modes aren't flags tested every tick: reset() assembles the game's GameMode.Pipeline
+ *    and step() calls its hooks unconditionally (no-ops where no mode hooks in). The mode
+ *    state the hooks work on (obstacles and their headings, portals, the shrink pickup)
+ *    lives here with everything else renderers and EventLog read.
+ *  - turn() only enqueues into a lock-free InputQueue; each tick applies at most one valid
+ *    turn, so quick presses inside one tick are kept in order and a reversal is judged
+ *    against the direction the snake actually has.
+ *  - All randomness comes from one SplittableRandom seeded per game, so a seed plus the
+ *    turns applied at each tick reproduce a game exactly (see Replay).
+ *  - An optional EventLog.Writer sees every change as it happens, for spectators; a
+ *    spectator's engine doesn't run the rules but takes the same changes via load()/apply*().
+ *  - Otherwise not thread-safe; GamePanel shares it between GameLoop and the EDT by locking on it.
+ */
+public class GameEngine {
+    // Bits returned from tick()
+    public static final int EVENT_MOVED = 1;
+    public static final int EVENT_ATE_APPLE = 1 << 1;
+    public static final int EVENT_ATE_GOLDEN = 1 << 2;
+    public static final int EVENT_SPEED_CHANGED = 1 << 3;
+    public static final int EVENT_GAME_OVER = 1 << 4;
+    public static final int EVENT_WON = 1 << 5;
+    /** Spectators only: the whole state was replaced from a keyframe. */
+    public static final int EVENT_SYNCED = 1 << 6;
+    /** SHRINK: the snake lost tail cells besides the one in vacatedCell(). */
+    public static final int EVENT_SHRANK = 1 << 7;
+    /** MOVING_OBSTACLES: obstacles stepped this tick. */
+    public static final int EVENT_OBSTACLES_MOVED = 1 << 8;
+    private static final int GREW = EVENT_ATE_APPLE | EVENT_ATE_GOLDEN;
+    private static final Direction[] DIRS = Direction.values();
+
+    public static final int NO_CELL = -1;
+    public static final int MAX_SIZE = 4096;
+    public static final int OBSTACLE_COUNT = 12;   // on the classic 24x24 board; same density when larger
+    public static final int MIN_SPEED_MS = 50;
+    public static final int MAX_SPEED_MS = 300;
+    public static final int INPUT_QUEUE = 8;
+
+    private final int cols, rows;
+
+    // Game data
+    private final Board board;
+    private final SnakeBody snake;
+    private final int[] obstacles;
+    private final byte[] headings;   // MOVING_OBSTACLES: each obstacle's Direction ordinal
+    private int obstacleCount = 0;
+    private final int[] portals = new int[2 * GameMode.MAX_PORTAL_PAIRS]; // pairs: 2k <-> 2k+1
+    private int portalCount = 0;
+    private Direction dir = Direction.RIGHT;
+    private GameState state = GameState.MENU;
+    private int modes = GameMode.CLASSIC;  // for the next reset()
+    private int active;                    // this game's
+    private GameMode.Pipeline rules;
+    private int apple = NO_CELL;
+    private int goldenApple = NO_CELL;
+    private int shrink = NO_CELL;
+    private int applesEaten = 0;
+    private int speedMs = 120; // lower is faster
+    private long ticks = 0;
+    private int vacated = NO_CELL; // tail cell freed by the last tick
+    private long seed;
+    private SplittableRandom rng;
+    private Replay.Recorder recorder; // optional, sees every applied turn
+    private EventLog.Writer stream;   // optional, sees every change
+
+    // Input
+    private final InputQueue inputs = new InputQueue(INPUT_QUEUE);
+    private long inputsApplied, inputsDiscarded;
+    private long lastInputLatency, maxInputLatency, totalInputLatency; // nanos, press -> move
+
+    public GameEngine(int cols, int rows) {
+        if (cols < 4 || rows < 1 || cols > MAX_SIZE || rows > MAX_SIZE)
+            throw new IllegalArgumentException("board must be 4x1 to " + MAX_SIZE + "x" + MAX_SIZE + ": " + cols + "x" + rows);
+        this.cols = cols;
+        this.rows = rows;
+        this.board = new Board(cols, rows);
+        this.snake = new SnakeBody(Math.min(cols * rows, 64));
+        this.obstacles = new int[Math.max(OBSTACLE_COUNT, cols * rows / 48)];
+        this.headings = new byte[obstacles.length];
+        reset();
+    }
+
+    /** Back to the MENU state with a fresh 3-cell snake, new apple and whatever the modes set up. */
+    public void reset() {
+        reset(ThreadLocalRandom.current().nextLong());
+    }
+
+    /** Like reset(), but apples, obstacles and the other mode items come from the given seed. */
+    public void reset(long seed) {
+        this.seed = seed;
+        rng = new SplittableRandom(seed);
+        board.clear();
+        snake.clear();
+        int cx = cols/2, cy = rows/2;
+        for (int i=0; i<3; i++) {
+            int c = cell(cx-i, cy);
+            snake.addTail(c);
+            board.set(c, Board.SNAKE);
+        }
+        dir = Direction.RIGHT;
+        inputs.clear();
+        applesEaten = 0;
+        ticks = 0;
+        vacated = NO_CELL;
+        apple = NO_CELL;
+        goldenApple = NO_CELL;
+        shrink = NO_CELL;
+        obstacleCount = 0;
+        portalCount = 0;
+        active = modes;
+        rules = GameMode.Pipeline.of(active);
+        rules.setup.run(this);
+        spawnApple();
+        state = GameState.MENU;
+        if (recorder != null) recorder.begin(this);
+        if (stream != null) stream.keyframe(this);
+    }
+
+    /**
+     * Replaces the snake with the given cells (head first) heading in dir. For benchmarks and
+     * tools that need a board in a specific state; the cells must not hold obstacles or portals.
+     */
+    public void setSnake(int[] headFirst, int length, Direction dir) {
+        for (int i=0; i<snake.length(); i++) board.set(snake.get(i), Board.EMPTY);
+        snake.clear();
+        for (int i=0; i<length; i++) {
+            int c = headFirst[i];
+            if (c == apple) apple = NO_CELL;
+            if (c == goldenApple) goldenApple = NO_CELL;
+            if (c == shrink) shrink = NO_CELL;
+            snake.addTail(c);
+            board.set(c, Board.SNAKE);
+        }
+        this.dir = dir;
+        inputs.clear();
+        vacated = NO_CELL;
+        if (apple == NO_CELL) spawnApple();
+        if (stream != null) stream.keyframe(this);
+    }
+
+    /** MENU/GAME_OVER/WON -> RUNNING. Returns false for illegal transitions. */
+    public boolean start() {
+        if (state != GameState.MENU && state != GameState.GAME_OVER && state != GameState.WON) return false;
+        state = GameState.RUNNING;
+        if (stream != null) stream.changed(this);
+        return true;
+    }
+
+    /** RUNNING <-> PAUSED. Returns false if the game is in neither state. */
+    public boolean togglePause() {
+        if (state == GameState.RUNNING) state = GameState.PAUSED;
+        else if (state == GameState.PAUSED) state = GameState.RUNNING;
+        else return false;
+        if (stream != null) stream.changed(this);
+        return true;
+    }
+
+    /** Any thread, lock-free. Queues a turn for a later tick; false if the queue is full. */
+    public boolean turn(Direction next) {
+        return inputs.offer(next, System.nanoTime());
+    }
+
+    /** Applies the first queued turn that is neither a no-op nor a reversal into yourself. */
+    private void applyInput() {
+        Direction next;
+        while ((next = inputs.poll()) != null) {
+            if (next == dir || next == dir.opposite()) { inputsDiscarded++; continue; }
+            dir = next;
+            if (recorder != null) recorder.turn(ticks, next);
+            inputsApplied++;
+            lastInputLatency = System.nanoTime() - inputs.lastStamp();
+            totalInputLatency += lastInputLatency;
+            maxInputLatency = Math.max(maxInputLatency, lastInputLatency);
+            return;
+        }
+    }
+
+    public boolean faster() {
+        int old = speedMs;
+        speedMs = Math.max(MIN_SPEED_MS, speedMs - 10);
+        if (stream != null && speedMs != old && state != GameState.RUNNING) stream.changed(this); // running: the tick reports it
+        return speedMs != old;
+    }
+
+    public boolean slower() {
+        int old = speedMs;
+        speedMs = Math.min(MAX_SPEED_MS, speedMs + 10);
+        if (stream != null && speedMs != old && state != GameState.RUNNING) stream.changed(this);
+        return speedMs != old;
+    }
+
+    /** One simulation step. Returns a mask of EVENT_* bits (0 if not running). */
+    public int tick() {
+        if (state != GameState.RUNNING) return 0;
+        int events = step();
+        if (stream != null) stream.tick(this, events);
+        return events;
+    }
+
+    private int step() {
+        ticks++;
+        vacated = NO_CELL;
+        applyInput();
+
+        GameMode.Pipeline p = rules;
+        int events = p.beforeMove.run(this);
+        int head = p.route.next(this, snake.head(), dir);
+        // Off a walled edge, into the snake, an obstacle, or a portal right behind another
+        if (head == NO_CELL || board.isBlocked(head)) return events | gameOver();
+
+        // Move: add new head, then eat whatever was there
+        byte kind = board.get(head);
+        snake.pushHead(head);
+        board.set(head, Board.SNAKE);
+        events |= EVENT_MOVED;
+        if (kind == Board.APPLE) events |= eatApple();
+        else if (kind != Board.EMPTY) events |= p.eat[kind].eat(this, head);
+
+        // If not grown, remove tail
+        if ((events & GREW) == 0) {
+            vacated = snake.popTail();
+            board.set(vacated, Board.EMPTY);
+        }
+        else if (apple == NO_CELL && goldenApple == NO_CELL) {
+            // Nowhere left to spawn and nothing left to eat: the snake filled the board.
+            state = GameState.WON;
+            events |= EVENT_WON;
+        }
+        return events;
+    }
+
+    private int gameOver() {
+        state = GameState.GAME_OVER;
+        return EVENT_GAME_OVER;
+    }
+
+    private int eatApple() {
+        applesEaten++;
+        spawnApple();
+        // Every 5 apples, slightly faster (down to a floor).
+        return applesEaten % 5 == 0 && faster() ? EVENT_ATE_APPLE | EVENT_SPEED_CHANGED : EVENT_ATE_APPLE;
+    }
+
+    private void spawnApple() {
+        // Constant time at any occupancy; NO_CELL once the board is full.
+        apple = board.place(rng, Board.APPLE);
+        if (apple != NO_CELL) rules.spawn.run(this);
+    }
+
+    // ---- Mode hooks (wired up by GameMode) ----
+
+    int walled(int c, Direction d) { return board.walled(c, d); }
+
+    int wrapped(int c, Direction d) { return board.wrapped(c, d); }
+
+    /** The portal linked to the one at c, or NO_CELL if c holds none. */
+    int portalExit(int c) {
+        if (board.get(c) != Board.PORTAL) return NO_CELL;
+        for (int i = 0; i < portalCount; i++) if (portals[i] == c) return portals[i ^ 1];
+        return NO_CELL;
+    }
+
+    int placeObstacles() {
+        for (int i = obstacleCount; i < obstacles.length; i++) {
+            int p = board.randomEmpty(rng);
+            if (p < 0) break; // board full
+            obstacles[obstacleCount++] = p;
+            board.set(p, Board.OBSTACLE);
+        }
+        return 0;
+    }
+
+    /** MOVING_OBSTACLES setup: obstacles (if OBSTACLES didn't place them) and a heading each. */
+    int aimObstacles() {
+        if (obstacleCount == 0) placeObstacles();
+        for (int i = 0; i < obstacleCount; i++) headings[i] = (byte) rng.nextInt(DIRS.length);
+        return 0;
+    }
+
+    int stepObstacles() {
+        if (ticks % GameMode.OBSTACLE_STEP != 0) return 0;
+        moveObstacles();
+        return EVENT_OBSTACLES_MOVED;
+    }
+
+    /** Each obstacle steps along its heading into an empty cell, turning back when it can't. No RNG. */
+    private void moveObstacles() {
+        for (int i = 0; i < obstacleCount; i++) {
+            int from = obstacles[i];
+            Direction d = DIRS[headings[i]];
+            int to = obstacleStep(from, d);
+            if (to == NO_CELL) {
+                d = d.opposite();
+                headings[i] = (byte) d.ordinal();
+                to = obstacleStep(from, d);
+                if (to == NO_CELL) continue; // boxed in; try again next time
+            }
+            board.set(from, Board.EMPTY);
+            board.set(to, Board.OBSTACLE);
+            obstacles[i] = to;
+        }
+    }
+
+    /** The empty cell an obstacle at c moves to going d, or NO_CELL. Obstacles skip portals. */
+    private int obstacleStep(int c, Direction d) {
+        int to = GameMode.WRAP.in(active) ? wrapped(c, d) : walled(c, d);
+        return to != NO_CELL && board.isEmpty(to) ? to : NO_CELL;
+    }
+
+    /**
+     * MOVING_OBSTACLES: will an obstacle step into c on the next tick? For controllers;
+     * ignores obstacles getting in each other's way.
+     */
+    public boolean obstacleEntering(int c) {
+        if (c == NO_CELL || !GameMode.MOVING_OBSTACLES.in(active) || (ticks + 1) % GameMode.OBSTACLE_STEP != 0) return false;
+        for (int i = 0; i < obstacleCount; i++) {
+            Direction d = DIRS[headings[i]];
+            int to = obstacleStep(obstacles[i], d);
+            if (to == NO_CELL) to = obstacleStep(obstacles[i], d.opposite());
+            if (to == c) return true;
+        }
+        return false;
+    }
+
+    int placePortals() {
+        int pairs = Math.min(GameMode.MAX_PORTAL_PAIRS,
+                Math.max(GameMode.PORTAL_PAIRS, (int) ((long) cols * rows * GameMode.PORTAL_PAIRS / 576)));
+        for (int i = 0; i < pairs && board.freeCount() >= 2; i++) {
+            for (int k = 0; k < 2; k++) {
+                int p = board.randomEmpty(rng);
+                portals[portalCount++] = p;
+                board.set(p, Board.PORTAL);
+            }
+        }
+        return 0;
+    }
+
+    int spawnGolden() {
+        if (goldenApple == NO_CELL && rng.nextInt(GameMode.GOLDEN_ODDS) == 0) goldenApple = board.place(rng, Board.GOLDEN);
+        return 0;
+    }
+
+    int eatGolden(int c) {
+        applesEaten += GameMode.GOLDEN_POINTS;
+        goldenApple = NO_CELL;
+        return faster() ? EVENT_ATE_GOLDEN | EVENT_SPEED_CHANGED : EVENT_ATE_GOLDEN;
+    }
+
+    int spawnShrink() {
+        if (shrink == NO_CELL && rng.nextInt(GameMode.SHRINK_ODDS) == 0) {
+            shrink = board.randomEmpty(rng);
+            if (shrink != NO_CELL) board.set(shrink, Board.SHRINK);
+        }
+        return 0;
+    }
+
+    /** Drops up to SHRINK_BY tail cells on top of the usual one; the snake keeps at least 2. */
+    int eatShrink(int c) {
+        shrink = NO_CELL;
+        for (int n = Math.min(GameMode.SHRINK_BY, snake.length() - 3); n > 0; n--) board.set(snake.popTail(), Board.EMPTY);
+        return EVENT_SHRANK;
+    }
+
+    // Cell packing
+    public int cell(int x, int y) { return y * cols + x; }
+    public int x(int cell) { return cell % cols; }
+    public int y(int cell) { return cell / cols; }
+
+    /** Where the head lands stepping from c towards d (wrap, portals); NO_CELL if that leaves the board. */
+    public int neighbor(int c, Direction d) { return rules.route.next(this, c, d); }
+
+    // Read-only view for renderers and controllers
+    public int cols() { return cols; }
+    public int rows() { return rows; }
+    public Direction direction() { return dir; }
+    public GameState state() { return state; }
+    public int score() { return applesEaten; }
+    public int speedMs() { return speedMs; }
+    public long ticks() { return ticks; }
+    /** Seed of the current game, as passed to (or picked by) reset. */
+    public long seed() { return seed; }
+    /** Tail cell the last tick moved off, or NO_CELL if the snake grew. */
+    public int vacatedCell() { return vacated; }
+    public int apple() { return apple; }
+    public int goldenApple() { return goldenApple; }
+    public int snakeLength() { return snake.length(); }
+    /** i = 0 is the head. */
+    public int snakeCell(int i) { return snake.get(i); }
+    public int obstacleCount() { return obstacleCount; }
+    public int obstacleCell(int i) { return obstacles[i]; }
+    /** MOVING_OBSTACLES: where obstacle i goes next (it turns back when that is blocked). */
+    public Direction obstacleHeading(int i) { return DIRS[headings[i]]; }
+    /** Portal cells; 2k and 2k+1 are linked. */
+    public int portalCount() { return portalCount; }
+    public int portalCell(int i) { return portals[i]; }
+    /** SHRINK pickup, or NO_CELL. */
+    public int shrinkPickup() { return shrink; }
+    /** Board.EMPTY/SNAKE/OBSTACLE/APPLE/GOLDEN/PORTAL/SHRINK at the given cell. */
+    public byte cellKind(int cell) { return board.get(cell); }
+    /** Snake, obstacle or portal: moving the head here ends the game. */
+    public boolean isBlocked(int cell) { return board.isBlocked(cell); }
+
+    // Input statistics
+    public long inputsApplied() { return inputsApplied; }
+    /** Turns dropped as no-ops/reversals at tick time, plus presses rejected by a full queue. */
+    public long inputsDiscarded() { return inputsDiscarded + inputs.rejected(); }
+    public long lastInputLatencyNanos() { return lastInputLatency; }
+    public long maxInputLatencyNanos() { return maxInputLatency; }
+    public long meanInputLatencyNanos() { return inputsApplied == 0 ? 0 : totalInputLatency / inputsApplied; }
+
+    /** Records every game from the next reset() on; null to stop recording. */
+    public void setRecorder(Replay.Recorder recorder) { this.recorder = recorder; }
+    public Replay.Recorder recorder() { return recorder; }
+
+    /** Streams every change from now on (a keyframe first); null to stop. */
+    public void setStream(EventLog.Writer stream) {
+        this.stream = stream;
+        if (stream != null) stream.keyframe(this);
+    }
+    public EventLog.Writer stream() { return stream; }
+
+    /** GameMode bits of the current game. */
+    public int modes() { return active; }
+    /** GameMode bits the next reset() sets up. */
+    public int nextModes() { return modes; }
+    /** From the next reset() on; WRAP switches at once, as setWrapWalls() does. */
+    public void setModes(int modes) {
+        int wrap = GameMode.WRAP.bit();
+        this.modes = (modes & ~wrap) | (this.modes & wrap);
+        setWrapWalls((modes & wrap) != 0);
+    }
+
+    public boolean isWrapWalls() { return GameMode.WRAP.in(active); }
+    public void setWrapWalls(boolean wrapWalls) {
+        int wrap = GameMode.WRAP.bit();
+        modes = wrapWalls ? modes | wrap : modes & ~wrap;
+        if (wrapWalls == isWrapWalls()) return;
+        active ^= wrap;
+        rules = GameMode.Pipeline.of(active); // new edges; nothing to set up
+        if (stream != null) stream.keyframe(this);
+        // Before the first tick the replay just picks up the new rule; a mid-game switch
+        // isn't part of the replay format, so that game goes unrecorded.
+        if (recorder != null) {
+            if (ticks == 0) recorder.begin(this);
+            else recorder.discard();
+        }
+    }
+    public boolean isObstaclesEnabled() { return GameMode.OBSTACLES.in(modes); }
+    /** Takes effect on the next reset(). */
+    public void setObstaclesEnabled(boolean on) {
+        modes = on ? modes | GameMode.OBSTACLES.bit() : modes & ~GameMode.OBSTACLES.bit();
+    }
+
+    // ---- Spectating: state decoded from an EventLog instead of simulated ----
+
+    /**
+     * Replaces the whole state with a keyframe's; the snake is given head first. headings
+     * (MOVING_OBSTACLES) may be null.
+     */
+    public void load(int modes, int[] obstacleCells, byte[] headings, int obstacleCount, int[] portalCells, int portalCount,
+                     int[] snakeCells, int snakeLength, Direction dir, int apple, int goldenApple, int shrink,
+                     int score, int speedMs, long ticks, GameState state) {
+        board.clear();
+        snake.clear();
+        this.modes = this.active = modes;
+        this.rules = GameMode.Pipeline.of(modes);
+        this.obstacleCount = Math.min(obstacleCount, obstacles.length);
+        for (int i = 0; i < this.obstacleCount; i++) {
+            obstacles[i] = obstacleCells[i];
+            this.headings[i] = headings == null ? 0 : headings[i];
+            board.set(obstacleCells[i], Board.OBSTACLE);
+        }
+        this.portalCount = Math.min(portalCount & ~1, portals.length);
+        for (int i = 0; i < this.portalCount; i++) {
+            portals[i] = portalCells[i];
+            board.set(portalCells[i], Board.PORTAL);
+        }
+        for (int i = 0; i < snakeLength; i++) {
+            snake.addTail(snakeCells[i]);
+            board.set(snakeCells[i], Board.SNAKE);
+        }
+        this.dir = dir;
+        this.apple = NO_CELL;
+        this.goldenApple = NO_CELL;
+        this.shrink = NO_CELL;
+        applyApple(apple);
+        applyGolden(goldenApple);
+        applyShrink(shrink);
+        this.applesEaten = score;
+        this.speedMs = speedMs;
+        this.ticks = ticks;
+        this.state = state;
+        this.vacated = NO_CELL;
+    }
+
+    /** One recorded tick: the head steps towards d, and the tail follows unless the snake grew. */
+    public void applyMove(Direction d, boolean grew) {
+        ticks++;
+        dir = d;
+        int head = neighbor(snake.head(), d);
+        if (head == NO_CELL) return; // not from this board; the next keyframe repairs it
+        if (head == apple) apple = NO_CELL;
+        if (head == goldenApple) goldenApple = NO_CELL;
+        if (head == shrink) shrink = NO_CELL;
+        snake.pushHead(head);
+        board.set(head, Board.SNAKE);
+        vacated = NO_CELL;
+        if (!grew) {
+            vacated = snake.popTail();
+            board.set(vacated, Board.EMPTY);
+        }
+    }
+
+    /** A recorded tick that ended the game: time passes, the snake stays where it was. */
+    public void applyBlocked(Direction d) {
+        ticks++;
+        dir = d;
+        vacated = NO_CELL;
+    }
+
+    public void applyApple(int cell) {
+        if (apple != NO_CELL && board.get(apple) == Board.APPLE) board.set(apple, Board.EMPTY);
+        apple = cell;
+        if (cell != NO_CELL) board.set(cell, Board.APPLE);
+    }
+
+    public void applyGolden(int cell) {
+        if (goldenApple != NO_CELL && board.get(goldenApple) == Board.GOLDEN) board.set(goldenApple, Board.EMPTY);
+        goldenApple = cell;
+        if (cell != NO_CELL) board.set(cell, Board.GOLDEN);
+    }
+
+    public void applyShrink(int cell) {
+        if (shrink != NO_CELL && board.get(shrink) == Board.SHRINK) board.set(shrink, Board.EMPTY);
+        shrink = cell;
+        if (cell != NO_CELL) board.set(cell, Board.SHRINK);
+    }
+
+    /** A recorded shrink: the tail drops cells until the snake is this long. */
+    public void applyLength(int length) {
+        while (snake.length() > Math.max(1, length)) board.set(snake.popTail(), Board.EMPTY);
+    }
+
+    /** A recorded obstacle step; the same deterministic move the player's engine made. */
+    public void applyObstacleStep() { moveObstacles(); }
+
+    public void applyScore(int score) { applesEaten = score; }
+    public void applySpeed(int speedMs) { this.speedMs = speedMs; }
+    public void applyState(GameState state) { this.state = state; }
+}
@@ -10,22 +10,48 @@ import java.awt.event.KeyEvent;
  * Design notes:
  *  - Keep window concerns here (menus/status), push game logic into GamePanel.
  *  - Use root pane key bindings so global shortcuts work even if focus shifts.
+ *  - Board size and zoom come from the command line (--board=COLSxROWS, --cell=PX); the panel
+ *    sits in a scroll pane so boards larger than the screen can be explored.
+ *  - --modes=wrap,obstacles,... picks the GameModes (saved like the Modes menu's choices).
+ *  - --stream[=FILE] publishes the game to an EventLog (default ~/.snake/live.snkl);
+ *    --watch[=FILE] opens a read-only spectator window on one instead of a game.
+ *  - --render=auto|flip|opengl|xrender|software picks the RenderBackend before AWT starts;
+ *    FLIP puts a FlipView where the scroll pane would be (and heavyweight popups, so the
+ *    menus still show above it).
+ *  - Startup: menus are filled the first time they open, and Startup times each launch
+ *    phase up to the first frame. --exit-after-first-frame quits there (without a display,
+ *    after painting one frame offscreen) for build.sh's CDS training run and timing runs.
  */
 public class GameFrame extends JFrame {
     private final GamePanel gamePanel;
     private final JLabel status;
 
-    public GameFrame() {
-        super("Snake — Enhanced");
+    public GameFrame() { this(GamePanel.COLS, GamePanel.ROWS, GamePanel.CELL); }
+
+    public GameFrame(int cols, int rows, int cell) { this(new GamePanel(cols, rows, cell)); }
+
+    public GameFrame(GamePanel panel) {
+        super(panel.isSpectator() ? "Snake — Spectator" : "Snake — Enhanced");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Content
-        gamePanel = new GamePanel();
-        status = new JLabel("Ready. Press SPACE to start. H for help.");
+        gamePanel = panel;
+        Component view;
+        if (panel.renderBackend() == RenderBackend.FLIP) {
+            JPopupMenu.setDefaultLightWeightPopupEnabled(false);
+            view = new FlipView(panel);
+        } else {
+            JScrollPane scroll = new JScrollPane(gamePanel);
+            scroll.setBorder(BorderFactory.createEmptyBorder());
+            // HUD is pinned to the viewport, so blitting scrolled pixels would smear it.
+            scroll.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
+            view = scroll;
+        }
+        status = new JLabel(panel.isSpectator() ? "Watching." : "Ready. Press SPACE to start. H for help.");
         status.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
 
         setLayout(new BorderLayout());
-        add(gamePanel, BorderLayout.CENTER);
+        add(view, BorderLayout.CENTER);
         add(status, BorderLayout.SOUTH);
 
         setJMenuBar(createMenuBar());
@@ -33,6 +59,7 @@ public class GameFrame extends JFrame {
         pack();
         setLocationRelativeTo(null);
         setVisible(true);
+        if (view instanceof FlipView) view.requestFocus();
 
         // Sync status text with panel
         gamePanel.setStatusListener(text -> SwingUtilities.invokeLater(() -> status.setText(text)));
@@ -47,56 +74,167 @@ public class GameFrame extends JFrame {
         getRootPane().registerKeyboardAction(e -> gamePanel.cycleTheme(),
                 KeyStroke.getKeyStroke(KeyEvent.VK_T, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
         getRootPane().registerKeyboardAction(e -> gamePanel.toggleWrapWalls(),
-                KeyStroke.getKeyStroke(KeyEvent.VK_W, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+                KeyStroke.getKeyStroke(KeyEvent.VK_B, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
     }
 
+    /** Only the titles; each menu's items are made the first time it opens. */
     private JMenuBar createMenuBar() {
         JMenuBar bar = new JMenuBar();
+        // Keys and --modes change what View and Modes check, so those are remade on every open
+        bar.add(lazyMenu("Game", this::fillGameMenu, false));
+        bar.add(lazyMenu("View", this::fillViewMenu, true));
+        JMenu modes = lazyMenu("Modes", this::fillModesMenu, true);
+        modes.setEnabled(!gamePanel.isSpectator());
+        bar.add(modes);
+        bar.add(lazyMenu("Help", this::fillHelpMenu, false));
+        return bar;
+    }
 
-        JMenu game = new JMenu("Game");
+    private static JMenu lazyMenu(String title, java.util.function.Consumer<JMenu> fill, boolean everyOpen) {
+        JMenu menu = new JMenu(title);
+        menu.addMenuListener(new javax.swing.event.MenuListener() {
+            @Override public void menuSelected(javax.swing.event.MenuEvent e) {
+                if (menu.getItemCount() > 0 && !everyOpen) return;
+                menu.removeAll();
+                fill.accept(menu);
+            }
+            @Override public void menuDeselected(javax.swing.event.MenuEvent e) { }
+            @Override public void menuCanceled(javax.swing.event.MenuEvent e) { }
+        });
+        return menu;
+    }
+
+    private void fillGameMenu(JMenu game) {
         JMenuItem start = new JMenuItem("Start (Space)");
         start.addActionListener(e -> gamePanel.start());
         JMenuItem pause = new JMenuItem("Pause/Resume (P)");
         pause.addActionListener(e -> gamePanel.togglePause());
         JMenuItem restart = new JMenuItem("Restart (R)");
         restart.addActionListener(e -> gamePanel.restart());
+        JMenuItem scores = new JMenuItem("High Scores");
+        scores.addActionListener(e -> showHighScores());
         JMenuItem exit = new JMenuItem("Exit");
         exit.addActionListener(e -> System.exit(0));
         game.add(start);
         game.add(pause);
         game.add(restart);
+        game.add(scores);
         game.addSeparator();
         game.add(exit);
+    }
 
-        JMenu view = new JMenu("View");
-        JCheckBoxMenuItem grid = new JCheckBoxMenuItem("Grid", true);
+    private void fillViewMenu(JMenu view) {
+        JCheckBoxMenuItem grid = new JCheckBoxMenuItem("Grid", gamePanel.isGridShown());
         grid.addActionListener(e -> gamePanel.toggleGrid());
         JMenuItem theme = new JMenuItem("Cycle Theme (T)");
         theme.addActionListener(e -> gamePanel.cycleTheme());
-        JCheckBoxMenuItem wrap = new JCheckBoxMenuItem("Wrap Walls", false);
-        wrap.addActionListener(e -> gamePanel.toggleWrapWalls());
+        JCheckBoxMenuItem sound = new JCheckBoxMenuItem("Sound (M)", gamePanel.isSoundOn());
+        sound.addActionListener(e -> gamePanel.toggleSound());
+        sound.setEnabled(!gamePanel.isSpectator());
         view.add(grid);
         view.add(theme);
-        view.add(wrap);
+        view.add(sound);
+    }
 
-        JMenu help = new JMenu("Help");
+    /** One check box per GameMode. */
+    private void fillModesMenu(JMenu modes) {
+        for (GameMode m : GameMode.values()) {
+            JCheckBoxMenuItem item = new JCheckBoxMenuItem(MODE_LABELS[m.ordinal()], gamePanel.isModeOn(m));
+            item.addActionListener(e -> gamePanel.toggleMode(m));
+            modes.add(item);
+        }
+    }
+
+    private void fillHelpMenu(JMenu help) {
         JMenuItem about = new JMenuItem("About");
         about.addActionListener(e -> JOptionPane.showMessageDialog(this,
                 "Snake — Enhanced\n" +
                 "• Arrow keys / WASD to move\n" +
                 "• Space to start, P to pause, R to restart\n" +
-                "• G grid, T theme, W wrap walls, O obstacles\n" +
-                "• +/- speed, H toggle help overlay\n\n" +
+                "• G grid, T theme, B wrap walls, O obstacles\n" +
+                "• +/- speed, M sound, H toggle help overlay\n\n" +
                 "Created by you ✨", "About", JOptionPane.INFORMATION_MESSAGE));
         help.add(about);
+    }
 
-        bar.add(game);
-        bar.add(view);
-        bar.add(help);
-        return bar;
+    private static final String[] MODE_LABELS = {
+            "Wrap Walls (B)", "Obstacles (O)", "Golden Apples", "Moving Obstacles", "Portals", "Shrink Pickups"
+    };
+
+    private void showHighScores() {
+        StringBuilder sb = new StringBuilder();
+        var fmt = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        int rank = 1;
+        for (SettingsStore.HighScore s : gamePanel.topScores()) {
+            String when = s.epochMillis() == 0 ? "" : java.time.Instant.ofEpochMilli(s.epochMillis())
+                    .atZone(java.time.ZoneId.systemDefault()).format(fmt);
+            sb.append(String.format("%2d.  %5d   %s   %s%n", rank++, s.score(), when, s.replay()));
+        }
+        if (sb.length() == 0) sb.append("No games yet.");
+        JTextArea text = new JTextArea(sb.toString());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(this, text, "High Scores", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cols = GamePanel.COLS, rows = GamePanel.ROWS, cell = GamePanel.CELL;
+        java.nio.file.Path stream = null, watch = null;
+        RenderBackend render = RenderBackend.AUTO;
+        Integer modes = null;
+        boolean exitAfterFirstFrame = false;
+        for (String a : args) {
+            if (a.startsWith("--board=")) {
+                String[] wh = a.substring("--board=".length()).split("x");
+                if (wh.length != 2) throw new IllegalArgumentException("expected --board=COLSxROWS, got " + a);
+                cols = Integer.parseInt(wh[0]);
+                rows = Integer.parseInt(wh[1]);
+            } else if (a.startsWith("--cell=")) {
+                cell = Integer.parseInt(a.substring("--cell=".length()));
+            } else if (a.equals("--stream") || a.startsWith("--stream=")) {
+                stream = a.contains("=") ? java.nio.file.Path.of(a.substring("--stream=".length())) : EventLog.defaultPath();
+            } else if (a.startsWith("--modes=")) {
+                modes = GameMode.parse(a.substring("--modes=".length()));
+            } else if (a.startsWith("--render=")) {
+                render = RenderBackend.parse(a.substring("--render=".length()));
+            } else if (a.equals("--watch") || a.startsWith("--watch=")) {
+                watch = a.contains("=") ? java.nio.file.Path.of(a.substring("--watch=".length())) : EventLog.defaultPath();
+            } else if (a.equals("--exit-after-first-frame")) {
+                exitAfterFirstFrame = true;
+            }
+        }
+        render.select(); // before the first AWT class loads
+        if (exitAfterFirstFrame) Startup.exitAfterFirstFrame();
+        SettingsStore.preload(); // Preferences and the score file load while AWT starts up
+        int c = cols, r = rows, px = cell;
+        Integer m = modes;
+        RenderBackend backend = render;
+        boolean offscreen = exitAfterFirstFrame && GraphicsEnvironment.isHeadless();
+        EventLog.Reader reader = watch == null ? null : EventLog.Reader.open(watch, 30_000);
+        EventLog.Writer writer = stream == null || reader != null ? null : EventLog.Writer.create(stream, cols, rows);
+        Startup.mark("main");
+        SwingUtilities.invokeLater(() -> {
+            Startup.mark("toolkit");
+            GamePanel panel = reader != null ? new GamePanel(reader, px) : new GamePanel(c, r, px);
+            panel.setRenderBackend(backend);
+            if (m != null) panel.setModes(m);
+            if (writer != null) panel.streamTo(writer);
+            Startup.mark("panel");
+            if (offscreen) { firstFrameOffscreen(panel); return; }
+            new GameFrame(panel);
+            Startup.mark("window");
+        });
     }
 
-    public static void main(String[] args) {
-        SwingUtilities.invokeLater(GameFrame::new);
+    /** No display: the same launch up to one frame painted into an image (CDS training, CI timing). */
+    private static void firstFrameOffscreen(GamePanel panel) {
+        Dimension size = panel.getPreferredSize();
+        int w = Math.min(size.width, 1280), h = Math.min(size.height, 960);
+        panel.setSize(w, h);
+        java.awt.image.BufferedImage img = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        panel.paint(g);
+        g.dispose();
+        Startup.firstFrame("offscreen");
     }
 }
\ No newline at end of file
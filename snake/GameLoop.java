@@ -0,0 +1,201 @@
+package com.mycompany.snake;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GameLoop
+ * Fixed-timestep driver for a GameEngine on its own thread, decoupled from rendering.
+ * Design notes:
+ *  - Ticks fire on a virtual clock (one step = engine.speedMs()); a slow frame or a busy EDT
+ *    no longer slows the game, and speed changes no longer change the frame rate.
+ *  - Frames are requested separately at the display refresh rate while the game runs;
+ *    alpha() tells the renderer how far into the current step it is, for interpolation.
+ *  - Backpressure: ticks are never skipped or merged. If the loop falls more than
+ *    MAX_CATCH_UP steps behind, it runs those and lets game time slip for the rest,
+ *    counting it in slips()/slippedNanos() instead of hiding it.
+ *  - All engine access happens under the engine's monitor, which the UI also takes.
+ *  - An optional Controller (autopilot) decides under the same lock right before each tick,
+ *    so it always sees the state the turn will be applied to.
+ *  - With a Source (a spectator) the rules don't run: once per frame the loop applies
+ *    whatever ticks the source has ready, and the interpolation clock restarts at each.
+ */
+public final class GameLoop implements Runnable {
+    public interface Listener {
+        /** Loop thread, engine lock held, after every tick that did something. */
+        void onTick(int events);
+        /** Loop thread, no lock held, once per display frame while the game runs. */
+        void onFrame();
+    }
+
+    /** Where a spectator's ticks come from instead of engine.tick() (see EventLog.Reader). */
+    public interface Source {
+        /** Engine lock held: applies the next recorded tick; its EVENT_* bits, 0 when caught up. */
+        int next(GameEngine engine);
+    }
+
+    public static final int MAX_CATCH_UP = 5;
+    private static final int MAX_FOLLOW = 4096; // source ticks per frame; late joiners start at a keyframe
+
+    private final GameEngine engine;
+    private final Listener listener;
+    private final long frameNanos;
+    private final Source source;
+    private volatile boolean alive;
+    private volatile Controller controller;
+    private volatile PerfStats stats;
+    private Thread thread;
+
+    // Clock state, written by the loop thread and read by alpha()
+    private volatile long lastTickAt, stepNanos = 1;
+    private volatile boolean running;
+
+    // Counters
+    private volatile long ticks, frames, slips, slippedNanos;
+
+    public GameLoop(GameEngine engine, Listener listener, int framesPerSecond) {
+        this(engine, listener, framesPerSecond, null);
+    }
+
+    /** With a non-null source the engine only mirrors it; tick() is never called. */
+    public GameLoop(GameEngine engine, Listener listener, int framesPerSecond, Source source) {
+        this.engine = engine;
+        this.listener = listener;
+        this.frameNanos = 1_000_000_000L / Math.max(1, framesPerSecond);
+        this.source = source;
+    }
+
+    public synchronized void start() {
+        if (alive) return;
+        alive = true;
+        thread = new Thread(this, "snake-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        alive = false;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /** Nudges the loop to re-read the engine state now (e.g. right after start or unpause). */
+    public void wake() {
+        Thread t = thread;
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    @Override public void run() {
+        if (source != null) { follow(); return; }
+        long nextTick = 0, nextFrame = System.nanoTime(), lastRanAt = 0;
+        boolean wasRunning = false;
+        while (alive) {
+            long step;
+            boolean run;
+            synchronized (engine) {
+                run = engine.state() == GameState.RUNNING;
+                step = engine.speedMs() * 1_000_000L;
+            }
+            long now = System.nanoTime();
+            stepNanos = step;
+
+            if (!run) {
+                wasRunning = running = false;
+                LockSupport.parkNanos(this, frameNanos);
+                continue;
+            }
+            if (!wasRunning) {
+                // First step is a full interval after (re)starting, like the old Swing Timer.
+                wasRunning = running = true;
+                lastTickAt = now;
+                lastRanAt = 0; // a pause isn't tick jitter
+                nextTick = now + step;
+            }
+
+            int n = 0;
+            while (now >= nextTick && n < MAX_CATCH_UP) {
+                int events;
+                synchronized (engine) {
+                    Controller c = controller;
+                    if (c != null) {
+                        Direction d = c.decide(engine);
+                        if (d != null) engine.turn(d);
+                    }
+                    events = engine.tick();
+                    if (events != 0) listener.onTick(events);
+                }
+                ticks++;
+                n++;
+                PerfStats st = stats;
+                if (st != null) {
+                    long ranAt = System.nanoTime();
+                    if (lastRanAt != 0) st.recordTick(ranAt - lastRanAt, step);
+                    lastRanAt = ranAt;
+                }
+                lastTickAt = nextTick;
+                nextTick += step;
+                if ((events & (GameEngine.EVENT_GAME_OVER | GameEngine.EVENT_WON)) != 0) break;
+            }
+            if (now >= nextTick && n == MAX_CATCH_UP) {
+                // Still behind: keep every tick we ran, slip the clock for the rest.
+                slips++;
+                slippedNanos += now - nextTick;
+                lastTickAt = now;
+                nextTick = now + step;
+            }
+
+            if (now >= nextFrame) {
+                listener.onFrame();
+                frames++;
+                nextFrame = Math.max(nextFrame + frameNanos, now);
+            }
+
+            long wait = Math.min(nextTick, nextFrame) - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    /** Spectator loop: polls the source once per frame and frames whenever something changed. */
+    private void follow() {
+        long nextFrame = System.nanoTime();
+        while (alive) {
+            int n = 0, events;
+            synchronized (engine) {
+                while (n < MAX_FOLLOW && (events = source.next(engine)) != 0) {
+                    listener.onTick(events);
+                    n++;
+                }
+                running = engine.state() == GameState.RUNNING;
+                stepNanos = engine.speedMs() * 1_000_000L;
+            }
+            long now = System.nanoTime();
+            if (n > 0) {
+                ticks += n;
+                lastTickAt = now;
+            }
+            if (running || n > 0) {
+                listener.onFrame();
+                frames++;
+            }
+            nextFrame = Math.max(nextFrame + frameNanos, now);
+            LockSupport.parkNanos(this, nextFrame - System.nanoTime());
+        }
+    }
+
+    /** Receives the wall-clock interval of every tick, to compare against the step. */
+    public void setStats(PerfStats stats) { this.stats = stats; }
+
+    /** Steers the snake from the loop thread; null hands control back to the player. */
+    public void setController(Controller c) { controller = c; }
+    public Controller controller() { return controller; }
+
+    /** Fraction of the current step that has elapsed, in [0, 1]; 1 when not running. */
+    public double alpha() {
+        if (!running) return 1;
+        double a = (System.nanoTime() - lastTickAt) / (double) stepNanos;
+        return a < 0 ? 0 : Math.min(1, a);
+    }
+
+    public long ticks() { return ticks; }
+    public long frames() { return frames; }
+    public long slips() { return slips; }
+    public long slippedNanos() { return slippedNanos; }
+}
@@ -0,0 +1,137 @@
+package com.mycompany.snake;
+
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * GameMode
+ * Optional rules a game is played with. Each mode contributes hooks to GameEngine's tick
+ * pipeline; with none the plain rules run: walls kill, apples grow.
+ * Design notes:
+ *  - Hook points: setup (after reset lays out the snake), beforeMove (every tick, before the
+ *    head moves), route (where a step lands: walls, wrap, portals), spawn (after each apple)
+ *    and eat, dispatched on the Board kind under the new head, so an item mode adds a kind
+ *    instead of a check per tick.
+ *  - GameEngine assembles a Pipeline once per game (and again when wrap is toggled). A hook
+ *    point no mode uses gets a no-op, one mode's hook is used as is, several are chained.
+ *    The tick pays an interface call per hook point instead of a flag check per rule.
+ *    Whether the JIT inlines one is not up to a single game: each call site is profiled
+ *    across every game in the JVM, and all chains made by then() are the same class.
+ *  - Hooks hold no state. What they change (obstacles, portals, pickups) lives in GameEngine,
+ *    where renderers, Replay and EventLog read it; the hooks are its package-private steps.
+ *  - Randomness only comes from the game's RNG, in mode order, so seeded games and replays
+ *    stay deterministic. Bits are stored in replays and logs: append modes, never reorder.
+ */
+public enum GameMode {
+    /** Leaving the board on one edge enters it on the opposite one. */
+    WRAP,
+    /** Fixed obstacles, OBSTACLE_COUNT on the classic board. */
+    OBSTACLES,
+    /** Now and then (1 in GOLDEN_ODDS apples) a golden apple on a random free cell: +5 and faster. */
+    GOLDEN,
+    /** Obstacles (placed as for OBSTACLES) drift a cell every OBSTACLE_STEP ticks, turning back when blocked. */
+    MOVING_OBSTACLES,
+    /** Linked pairs of portals: entering one leaves through the other, same direction. */
+    PORTALS,
+    /** Now and then a pickup that takes SHRINK_BY cells off the tail. */
+    SHRINK;
+
+    /** What a new engine plays: the original rules. */
+    public static final int CLASSIC = GOLDEN.bit();
+    public static final int GOLDEN_ODDS = 8;      // 1 in 8 apples brings a golden one
+    public static final int GOLDEN_POINTS = 5;    // an apple is 1
+    public static final int SHRINK_ODDS = 6;
+    public static final int SHRINK_BY = 3;
+    public static final int OBSTACLE_STEP = 4;    // ticks
+    public static final int PORTAL_PAIRS = 2;     // on the classic board; same density when larger
+    public static final int MAX_PORTAL_PAIRS = 32;
+
+    public int bit() { return 1 << ordinal(); }
+
+    public boolean in(int modes) { return (modes & bit()) != 0; }
+
+    /** Mode bits from a list like "wrap,moving_obstacles"; "" or "none" is no modes. */
+    public static int parse(String list) {
+        int modes = 0;
+        for (String s : list.split(",")) {
+            s = s.trim();
+            if (s.isEmpty() || s.equalsIgnoreCase("none")) continue;
+            try {
+                modes |= valueOf(s.toUpperCase(Locale.ROOT).replace('-', '_')).bit();
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown mode " + s + "; expected " + names(~0));
+            }
+        }
+        return modes;
+    }
+
+    /** The inverse of parse(). */
+    public static String names(int modes) {
+        StringJoiner j = new StringJoiner(",");
+        for (GameMode m : values()) if (m.in(modes)) j.add(m.toString());
+        return j.length() == 0 ? "none" : j.toString();
+    }
+
+    @Override public String toString() { return name().toLowerCase(Locale.ROOT); }
+
+    /** Adds this mode's hooks. Modes contribute in declaration order. */
+    private void contribute(Pipeline p) {
+        switch (this) {
+            case WRAP -> p.route = GameEngine::wrapped;
+            case OBSTACLES -> p.setup = then(p.setup, GameEngine::placeObstacles);
+            case GOLDEN -> {
+                p.spawn = then(p.spawn, GameEngine::spawnGolden);
+                p.eat[Board.GOLDEN] = GameEngine::eatGolden;
+            }
+            case MOVING_OBSTACLES -> {
+                p.setup = then(p.setup, GameEngine::aimObstacles);
+                p.beforeMove = then(p.beforeMove, GameEngine::stepObstacles);
+            }
+            case PORTALS -> {
+                p.setup = then(p.setup, GameEngine::placePortals);
+                Route edges = p.route; // portals sit on top of walls or wrap
+                p.route = (e, from, d) -> {
+                    int to = edges.next(e, from, d), exit;
+                    return to != GameEngine.NO_CELL && (exit = e.portalExit(to)) != GameEngine.NO_CELL
+                            ? edges.next(e, exit, d) : to;
+                };
+            }
+            case SHRINK -> {
+                p.spawn = then(p.spawn, GameEngine::spawnShrink);
+                p.eat[Board.SHRINK] = GameEngine::eatShrink;
+            }
+        }
+    }
+
+    // ---- Hooks ----
+
+    /** Where a step from a cell towards d lands; NO_CELL off a walled edge. */
+    @FunctionalInterface interface Route { int next(GameEngine e, int from, Direction d); }
+
+    /** Returns EVENT_* bits. */
+    @FunctionalInterface interface Hook {
+        Hook NONE = e -> 0;
+        int run(GameEngine e);
+    }
+
+    /** The head moved onto a cell holding this kind; returns EVENT_* bits. */
+    @FunctionalInterface interface Eat { int eat(GameEngine e, int cell); }
+
+    private static Hook then(Hook a, Hook b) {
+        if (a == Hook.NONE) return b;
+        return e -> a.run(e) | b.run(e);
+    }
+
+    /** One game's hooks; GameEngine calls them straight from its fields. */
+    static final class Pipeline {
+        Route route = GameEngine::walled;
+        Hook setup = Hook.NONE, beforeMove = Hook.NONE, spawn = Hook.NONE;
+        final Eat[] eat = new Eat[Board.KINDS]; // by kind; APPLE is GameEngine's own
+
+        static Pipeline of(int modes) {
+            Pipeline p = new Pipeline();
+            for (GameMode m : values()) if (m.in(modes)) m.contribute(p);
+            return p;
+        }
+    }
+}
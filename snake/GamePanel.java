@@ -3,73 +3,240 @@ package com.mycompany.snake;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.prefs.Preferences;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * GamePanel
- * Renders and runs the Snake simulation on a fixed grid.
+ * Renders a GameEngine and feeds it input; the rules themselves live in GameEngine.
  * Design notes:
- *  - All movement ticks happen on Swing's Timer (game loop on the EDT).
- *  - Grid is 24x24 at 25px to keep it visually crisp and light on older GPUs.
- *  - Golden apples speed the loop and act as small risk/reward spikes.
- *  - No background threads; avoids synchronization bugs for beginners.
+ *  - Ticks run on GameLoop's own thread at a fixed timestep; the EDT only renders and
+ *    handles input. Both sides lock on the engine, so paint always sees a whole tick.
+ *  - Frames are driven at the display refresh rate and interpolate head and tail
+ *    between ticks, painting just those cells plus whatever the ticks touched.
+ *  - Default grid is 24x24 at 25px; board size (up to 4096x4096) and zoom are runtime choices.
+ *  - Only tiles inside the clip are painted, so a scrolled/zoomed view of a huge arena
+ *    costs the same as the classic board.
+ *  - Ticks repaint only the cells they touched; gradient, grid, obstacles and portals come
+ *    from a cached (volatile) background image rebuilt on theme, grid, zoom or a new game.
+ *    Moving obstacles are sprites instead, and the ticks that move them (or shrink the
+ *    snake) repaint the view.
+ *  - Frames are composed by blitting: each Theme pre-renders its cell sprites at the device
+ *    scale, and colors/fonts are created once instead of every paint.
+ *  - The RenderBackend decides antialiasing and where frames go: through Swing's repaint
+ *    path here, or (FLIP) whole frames into a FlipView's BufferStrategy, in which case
+ *    this panel is never on screen itself.
+ *  - Every game is recorded (seed + turns) and saved to ~/.snake/replays when it ends.
+ *  - Settings and the top-10 score table go through SettingsStore, which writes them off
+ *    the EDT; toggles only update memory.
+ *  - Golden apples speed the loop and act as small risk/reward spikes. They, wrap, obstacles
+ *    and the other GameModes are picked per game and saved as one "modes" setting.
+ *  - streamTo() publishes the game to an EventLog; a spectator panel (built from an
+ *    EventLog.Reader) mirrors one read-only, with the same rendering and no rules or input.
  */
-public class GamePanel extends JPanel implements ActionListener {
-    // Logical grid
+public class GamePanel extends JPanel implements GameLoop.Listener, Scrollable {
+    // Logical grid (defaults)
     public static final int CELL = 25;
     public static final int COLS = 24;             // 24 * 25 = 600
     public static final int ROWS = 24;             // 24 * 25 = 600
-    public static final int WIDTH = COLS * CELL;
-    public static final int HEIGHT = ROWS * CELL;
+    public static final int MIN_CELL = 2;
+    public static final int MAX_CELL = 48;
+    private int cell;
 
     // Game data
-    private final List<Point> snake = new ArrayList<>();
-    private Direction dir = Direction.RIGHT;
-    private GameState state = GameState.MENU;
+    private final GameEngine engine;
+    private final EventLog.Reader watching;  // spectator mode when non-null
     private boolean showGrid = true;
-    private boolean wrapWalls = false;
     private boolean showHelpOverlay = true;
-    private boolean obstaclesEnabled = false;
-
-    private final List<Point> obstacles = new ArrayList<>();
-    private Point apple;
-    private Point goldenApple;
-    private int applesEaten = 0;
+    private boolean showPerf = false;
     private int highScore = 0;
 
-    // Timing
-    private int speedMs = 120; // lower is faster
-    private final Timer timer;
-
-    // Visual themes
+    // Timing and output
+    private final GameLoop loop;
+    private RenderBackend backend = RenderBackend.AUTO;
+    private FlipView flip;                    // FLIP: frames go here instead of through Swing
+    private final Rectangle flipView = new Rectangle(); // board area the FlipView shows
+    private final Autopilot autopilot = new Autopilot(true);
+    private final PerfStats perf;
+    private final AudioMixer audio = new AudioMixer();
+    private long framePaintNanos;             // paintComponent time within the current renderFrame
+    private boolean inFrame;
+    private PerfStats.Snapshot perfShown;     // what the overlay text was built from
+    private boolean firstFrameShown;          // EDT; reported to Startup once
+    private final String[] perfLines = new String[5];
+    private final AtomicBoolean framePending = new AtomicBoolean();
+
+    // Rendering caches; dirty/lastApple/lastGolden are guarded by the engine lock
+    private int[] dirty = new int[32];        // cells touched by ticks since the last frame
+    private int dirtyCount;
+    private boolean scoreDirty, fullRepaint;
+    private int lastApple = GameEngine.NO_CELL, lastGolden = GameEngine.NO_CELL, lastPickup = GameEngine.NO_CELL;
+    private int[] frameCells = new int[32];   // EDT-side copy of dirty
+    private int paintedHeadFrom = GameEngine.NO_CELL, paintedTailFrom = GameEngine.NO_CELL; // last frame's slides
+    private Image bgImage;                    // gradient + grid + obstacles for bgRect (volatile when on screen)
+    private final Rectangle bgRect = new Rectangle();
+    private double bgScale;                   // device pixels per logical pixel bgImage was drawn at
+    private boolean bgValid;
+    private Font hudFont, centerFont, perfFont, fontBase;
+    private String scoreText = "", highText = "";
+    private int scoreTextFor = -1, highTextFor = -1;
+
+    // Fixed overlay colors
+    private static final Color OBSTACLE = new Color(0,0,0,90);
+    private static final Color GOLDEN_RIM = new Color(255,255,255,120);
+    private static final Color PORTAL = new Color(0xB10DC9);
+    private static final Color PICKUP = new Color(235,235,255);
+    private static final Color EYES = new Color(0,0,0,120);
+    private static final Color PANEL_FILL = new Color(0,0,0,100);
+    private static final Color PANEL_EDGE = new Color(255,255,255,80);
+    private static final Color BANNER_FILL = new Color(0,0,0,120);
+    private static final long MAX_BG_PIXELS = 2048L * 2048;
+
+    // Visual themes; each one owns its pre-rendered cell sprites. Created when first shown.
     private static class Theme {
         final Color bg1, bg2, snakeHead, snakeBody, apple, golden, grid, text;
+        // Sprites rasterized at cell * scale device pixels; rebuilt when either changes.
+        final Image[] heads = new Image[Direction.values().length];
+        Image body, appleSprite;
+        // Only some modes draw these, so each is rasterized the first time it's asked for.
+        private Image goldenSprite, obstacle, portal, pickup;
+        private int spriteCell;
+        private double spriteScale;
+        private GraphicsConfiguration spriteGc;
+        private Object spriteAntialias;
+        private GradientPaint bgPaint;
+
         Theme(Color bg1, Color bg2, Color snakeHead, Color snakeBody, Color apple, Color golden, Color grid, Color text) {
             this.bg1 = bg1; this.bg2 = bg2; this.snakeHead = snakeHead; this.snakeBody = snakeBody;
             this.apple = apple; this.golden = golden; this.grid = grid; this.text = text;
         }
+
+        void ensureSprites(int cell, double scale, GraphicsConfiguration gc, Object aa) {
+            if (body != null && spriteCell == cell && spriteScale == scale && spriteAntialias == aa) return;
+            spriteCell = cell;
+            spriteScale = scale;
+            spriteGc = gc;
+            spriteAntialias = aa;
+            for (Direction d : Direction.values()) heads[d.ordinal()] = sprite(cell, scale, gc, aa, g -> paintHead(g, cell, d));
+            body = sprite(cell, scale, gc, aa, g -> {
+                g.setColor(snakeBody);
+                g.fillRoundRect(px(3,cell), px(3,cell), cell-px(6,cell), cell-px(6,cell), px(8,cell),px(8,cell));
+            });
+            appleSprite = sprite(cell, scale, gc, aa, g -> {
+                g.setColor(apple);
+                g.fillOval(px(4,cell), px(4,cell), cell-px(8,cell), cell-px(8,cell));
+            });
+            goldenSprite = obstacle = portal = pickup = null;
+        }
+
+        Image golden() {
+            if (goldenSprite == null) goldenSprite = sprite(g -> {
+                int cell = spriteCell;
+                g.setColor(golden);
+                g.fillOval(px(6,cell), px(6,cell), cell-px(12,cell), cell-px(12,cell));
+                g.setColor(GOLDEN_RIM);
+                g.drawOval(px(6,cell), px(6,cell), cell-px(12,cell), cell-px(12,cell));
+            });
+            return goldenSprite;
+        }
+
+        Image obstacle() {
+            if (obstacle == null) obstacle = sprite(g -> {
+                int cell = spriteCell;
+                g.setColor(OBSTACLE);
+                g.fillRoundRect(px(2,cell), px(2,cell), cell-px(4,cell), cell-px(4,cell), px(6,cell),px(6,cell));
+            });
+            return obstacle;
+        }
+
+        Image portal() {
+            if (portal == null) portal = sprite(g -> {
+                int cell = spriteCell;
+                g.setColor(PORTAL);
+                g.setStroke(new BasicStroke(Math.max(1, px(3,cell))));
+                g.drawOval(px(3,cell), px(3,cell), cell-px(6,cell), cell-px(6,cell));
+                g.fillOval(px(9,cell), px(9,cell), cell-px(18,cell), cell-px(18,cell));
+            });
+            return portal;
+        }
+
+        Image pickup() {
+            if (pickup == null) pickup = sprite(g -> {
+                // Arrows pointing in: shrink
+                int cell = spriteCell, m = cell/2, a = px(5,cell), b = px(10,cell);
+                g.setColor(PICKUP);
+                g.fillPolygon(new int[]{m-b, m-a, m-a}, new int[]{m, m-a, m+a}, 3);
+                g.fillPolygon(new int[]{m+b, m+a, m+a}, new int[]{m, m-a, m+a}, 3);
+            });
+            return pickup;
+        }
+
+        private Image sprite(Consumer<Graphics2D> painter) {
+            return sprite(spriteCell, spriteScale, spriteGc, spriteAntialias, painter);
+        }
+
+        private void paintHead(Graphics2D g, int cell, Direction d) {
+            g.setColor(snakeHead);
+            g.fillRoundRect(px(2,cell), px(2,cell), cell-px(4,cell), cell-px(4,cell), px(10,cell),px(10,cell));
+            // Eyes
+            g.setColor(EYES);
+            int eye = Math.max(1, px(4,cell)), off = px(6,cell);
+            switch (d) {
+                case LEFT -> { g.fillOval(off, off, eye, eye); g.fillOval(off, cell-off-eye, eye, eye); }
+                case RIGHT -> { g.fillOval(cell-off-eye, off, eye, eye); g.fillOval(cell-off-eye, cell-off-eye, eye, eye); }
+                case UP -> { g.fillOval(off, off, eye, eye); g.fillOval(cell-off-eye, off, eye, eye); }
+                case DOWN -> { g.fillOval(off, cell-off-eye, eye, eye); g.fillOval(cell-off-eye, cell-off-eye, eye, eye); }
+            }
+        }
+
+        private static Image sprite(int cell, double scale, GraphicsConfiguration gc, Object aa, Consumer<Graphics2D> painter) {
+            int size = Math.max(1, (int) Math.ceil(cell * scale));
+            BufferedImage img = gc != null ? gc.createCompatibleImage(size, size, Transparency.TRANSLUCENT)
+                    : new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = img.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, aa);
+            g.scale(size / (double) cell, size / (double) cell);
+            painter.accept(g);
+            g.dispose();
+            return img;
+        }
+
+        GradientPaint gradient(int w, int h) {
+            if (bgPaint == null || bgPaint.getPoint2().getX() != w || bgPaint.getPoint2().getY() != h)
+                bgPaint = new GradientPaint(0,0, bg1, w,h, bg2);
+            return bgPaint;
+        }
+    }
+    private static final int THEMES = 3;
+    private final Theme[] themes = new Theme[THEMES]; // by index, created on first use
+
+    private Theme theme() {
+        Theme t = themes[themeIndex];
+        return t != null ? t : (themes[themeIndex] = newTheme(themeIndex));
     }
-    private final Theme[] themes = new Theme[]{
-            new Theme(new Color(18,18,18), new Color(30,30,30),
+
+    private static Theme newTheme(int index) {
+        return switch (index) {
+            case 0 -> new Theme(new Color(18,18,18), new Color(30,30,30),
                     new Color(0x7FDBFF), new Color(0x39CCCC),
                     new Color(0xFF4136), new Color(0xFFDC00),
-                    new Color(60,60,60), new Color(230,230,230)),
-            new Theme(new Color(0x0B486B), new Color(0x3B8686),
+                    new Color(60,60,60), new Color(230,230,230));
+            case 1 -> new Theme(new Color(0x0B486B), new Color(0x3B8686),
                     new Color(0x88CC00), new Color(0x66A61E),
                     new Color(0xFF6B6B), new Color(0xFFD93D),
-                    new Color(255,255,255,40), Color.WHITE),
-            new Theme(new Color(0x232526), new Color(0x414345),
+                    new Color(255,255,255,40), Color.WHITE);
+            default -> new Theme(new Color(0x232526), new Color(0x414345),
                     new Color(0xFEC5E5), new Color(0xFD79A8),
                     new Color(0x55EFC4), new Color(0xFFEAA7),
-                    new Color(255,255,255,35), new Color(240,240,240))
-    };
+                    new Color(255,255,255,35), new Color(240,240,240));
+        };
+    }
     private int themeIndex = 0;
 
-    // Persistence
-    private final Preferences prefs = Preferences.userRoot().node("com.mycompany.snake.enhanced");
+    // Persistence: null for spectators, whose panel must not read or write the player's settings
+    private final SettingsStore store;
 
     // Status callback
     public interface StatusListener { void onStatus(String text); }
@@ -77,26 +244,63 @@ public class GamePanel extends JPanel implements ActionListener {
     public void setStatusListener(StatusListener l) { this.statusListener = l; }
     private void updateStatus() {
         if (statusListener == null) return;
-        String text = switch (state) {
+        String text;
+        synchronized (engine) { text = statusText(); }
+        statusListener.onStatus(text);
+    }
+
+    private String statusText() {
+        if (watching != null) {
+            if (watching.problem() != null) return "Watching: " + watching.problem();
+            return switch (engine.state()) {
+                case MENU -> "Watching. Waiting for the game to start.";
+                case RUNNING -> String.format("Watching. Score: %d  Speed: %dms", engine.score(), engine.speedMs());
+                case PAUSED -> "Watching. Paused.";
+                case GAME_OVER -> String.format("Watching. Game Over! Score: %d", engine.score());
+                case WON -> String.format("Watching. Board cleared! Score: %d", engine.score());
+            };
+        }
+        return switch (engine.state()) {
             case MENU -> "Ready. Space to start. H for help.";
             case RUNNING -> String.format("Score: %d  High: %d  Speed: %dms  %s %s",
-                    applesEaten, highScore, speedMs,
+                    engine.score(), highScore, engine.speedMs(),
                     showGrid? "Grid:ON":"Grid:OFF",
-                    wrapWalls? "Wrap:ON":"Wrap:OFF");
+                    engine.isWrapWalls()? "Wrap:ON":"Wrap:OFF") + (isAutopilot()? "  Autopilot" : "")
+                    + (audio.isMuted()? "  Muted" : "");
             case PAUSED -> "Paused. Press P to resume.";
             case GAME_OVER -> String.format("Game Over! Score: %d  High: %d. Press R to restart.",
-                    applesEaten, highScore);
+                    engine.score(), highScore);
+            case WON -> String.format("Board cleared! Score: %d  High: %d. Press R to restart.",
+                    engine.score(), highScore);
         };
-        statusListener.onStatus(text);
     }
 
-    public GamePanel() {
-        setPreferredSize(new Dimension(WIDTH, HEIGHT));
+    public GamePanel() { this(COLS, ROWS, CELL); }
+
+    public GamePanel(int cols, int rows, int cell) { this(cols, rows, cell, null, SettingsStore.openDefault()); }
+
+    /** Spectator: shows the game the reader tails; gameplay keys and settings are ignored. */
+    public GamePanel(EventLog.Reader watching, int cell) { this(watching.cols(), watching.rows(), cell, watching, null); }
+
+    /** Settings and scores go to store rather than the player's own (benchmarks, tests). */
+    GamePanel(SettingsStore store) { this(COLS, ROWS, CELL, null, store); }
+
+    private GamePanel(int cols, int rows, int cell, EventLog.Reader watching, SettingsStore store) {
+        engine = new GameEngine(cols, rows);
+        this.watching = watching;
+        this.store = store;
+        this.cell = Math.max(MIN_CELL, Math.min(MAX_CELL, cell));
+        setPreferredSize(new Dimension(cols * this.cell, rows * this.cell));
         setBackground(Color.BLACK);
         setFocusable(true);
 
         loadPrefs();
-        timer = new Timer(speedMs, this);
+        if (watching == null) engine.setRecorder(new Replay.Recorder());
+        loop = new GameLoop(engine, this, displayRefreshRate(), watching);
+        perf = new PerfStats(engine, loop);
+        loop.setStats(perf);
+        perf.setAudio(audio);
+        Startup.afterFirstFrame(perf::register); // JMX's first use is slow; nobody attaches that early
 
         initGame();
         setupKeys();
@@ -104,19 +308,24 @@ public class GamePanel extends JPanel implements ActionListener {
     }
 
     private void loadPrefs() {
-        highScore = prefs.getInt("highScore", 0);
-        themeIndex = prefs.getInt("theme", 0) % themes.length;
-        showGrid = prefs.getBoolean("grid", true);
-        wrapWalls = prefs.getBoolean("wrapWalls", false);
-        obstaclesEnabled = prefs.getBoolean("obstacles", false);
+        if (store == null) return; // spectators keep the defaults
+        highScore = store.highScore();
+        themeIndex = store.getInt("theme", 0) % THEMES;
+        showGrid = store.getBoolean("grid", true);
+        // Before modes there were just these two switches
+        int legacy = GameMode.CLASSIC | (store.getBoolean("wrapWalls", false) ? GameMode.WRAP.bit() : 0)
+                | (store.getBoolean("obstacles", false) ? GameMode.OBSTACLES.bit() : 0);
+        engine.setModes(store.getInt("modes", legacy));
+        audio.setMuted(!store.getBoolean("sound", true));
     }
 
+    /** Only updates SettingsStore's memory; it writes changed keys in the background. */
     private void savePrefs() {
-        prefs.putInt("highScore", highScore);
-        prefs.putInt("theme", themeIndex);
-        prefs.putBoolean("grid", showGrid);
-        prefs.putBoolean("wrapWalls", wrapWalls);
-        prefs.putBoolean("obstacles", obstaclesEnabled);
+        if (store == null) return; // spectator
+        store.putInt("theme", themeIndex);
+        store.putBoolean("grid", showGrid);
+        store.putInt("modes", engine.nextModes());
+        store.putBoolean("sound", !audio.isMuted());
     }
 
     private void setupKeys() {
@@ -132,282 +341,586 @@ public class GamePanel extends JPanel implements ActionListener {
                     case KeyEvent.VK_R -> restart();
                     case KeyEvent.VK_G -> toggleGrid();
                     case KeyEvent.VK_T -> cycleTheme();
-                    case KeyEvent.VK_W -> toggleWrapWalls();
+                    case KeyEvent.VK_B -> toggleWrapWalls(); // W is up
                     case KeyEvent.VK_O -> toggleObstacles();
+                    case KeyEvent.VK_I -> toggleAutopilot();
+                    case KeyEvent.VK_M -> toggleSound();
+                    case KeyEvent.VK_F3 -> togglePerf();
                     case KeyEvent.VK_H -> { showHelpOverlay = !showHelpOverlay; repaint(); }
                     case KeyEvent.VK_EQUALS, KeyEvent.VK_PLUS -> faster();
                     case KeyEvent.VK_MINUS -> slower();
-                    default -> {}
+                    case KeyEvent.VK_OPEN_BRACKET -> setCellSize(cell - Math.max(1, cell/4));
+                    case KeyEvent.VK_CLOSE_BRACKET -> setCellSize(cell + Math.max(1, cell/4));
+                    default -> { return; }
                 }
+                e.consume(); // or the frame's shortcut for the same key runs it a second time
             }
         });
     }
 
-    private void initGame() {
-        snake.clear();
-        int cx = COLS/2, cy = ROWS/2;
-        snake.add(new Point(cx, cy));
-        snake.add(new Point(cx-1, cy));
-        snake.add(new Point(cx-2, cy));
-        dir = Direction.RIGHT;
-        applesEaten = 0;
-        goldenApple = null;
-        obstacles.clear();
-        if (obstaclesEnabled) generateObstacles(12);
-        spawnApple();
-        state = GameState.MENU;
-        timer.setDelay(speedMs);
-        repaint();
+    private static int displayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return 60;
+        int hz = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return hz == DisplayMode.REFRESH_RATE_UNKNOWN ? 60 : hz;
+    }
+
+    // The loop and audio threads live as long as the panel is on screen.
+    @Override public void addNotify() {
+        super.addNotify();
+        perf.setRenderer(backend + " on " + RenderBackend.pipeline(getGraphicsConfiguration()) + ", Swing repaint");
+        loop.start();
+        if (watching == null) audio.start();
     }
+    @Override public void removeNotify() { loop.stop(); audio.stop(); super.removeNotify(); }
 
-    private void generateObstacles(int count) {
-        var r = ThreadLocalRandom.current();
-        for (int i=0;i<count;i++) {
-            Point p;
-            int guard = 0;
-            do {
-                p = new Point(r.nextInt(COLS), r.nextInt(ROWS));
-                guard++;
-                if (guard > 1000) break;
-            } while (collidesWithSnake(p) || (apple!=null && apple.equals(p)));
-            obstacles.add(p);
+    /** Before the panel (or its FlipView) is shown; FLIP needs GameFrame to build a FlipView. */
+    public void setRenderBackend(RenderBackend b) {
+        backend = b;
+        invalidateBackground();
+    }
+    public RenderBackend renderBackend() { return backend; }
+
+    /** FlipView: it is on screen (or gone, with null) and takes over the frames. */
+    void flipShown(FlipView v, String description) {
+        flip = v;
+        if (v == null) { loop.stop(); audio.stop(); return; }
+        perf.setRenderer(description);
+        invalidateBackground();
+        loop.start();
+        if (watching == null) audio.start();
+    }
+
+    // FLIP: Swing never paints this panel, so any repaint request becomes a whole frame.
+    @Override public void repaint(long tm, int x, int y, int w, int h) {
+        if (flip != null) onFrame();
+        else super.repaint(tm, x, y, w, h);
+    }
+
+    private void initGame() {
+        synchronized (engine) {
+            engine.reset();
+            lastApple = engine.apple();
+            lastGolden = engine.goldenApple();
+            lastPickup = engine.shrinkPickup();
+            dirtyCount = 0;
         }
+        invalidateBackground(); // new obstacles and portals
+        repaint();
     }
 
     public void start() {
-        if (state == GameState.RUNNING) return;
-        if (state != GameState.MENU && state != GameState.GAME_OVER) return; // guard illegal transitions
-        state = GameState.RUNNING;
-        timer.start();
+        if (watching != null) return;
+        synchronized (engine) {
+            if (!engine.start()) return; // guard illegal transitions
+        }
+        loop.wake();
         updateStatus();
         repaint();
     }
 
     public void togglePause() {
-        if (state == GameState.RUNNING) {
-            state = GameState.PAUSED;
-            timer.stop();
-        } else if (state == GameState.PAUSED) {
-            state = GameState.RUNNING;
-            timer.start();
-        }
+        if (watching != null) return;
+        synchronized (engine) { engine.togglePause(); }
+        loop.wake();
         updateStatus();
         repaint();
     }
 
     public void restart() {
+        if (watching != null) return;
         initGame();
         start();
     }
 
-    public void toggleGrid() { showGrid = !showGrid; savePrefs(); repaint(); updateStatus(); }
-    public void toggleWrapWalls() { wrapWalls = !wrapWalls; savePrefs(); repaint(); updateStatus(); }
-    public void toggleObstacles() { obstaclesEnabled = !obstaclesEnabled; initGame(); savePrefs(); repaint(); }
-    public void cycleTheme() { themeIndex = (themeIndex + 1) % themes.length; savePrefs(); repaint(); }
-    public void faster() { speedMs = Math.max(50, speedMs - 10); timer.setDelay(speedMs); updateStatus(); }
-    public void slower() { speedMs = Math.min(300, speedMs + 10); timer.setDelay(speedMs); updateStatus(); }
+    private void turn(Direction d) { if (watching == null) engine.turn(d); } // lock-free; applied on a later tick
 
-    private void turn(Direction next) {
-        // Prevent reversing into yourself
-        if ((dir == Direction.LEFT && next == Direction.RIGHT) ||
-            (dir == Direction.RIGHT && next == Direction.LEFT) ||
-            (dir == Direction.UP && next == Direction.DOWN) ||
-            (dir == Direction.DOWN && next == Direction.UP)) return;
-        dir = next;
+    public void toggleGrid() { showGrid = !showGrid; invalidateBackground(); savePrefs(); repaint(); updateStatus(); }
+    public void toggleWrapWalls() { if (watching != null) return; synchronized (engine) { engine.setWrapWalls(!engine.isWrapWalls()); } savePrefs(); repaint(); updateStatus(); }
+    public void toggleObstacles() { toggleMode(GameMode.OBSTACLES); }
+    /** Wrap switches at once; any other mode starts a new game with or without it. */
+    public void toggleMode(GameMode m) {
+        int modes;
+        synchronized (engine) { modes = engine.nextModes() ^ m.bit(); }
+        setModes(modes);
     }
-
-    private void spawnApple() {
-        var r = ThreadLocalRandom.current();
-        Point p;
-        do {
-            p = new Point(r.nextInt(COLS), r.nextInt(ROWS));
-        } while (collidesWithSnake(p) || obstacles.contains(p));
-        apple = p;
-
-        // Chance to spawn golden apple (roughly 1/8).
-        if (goldenApple == null && r.nextInt(8) == 0) {
-            Point g;
-            do {
-                g = new Point(r.nextInt(COLS), r.nextInt(ROWS));
-            } while (g.equals(apple) || collidesWithSnake(g) || obstacles.contains(g));
-            goldenApple = g;
+    /** GameMode bits; starts a new game unless only wrap changed. */
+    public void setModes(int modes) {
+        if (watching != null) return;
+        boolean newGame;
+        synchronized (engine) {
+            newGame = ((engine.nextModes() ^ modes) & ~GameMode.WRAP.bit()) != 0;
+            engine.setModes(modes);
         }
+        if (newGame) initGame();
+        savePrefs();
+        repaint();
+        updateStatus();
+    }
+    public boolean isModeOn(GameMode m) { synchronized (engine) { return m.in(engine.nextModes()); } }
+    public void cycleTheme() { themeIndex = (themeIndex + 1) % THEMES; invalidateBackground(); savePrefs(); repaint(); }
+    /** Lets the built-in Autopilot play (Hamiltonian mode where the board allows it). */
+    public void toggleAutopilot() {
+        if (watching != null) return;
+        loop.setController(loop.controller() == null ? autopilot : null);
+        updateStatus();
+    }
+    /** Performance overlay: tick jitter, paint time, fps, allocation and GC. */
+    public void togglePerf() { showPerf = !showPerf; repaint(); }
+    public void toggleSound() { if (watching != null) return; audio.setMuted(!audio.isMuted()); savePrefs(); updateStatus(); }
+    public boolean isSoundOn() { return !audio.isMuted(); }
+    public PerfStats perfStats() { return perf; }
+    public boolean isAutopilot() { return loop.controller() != null; }
+    public void faster() { if (watching != null) return; synchronized (engine) { engine.faster(); } updateStatus(); }
+    public void slower() { if (watching != null) return; synchronized (engine) { engine.slower(); } updateStatus(); }
+
+    /** Publishes this game to a log that spectators can tail; null stops. Not for spectator panels. */
+    public void streamTo(EventLog.Writer writer) {
+        if (watching != null) throw new IllegalStateException("a spectator can't stream");
+        synchronized (engine) { engine.setStream(writer); }
+    }
+    public boolean isSpectator() { return watching != null; }
+
+    public boolean isGridShown() { return showGrid; }
+    public boolean isObstaclesEnabled() { synchronized (engine) { return engine.isObstaclesEnabled(); } }
+    public int themeIndex() { return themeIndex; }
+    public int themeCount() { return THEMES; }
+
+    /** Zoom: pixels per cell, clamped to MIN_CELL..MAX_CELL. */
+    public void setCellSize(int px) {
+        px = Math.max(MIN_CELL, Math.min(MAX_CELL, px));
+        if (px == cell) return;
+        cell = px;
+        invalidateBackground();
+        setPreferredSize(new Dimension(engine.cols() * cell, engine.rows() * cell));
+        revalidate();
+        repaint();
+        SwingUtilities.invokeLater(this::followHead);
     }
 
-    private boolean collidesWithSnake(Point p) {
-        for (Point s : snake) if (s.equals(p)) return true;
-        return false;
+    /** Keeps the head (plus a few cells of look-ahead) in view when the board is scrolled. */
+    private void followHead() {
+        if (!(getParent() instanceof JViewport)) return;
+        int h;
+        synchronized (engine) { h = engine.snakeCell(0); }
+        int margin = 4 * cell;
+        scrollRectToVisible(new Rectangle(engine.x(h)*cell - margin, engine.y(h)*cell - margin,
+                cell + 2*margin, cell + 2*margin));
     }
 
-    @Override public void actionPerformed(ActionEvent e) { tick(); }
+    // GameLoop.Listener: loop thread, engine lock held.
+    @Override public void onTick(int events) {
+        if ((events & GameEngine.EVENT_SYNCED) != 0) {
+            // Spectator: state replaced (keyframe) or changed outside a tick; redraw it all
+            lastApple = engine.apple();
+            lastGolden = engine.goldenApple();
+            lastPickup = engine.shrinkPickup();
+            dirtyCount = 0;
+            fullRepaint = true;
+            SwingUtilities.invokeLater(this::invalidateBackground); // obstacles and portals may differ
+            updateStatus();
+            return;
+        }
+        if (watching != null && (events & (GameEngine.EVENT_GAME_OVER | GameEngine.EVENT_WON)) != 0) {
+            fullRepaint = true;
+            updateStatus();
+            return;
+        }
+        if ((events & (GameEngine.EVENT_GAME_OVER | GameEngine.EVENT_WON)) != 0) {
+            audio.play((events & GameEngine.EVENT_WON) != 0 ? AudioMixer.Clip.WON : AudioMixer.Clip.GAME_OVER);
+            Replay replay = engine.recorder().finish(engine);
+            SwingUtilities.invokeLater(() -> gameOver(replay));
+            return;
+        }
+        if ((events & (GameEngine.EVENT_ATE_APPLE | GameEngine.EVENT_ATE_GOLDEN)) != 0) {
+            // Queued for the audio thread; never blocks the tick (spectators have no audio)
+            audio.play((events & GameEngine.EVENT_ATE_GOLDEN) != 0 ? AudioMixer.Clip.GOLDEN : AudioMixer.Clip.EAT);
+            scoreDirty = true;
+        }
 
-    private void tick() {
-        if (state != GameState.RUNNING) return;
+        // Obstacles moved or the tail dropped cells: more than it's worth tracking
+        if ((events & (GameEngine.EVENT_OBSTACLES_MOVED | GameEngine.EVENT_SHRANK)) != 0) fullRepaint = true;
 
-        Point head = new Point(snake.get(0));
-        switch (dir) {
-            case LEFT -> head.x--;
-            case RIGHT -> head.x++;
-            case UP -> head.y--;
-            case DOWN -> head.y++;
-        }
+        // Cells this tick touched: old head (now body), new head, vacated tail, apples.
+        markDirty(engine.snakeCell(1));
+        markDirty(engine.snakeCell(0));
+        markDirty(engine.vacatedCell());
+        if (engine.apple() != lastApple) { markDirty(lastApple); markDirty(lastApple = engine.apple()); }
+        if (engine.goldenApple() != lastGolden) { markDirty(lastGolden); markDirty(lastGolden = engine.goldenApple()); }
+        if (engine.shrinkPickup() != lastPickup) { markDirty(lastPickup); markDirty(lastPickup = engine.shrinkPickup()); }
+        updateStatus();
+    }
 
-        // Wrap vs non-wrap: handle wrapping BEFORE collision checks so head stays on-grid.
-        if (wrapWalls) {
-            if (head.x < 0) head.x = COLS-1;
-            if (head.x >= COLS) head.x = 0;
-            if (head.y < 0) head.y = ROWS-1;
-            if (head.y >= ROWS) head.y = 0;
-        }
+    // GameLoop.Listener: loop thread, once per display frame; coalesced onto the EDT.
+    @Override public void onFrame() {
+        if (framePending.compareAndSet(false, true)) SwingUtilities.invokeLater(this::renderFrame);
+    }
 
-        // Collisions (order matters: bounds -> self -> obstacles).
-        if (!wrapWalls && (head.x < 0 || head.x >= COLS || head.y < 0 || head.y >= ROWS)) {
-            gameOver(); return;
+    private void markDirty(int c) {
+        if (c == GameEngine.NO_CELL) return;
+        if (dirtyCount == dirty.length) {
+            // Many ticks between frames (a stalled EDT); let one full repaint catch up.
+            if (dirty.length >= 4096) { fullRepaint = true; return; }
+            dirty = java.util.Arrays.copyOf(dirty, dirty.length * 2);
         }
-        if (collidesWithSnake(head)) { gameOver(); return; }
-        if (obstacles.contains(head)) { gameOver(); return; }
-
-        // Move: add new head
-        snake.add(0, head);
+        dirty[dirtyCount++] = c;
+    }
 
-        // Eat?
-        boolean grew = false;
-        if (head.equals(apple)) {
-            applesEaten++;
-            grew = true;
-            spawnApple();
-            // Every 5 apples, slightly faster (down to a floor).
-            if (applesEaten % 5 == 0) faster();
-            // Using Toolkit.beep() for hits—good enough for demo; replace with a line-clip later.
-            Toolkit.getDefaultToolkit().beep();
-        } else if (goldenApple != null && head.equals(goldenApple)) {
-            applesEaten += 5;
-            grew = true;
-            goldenApple = null;
-            faster();
-            Toolkit.getDefaultToolkit().beep();
+    /**
+     * One display frame on the EDT: paints the cells the ticks touched, the interpolated head
+     * and tail, and the score box if it changed, each right away. A plain repaint(x,y,w,h)
+     * per cell would be coalesced by RepaintManager into one bounding box, which for head and
+     * tail on opposite sides of the board is the whole frame again.
+     */
+    private void renderFrame() {
+        framePending.set(false);
+        int n, prevHead, head, vacated, tail;
+        boolean score, full;
+        synchronized (engine) {
+            n = dirtyCount;
+            if (frameCells.length < n) frameCells = new int[dirty.length];
+            System.arraycopy(dirty, 0, frameCells, 0, n);
+            dirtyCount = 0;
+            score = scoreDirty;
+            full = fullRepaint;
+            scoreDirty = fullRepaint = false;
+            head = engine.snakeCell(0);
+            prevHead = engine.snakeLength() > 1 ? engine.snakeCell(1) : head;
+            vacated = engine.vacatedCell();
+            tail = engine.snakeCell(engine.snakeLength()-1);
         }
+        if (flip != null) { renderFlip(head); return; }
+        followHead();
+        if (!isShowing()) return;
+        inFrame = true;
+        framePaintNanos = 0;
+        try {
+            paintFrame(n, prevHead, head, vacated, tail, score, full);
+        } finally {
+            inFrame = false;
+        }
+        perf.recordFrame(framePaintNanos);
+    }
 
-        // If not grown, remove tail
-        if (!grew) snake.remove(snake.size()-1);
+    /** FLIP: moves the view to keep the head (plus a few cells) in sight, then draws it all. */
+    private void renderFlip(int head) {
+        if (!flip.isShowing()) return;
+        int w = flip.getWidth(), h = flip.getHeight(), bw = engine.cols() * cell, bh = engine.rows() * cell;
+        int hx = engine.x(head) * cell, hy = engine.y(head) * cell, margin = Math.min(4 * cell, Math.min(w, h) / 3);
+        int x = flipView.x, y = flipView.y;
+        if (hx - margin < x) x = hx - margin; else if (hx + cell + margin > x + w) x = hx + cell + margin - w;
+        if (hy - margin < y) y = hy - margin; else if (hy + cell + margin > y + h) y = hy + cell + margin - h;
+        flipView.setBounds(Math.max(0, Math.min(x, bw - w)), Math.max(0, Math.min(y, bh - h)), w, h);
+        long t0 = System.nanoTime();
+        if (!flip.render(flipView)) return;
+        perf.recordFrame(System.nanoTime() - t0);
+        if (!firstFrameShown) { firstFrameShown = true; Startup.firstFrame("flip"); }
+    }
 
-        repaint();
-        updateStatus();
+    /** FlipView: paints the board area view onto g, whose origin is the view's corner. */
+    void paintView(Graphics2D g, Rectangle view) {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, view.width, view.height);
+        g.translate(-view.x, -view.y);
+        g.clipRect(view.x, view.y, view.width, view.height);
+        synchronized (engine) { paintLocked(g); }
     }
 
-    private void gameOver() {
-        state = GameState.GAME_OVER;
-        timer.stop();
-        if (applesEaten > highScore) {
-            highScore = applesEaten;
-            savePrefs();
+    private void paintFrame(int n, int prevHead, int head, int vacated, int tail, boolean score, boolean full) {
+        if (full) { paintImmediately(getVisibleRect()); return; }
+        for (int i=0; i<n; i++) paintCell(frameCells[i]);
+        // Clear slivers the previous frame's slides left in cells we are not repainting now.
+        if (paintedHeadFrom != GameEngine.NO_CELL && paintedHeadFrom != prevHead) paintCell(paintedHeadFrom);
+        if (paintedTailFrom != GameEngine.NO_CELL && paintedTailFrom != vacated) paintCell(paintedTailFrom);
+        paintPair(prevHead, head);
+        if (vacated != GameEngine.NO_CELL) paintPair(vacated, tail);
+        paintedHeadFrom = prevHead;
+        paintedTailFrom = vacated;
+        if (score) {
+            Rectangle vis = getVisibleRect();
+            paintImmediately(vis.x + HUD_X, vis.y + HUD_Y, HUD_W + 1, HUD_H + 1);
+        }
+        if (showPerf && perf.snapshot() != perfShown) {
+            Rectangle vis = getVisibleRect();
+            paintImmediately(vis.x + PERF_X, vis.y + vis.height - PERF_H - PERF_X, PERF_W + 1, PERF_H + 1);
         }
-        updateStatus();
-        repaint();
     }
 
-    @Override protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g.create();
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        Theme th = themes[themeIndex];
+    private void paintCell(int c) { paintImmediately(engine.x(c)*cell, engine.y(c)*cell, cell, cell); }
 
-        // Background gradient
-        Paint old = g2.getPaint();
-        g2.setPaint(new GradientPaint(0,0, th.bg1, getWidth(),getHeight(), th.bg2));
-        g2.fillRect(0, 0, getWidth(), getHeight());
-        g2.setPaint(old);
+    /** Paints two cells, as one rect when they are neighbours (an interpolated segment spans both). */
+    private void paintPair(int a, int b) {
+        if (!adjacent(a, b)) { paintCell(a); paintCell(b); return; }
+        int x = Math.min(engine.x(a), engine.x(b)), y = Math.min(engine.y(a), engine.y(b));
+        int w = engine.x(a) == engine.x(b) ? 1 : 2, h = engine.y(a) == engine.y(b) ? 1 : 2;
+        paintImmediately(x*cell, y*cell, w*cell, h*cell);
+    }
+
+    private boolean adjacent(int a, int b) {
+        return Math.abs(engine.x(a) - engine.x(b)) + Math.abs(engine.y(a) - engine.y(b)) == 1;
+    }
+
+    private void invalidateBackground() { bgValid = false; }
+
+    // What we paint onto: this panel, or in FLIP mode the FlipView's window onto the board.
+    private GraphicsConfiguration gc() { return flip != null ? flip.getGraphicsConfiguration() : getGraphicsConfiguration(); }
+    private int surfaceWidth() { return flip != null ? engine.cols() * cell : getWidth(); }
+    private int surfaceHeight() { return flip != null ? engine.rows() * cell : getHeight(); }
+    private Rectangle visibleArea() { return flip != null ? new Rectangle(flipView) : getVisibleRect(); }
+
+    /**
+     * Blits the cached background for the given area, re-rendering it first if it is stale,
+     * too small, at the wrong device scale, or a volatile image whose contents were lost.
+     */
+    private void drawBackground(Graphics2D g2, Rectangle need, double scale) {
+        GraphicsConfiguration gc = gc();
+        if (bgScale != scale || !bgRect.contains(need)) bgValid = false;
+        do {
+            if (bgImage instanceof VolatileImage vi) {
+                int v = vi.validate(gc);
+                if (v == VolatileImage.IMAGE_INCOMPATIBLE) bgImage = null;
+                else if (v == VolatileImage.IMAGE_RESTORED) bgValid = false;
+            }
+            if (!bgValid || bgImage == null) renderBackground(need, scale, gc);
+            g2.drawImage(bgImage, bgRect.x, bgRect.y, bgRect.width, bgRect.height, null);
+        } while (bgImage instanceof VolatileImage vi && vi.contentsLost());
+    }
 
-        // Grid
-        if (showGrid) {
+    /**
+     * Renders the static layers for the given area plus half a viewport of margin on each
+     * side, so following the head rarely forces a rebuild.
+     */
+    private void renderBackground(Rectangle need, double scale, GraphicsConfiguration gc) {
+        Rectangle r = 4L * need.width * need.height <= MAX_BG_PIXELS
+                ? new Rectangle(need.x - need.width/2, need.y - need.height/2, need.width*2, need.height*2)
+                : new Rectangle(need);
+        r = r.intersection(new Rectangle(0, 0, surfaceWidth(), surfaceHeight()));
+        if (r.isEmpty()) r = new Rectangle(0, 0, Math.max(1, surfaceWidth()), Math.max(1, surfaceHeight()));
+        int w = (int) Math.ceil(r.width * scale), h = (int) Math.ceil(r.height * scale);
+        if (bgImage == null || bgImage.getWidth(null) != w || bgImage.getHeight(null) != h) {
+            if (bgImage instanceof VolatileImage vi) vi.flush();
+            bgImage = gc == null ? new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB)
+                    : backend == RenderBackend.SOFTWARE ? gc.createCompatibleImage(w, h)
+                    : gc.createCompatibleVolatileImage(w, h);
+        }
+        bgRect.setBounds(r);
+        bgScale = scale;
+        bgValid = true;
+
+        Theme th = theme();
+        th.ensureSprites(cell, scale, gc, backend.antialiasHint());
+        Graphics2D g2 = (Graphics2D) bgImage.getGraphics();
+        g2.scale(w / (double) r.width, h / (double) r.height);
+        g2.translate(-r.x, -r.y);
+        int c0 = Math.max(0, r.x / cell), c1 = Math.min(engine.cols()-1, (r.x + r.width) / cell);
+        int r0 = Math.max(0, r.y / cell), r1 = Math.min(engine.rows()-1, (r.y + r.height) / cell);
+
+        // Background gradient (spans the whole panel so tiles line up)
+        g2.setPaint(th.gradient(surfaceWidth(), surfaceHeight()));
+        g2.fillRect(r.x, r.y, r.width, r.height);
+
+        // Grid (skipped when zoomed out so far that lines would hide the cells)
+        if (showGrid && cell >= 4) {
             g2.setColor(th.grid);
-            for (int x=0; x<=WIDTH; x+=CELL) g2.drawLine(x,0,x,HEIGHT);
-            for (int y=0; y<=HEIGHT; y+=CELL) g2.drawLine(0,y,WIDTH,y);
+            for (int c=c0; c<=c1+1; c++) g2.drawLine(c*cell, r0*cell, c*cell, (r1+1)*cell);
+            for (int rr=r0; rr<=r1+1; rr++) g2.drawLine(c0*cell, rr*cell, (c1+1)*cell, rr*cell);
         }
 
-        // Obstacles
-        if (obstaclesEnabled) {
-            g2.setColor(new Color(0,0,0,90));
-            for (Point o : obstacles) {
-                g2.fillRoundRect(o.x*CELL+2, o.y*CELL+2, CELL-4, CELL-4, 6,6);
+        // Obstacles, unless they move; portals never do
+        if (!GameMode.MOVING_OBSTACLES.in(engine.modes())) drawObstacles(g2, th, c0, c1, r0, r1);
+        for (int i=0; i<engine.portalCount(); i++) {
+            int p = engine.portalCell(i);
+            if (inTiles(p, c0, c1, r0, r1)) blit(g2, th.portal(), engine.x(p), engine.y(p));
+        }
+        g2.dispose();
+    }
+
+    /** Walks whichever is smaller, the covered tiles or the obstacle list. */
+    private void drawObstacles(Graphics2D g2, Theme th, int c0, int c1, int r0, int r1) {
+        long tiles = (long) (c1-c0+1) * (r1-r0+1);
+        if (tiles < engine.obstacleCount()) {
+            for (int rr=r0; rr<=r1; rr++)
+                for (int c=c0; c<=c1; c++)
+                    if (engine.cellKind(engine.cell(c, rr)) == Board.OBSTACLE) blit(g2, th.obstacle(), c, rr);
+        } else {
+            for (int i=0; i<engine.obstacleCount(); i++) {
+                int o = engine.obstacleCell(i);
+                if (inTiles(o, c0, c1, r0, r1)) blit(g2, th.obstacle(), engine.x(o), engine.y(o));
             }
         }
+    }
 
-        // Apple(s)
-        if (apple != null) {
-            g2.setColor(th.apple);
-            int x = apple.x * CELL, y = apple.y * CELL;
-            g2.fillOval(x+4, y+4, CELL-8, CELL-8);
-        }
-        if (goldenApple != null) {
-            g2.setColor(th.golden);
-            int x = goldenApple.x * CELL, y = goldenApple.y * CELL;
-            g2.fillOval(x+6, y+6, CELL-12, CELL-12);
-            g2.setColor(new Color(255,255,255,120));
-            g2.drawOval(x+6, y+6, CELL-12, CELL-12);
-        }
-
-        // Snake
-        for (int i=snake.size()-1; i>=0; i--) {
-            Point p = snake.get(i);
-            int x = p.x * CELL, y = p.y * CELL;
-            if (i == 0) {
-                g2.setColor(th.snakeHead);
-                g2.fillRoundRect(x+2, y+2, CELL-4, CELL-4, 10,10);
-                // Eyes
-                g2.setColor(new Color(0,0,0,120));
-                int eye = 4, off = 6;
-                switch (dir) {
-                    case LEFT -> { g2.fillOval(x+off, y+off, eye, eye); g2.fillOval(x+off, y+CELL-off-eye, eye, eye); }
-                    case RIGHT -> { g2.fillOval(x+CELL-off-eye, y+off, eye, eye); g2.fillOval(x+CELL-off-eye, y+CELL-off-eye, eye, eye); }
-                    case UP -> { g2.fillOval(x+off, y+off, eye, eye); g2.fillOval(x+CELL-off-eye, y+off, eye, eye); }
-                    case DOWN -> { g2.fillOval(x+off, y+CELL-off-eye, eye, eye); g2.fillOval(x+CELL-off-eye, y+CELL-off-eye, eye, eye); }
+    private void gameOver(Replay replay) {
+        int score;
+        long ticks;
+        synchronized (engine) { score = engine.score(); ticks = engine.ticks(); }
+        store.recordGame(score, ticks, replay);
+        highScore = store.highScore();
+        updateStatus();
+        repaint();
+    }
+
+    /** Best games first, at most SettingsStore.MAX_SCORES. */
+    public java.util.List<SettingsStore.HighScore> topScores() { return store == null ? java.util.List.of() : store.topScores(); }
+
+    @Override protected void paintComponent(Graphics g) {
+        long t0 = System.nanoTime();
+        synchronized (engine) { paintLocked(g); }
+        long took = System.nanoTime() - t0;
+        if (inFrame) framePaintNanos += took;
+        else perf.recordFrame(took); // a Swing-initiated repaint is a frame of its own
+        if (!firstFrameShown && isShowing()) { firstFrameShown = true; Startup.firstFrame("swing"); }
+    }
+
+    private void paintLocked(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        Theme th = theme();
+        double scale = g2.getTransform().getScaleX(); // HiDPI device scale
+        th.ensureSprites(cell, scale, gc(), backend.antialiasHint());
+
+        // Visible tile range: everything below only touches cells inside the clip.
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, surfaceWidth(), surfaceHeight());
+        Rectangle vis = visibleArea();
+        if (vis.isEmpty()) vis = new Rectangle(0, 0, surfaceWidth(), surfaceHeight());
+        int c0 = Math.max(0, clip.x / cell), c1 = Math.min(engine.cols()-1, (clip.x + clip.width) / cell);
+        int r0 = Math.max(0, clip.y / cell), r1 = Math.min(engine.rows()-1, (clip.y + clip.height) / cell);
+        long visibleTiles = (long) Math.max(0, c1-c0+1) * Math.max(0, r1-r0+1);
+
+        // Static layers: gradient, grid, obstacles and portals
+        Rectangle need = vis.contains(clip) ? vis : vis.union(clip);
+        drawBackground(g2, (long) need.width * need.height > MAX_BG_PIXELS ? clip : need, scale);
+
+        // Interpolation: head and tail slide from where they were to where the last tick put them.
+        double alpha = loop.alpha();
+        int head = engine.snakeCell(0), tail = engine.snakeCell(engine.snakeLength()-1);
+        int prevHead = engine.snakeLength() > 1 ? engine.snakeCell(1) : head;
+        int vacated = engine.vacatedCell();
+        if (vacated != GameEngine.NO_CELL && alpha < 1 && adjacent(vacated, tail)
+                && (inTiles(vacated, c0, c1, r0, r1) || inTiles(tail, c0, c1, r0, r1)))
+            blitBetween(g2, th.body, vacated, tail, alpha);
+
+        // Snake body: walk whichever is smaller, the clipped tiles or the body.
+        if (visibleTiles < engine.snakeLength()) {
+            for (int r=r0; r<=r1; r++)
+                for (int c=c0; c<=c1; c++) {
+                    int p = engine.cell(c, r);
+                    if (p != head && engine.cellKind(p) == Board.SNAKE) blit(g2, th.body, c, r);
                 }
-            } else {
-                g2.setColor(th.snakeBody);
-                g2.fillRoundRect(x+3, y+3, CELL-6, CELL-6, 8,8);
+        } else {
+            for (int i=engine.snakeLength()-1; i>0; i--) {
+                int p = engine.snakeCell(i);
+                if (inTiles(p, c0, c1, r0, r1)) blit(g2, th.body, engine.x(p), engine.y(p));
             }
         }
 
-        // HUD
-        drawHud(g2);
+        // Apple(s)
+        int apple = engine.apple(), goldenApple = engine.goldenApple();
+        if (apple != GameEngine.NO_CELL && inTiles(apple, c0, c1, r0, r1))
+            blit(g2, th.appleSprite, engine.x(apple), engine.y(apple));
+        if (goldenApple != GameEngine.NO_CELL && inTiles(goldenApple, c0, c1, r0, r1))
+            blit(g2, th.golden(), engine.x(goldenApple), engine.y(goldenApple));
+        int pickup = engine.shrinkPickup();
+        if (pickup != GameEngine.NO_CELL && inTiles(pickup, c0, c1, r0, r1))
+            blit(g2, th.pickup(), engine.x(pickup), engine.y(pickup));
+        if (GameMode.MOVING_OBSTACLES.in(engine.modes())) drawObstacles(g2, th, c0, c1, r0, r1);
+
+        // Snake head (drawn over the body); a wrap or portal jump is not interpolated
+        Image headSprite = th.heads[engine.direction().ordinal()];
+        if (adjacent(prevHead, head)) {
+            if (inTiles(head, c0, c1, r0, r1) || inTiles(prevHead, c0, c1, r0, r1))
+                blitBetween(g2, headSprite, prevHead, head, alpha);
+        } else if (inTiles(head, c0, c1, r0, r1)) {
+            blit(g2, headSprite, engine.x(head), engine.y(head));
+        }
+
+        // HUD stays pinned to the visible part of the board
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, backend.antialiasHint());
+        g2.translate(vis.x, vis.y);
+        drawHud(g2, vis.width, vis.height);
 
         g2.dispose();
     }
 
-    private void drawHud(Graphics2D g2) {
-        Theme th = themes[themeIndex];
-        String s1 = "Score: " + applesEaten;
-        String s2 = "High: " + highScore;
-        g2.setFont(getFont().deriveFont(Font.BOLD, 14f));
-        g2.setColor(new Color(0,0,0,100));
-        g2.fillRoundRect(8, 8, 160, 44, 10,10);
-        g2.setColor(new Color(255,255,255,80));
-        g2.drawRoundRect(8, 8, 160, 44, 10,10);
+    private boolean inTiles(int p, int c0, int c1, int r0, int r1) {
+        int x = engine.x(p), y = engine.y(p);
+        return x >= c0 && x <= c1 && y >= r0 && y <= r1;
+    }
+
+    /** Draws a cell sprite; at the device scale it was rendered for this is a 1:1 copy. */
+    private void blit(Graphics2D g2, Image sprite, int col, int row) {
+        g2.drawImage(sprite, col*cell, row*cell, cell, cell, null);
+    }
+
+    /** Draws a sprite the given fraction of the way from cell a to cell b. */
+    private void blitBetween(Graphics2D g2, Image sprite, int a, int b, double t) {
+        int x = (int) Math.round((engine.x(a) + (engine.x(b) - engine.x(a)) * t) * cell);
+        int y = (int) Math.round((engine.y(a) + (engine.y(b) - engine.y(a)) * t) * cell);
+        g2.drawImage(sprite, x, y, cell, cell, null);
+    }
+
+    /** Scales a pixel measure designed for the 25px cell to the given cell size. */
+    private static int px(int atDefaultCell, int cell) { return atDefaultCell * cell / CELL; }
+
+    private void ensureFonts() {
+        Font base = getFont();
+        if (base == fontBase && hudFont != null) return;
+        fontBase = base;
+        hudFont = base.deriveFont(Font.BOLD, 14f);
+        centerFont = base.deriveFont(Font.BOLD, 22f);
+        perfFont = base.deriveFont(Font.PLAIN, 11f);
+    }
+
+    private static final int HUD_X = 8, HUD_Y = 8, HUD_W = 160, HUD_H = 44;
+    private static final int PERF_X = 8, PERF_W = 330, PERF_H = 133;
+    private static final String[] JITTER_LABELS = {"<.5ms", "<1", "<2", "<4", "<8", "<16", "16+"};
+    private static final String[] HELP_LINES = {
+            "Controls: ←↑→↓ / WASD",
+            "SPACE start  •  P pause  •  R restart  •  F3 perf stats",
+            "G grid  •  T theme  •  B wrap walls  •  O obstacles",
+            "+/- speed  •  [ ] zoom  •  I autopilot  •  M sound  •  H help"
+    };
+    private static final String[] WATCH_HELP_LINES = {
+            "Watching a live game (read-only)",
+            "G grid  •  T theme  •  [ ] zoom  •  F3 perf  •  H help"
+    };
+
+    private void drawHud(Graphics2D g2, int viewW, int viewH) {
+        Theme th = theme();
+        if (scoreTextFor != engine.score()) { scoreTextFor = engine.score(); scoreText = "Score: " + scoreTextFor; }
+        if (highTextFor != highScore) { highTextFor = highScore; highText = "High: " + highTextFor; }
+        ensureFonts();
+        g2.setFont(hudFont);
+        g2.setColor(PANEL_FILL);
+        g2.fillRoundRect(HUD_X, HUD_Y, HUD_W, HUD_H, 10,10);
+        g2.setColor(PANEL_EDGE);
+        g2.drawRoundRect(HUD_X, HUD_Y, HUD_W, HUD_H, 10,10);
         g2.setColor(th.text);
-        g2.drawString(s1, 16, 26);
-        g2.drawString(s2, 16, 44);
+        g2.drawString(scoreText, 16, 26);
+        g2.drawString(highText, 16, 44);
 
+        GameState state = engine.state();
+        boolean watch = watching != null;
         if (state == GameState.MENU) {
-            drawCenterText(g2, "Press SPACE to start", 0);
+            drawCenterText(g2, watch ? "Waiting for the game to start" : "Press SPACE to start", viewW, viewH);
         } else if (state == GameState.PAUSED) {
-            drawCenterText(g2, "Paused — press P to resume", 0);
+            drawCenterText(g2, watch ? "Paused" : "Paused — press P to resume", viewW, viewH);
         } else if (state == GameState.GAME_OVER) {
-            drawCenterText(g2, "Game Over — press R to restart", 0);
+            drawCenterText(g2, watch ? "Game Over" : "Game Over — press R to restart", viewW, viewH);
+        } else if (state == GameState.WON) {
+            drawCenterText(g2, watch ? "Board cleared" : "Board cleared — press R to restart", viewW, viewH);
         }
 
         if (showHelpOverlay) {
-            String[] lines = {
-                    "Controls: ←↑→↓ / WASD",
-                    "SPACE start  •  P pause/resume  •  R restart",
-                    "G grid  •  T theme  •  W wrap walls  •  O obstacles",
-                    "+/- speed  •  H hide/show help"
-            };
-            int w = 420, h = 74;
-            int x = WIDTH - w - 10, y = 10;
-            g2.setColor(new Color(0,0,0,100));
+            String[] lines = watching != null ? WATCH_HELP_LINES : HELP_LINES;
+            g2.setFont(hudFont);
+            FontMetrics fm = g2.getFontMetrics();
+            int w = 0, h = lines.length * 18 + 12;
+            for (String ln : lines) w = Math.max(w, fm.stringWidth(ln) + 24);
+            int x = viewW - w - 10, y = 10;
+            g2.setColor(PANEL_FILL);
             g2.fillRoundRect(x, y, w, h, 10,10);
-            g2.setColor(new Color(255,255,255,80));
+            g2.setColor(PANEL_EDGE);
             g2.drawRoundRect(x, y, w, h, 10,10);
             g2.setColor(th.text);
             int yy = y + 24;
@@ -416,23 +929,76 @@ public class GamePanel extends JPanel implements ActionListener {
                 yy += 18;
             }
         }
+
+        if (showPerf) drawPerf(g2, th, viewH);
+    }
+
+    /** Bottom-left overlay; text is rebuilt only when PerfStats takes a new snapshot. */
+    private void drawPerf(Graphics2D g2, Theme th, int viewH) {
+        PerfStats.Snapshot s = perf.snapshot();
+        if (s != perfShown) {
+            perfShown = s;
+            perfLines[0] = String.format("tick %.1fms (speed %dms)  jitter p50 %.2f p99 %.2fms",
+                    s.tickMeanMs(), s.speedMs(), s.jitterP50Ms(), s.jitterP99Ms());
+            perfLines[1] = String.format("paint p50 %.2f p99 %.2fms  %.0f fps", s.paintP50Ms(), s.paintP99Ms(), s.fps());
+            perfLines[2] = String.format("alloc %.1f MB/s  gc %d (%dms)  max pause %.0fms",
+                    s.allocMBps(), s.gcCount(), s.gcTimeMs(), s.gcMaxPauseMs());
+            perfLines[3] = String.format("slips %d  input latency %.1fms  ", s.slips(), s.inputLatencyMs())
+                    + (audio.isPlaying() ? String.format("audio %.1fms, %d underruns", s.audioLatencyMs(), s.audioUnderruns())
+                                         : "audio off");
+            perfLines[4] = "render " + perf.renderer();
+        }
+        int x = PERF_X, y = viewH - PERF_H - PERF_X;
+        g2.setFont(perfFont);
+        g2.setColor(PANEL_FILL);
+        g2.fillRoundRect(x, y, PERF_W, PERF_H, 10,10);
+        g2.setColor(PANEL_EDGE);
+        g2.drawRoundRect(x, y, PERF_W, PERF_H, 10,10);
+        g2.setColor(th.text);
+        int yy = y + 16;
+        for (String ln : perfLines) { g2.drawString(ln, x+10, yy); yy += 15; }
+
+        // Jitter histogram: one bar per bucket, scaled to the fullest one
+        int[] hist = s.jitterHistogram();
+        int most = 1;
+        for (int v : hist) most = Math.max(most, v);
+        int bw = (PERF_W - 20) / hist.length;
+        for (int i = 0; i < hist.length; i++) {
+            int bh = 30 * hist[i] / most;
+            g2.fillRect(x + 10 + i*bw, y + PERF_H - 16 - bh, bw - 4, Math.max(1, bh));
+            g2.drawString(JITTER_LABELS[i], x + 10 + i*bw, y + PERF_H - 4);
+        }
     }
 
-    private void drawCenterText(Graphics2D g2, String text, int offsetY) {
-        Theme th = themes[themeIndex];
-        g2.setFont(getFont().deriveFont(Font.BOLD, 22f));
+    private void drawCenterText(Graphics2D g2, String text, int viewW, int viewH) {
+        Theme th = theme();
+        g2.setFont(centerFont);
         FontMetrics fm = g2.getFontMetrics();
         int tw = fm.stringWidth(text);
-        int x = (WIDTH - tw)/2;
-        int y = HEIGHT/2 + offsetY;
-        g2.setColor(new Color(0,0,0,120));
+        int x = (viewW - tw)/2;
+        int y = viewH/2;
+        g2.setColor(BANNER_FILL);
         g2.fillRoundRect(x-12, y-22, tw+24, 32, 10,10);
-        g2.setColor(new Color(255,255,255,80));
+        g2.setColor(PANEL_EDGE);
         g2.drawRoundRect(x-12, y-22, tw+24, 32, 10,10);
         g2.setColor(th.text);
         g2.drawString(text, x, y);
     }
 
+    // Scrollable: large boards live in a JScrollPane; the viewport is capped to the screen.
+    @Override public Dimension getPreferredScrollableViewportSize() {
+        Dimension pref = getPreferredSize();
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) return pref;
+        Rectangle screen = gc.getBounds();
+        return new Dimension(Math.min(pref.width, screen.width * 4/5), Math.min(pref.height, screen.height * 4/5));
+    }
+    @Override public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) { return cell; }
+    @Override public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visible.height - cell : visible.width - cell;
+    }
+    @Override public boolean getScrollableTracksViewportWidth() { return false; }
+    @Override public boolean getScrollableTracksViewportHeight() { return false; }
+
     // TODO(controls): Consider configurable key bindings via Preferences.
-    // TODO(perf): Benchmark Timer <= 60ms on HiDPI; clamp if repaint thrashes.
 }
@@ -0,0 +1,411 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * GameServer
+ * Authoritative multiplayer server: many rooms, each an Arena ticking at a fixed rate.
+ * Design notes:
+ *  - A few event-loop threads (one per core by default), each with its own Selector, own
+ *    the sockets and the rooms hashed to them: room r lives on loop r % threads, so a
+ *    room's Arena, its Writer and its players' buffers are only touched by one thread and
+ *    nothing is locked. A connection moves to its room's loop when its JOIN arrives.
+ *  - Turns read between ticks just go into the player's InputQueue; tick() applies one per
+ *    snake, so every input that arrived during a tick period is handled in one batch.
+ *    PINGs are answered right away, not at the tick, so they measure only the network.
+ *  - Each tick is encoded once per room (Protocol.Writer, reused) and the same bytes are
+ *    copied to every player's output buffer; sockets are written once per loop pass.
+ *    A player whose buffer backs up past OUT_LIMIT is dropped rather than buffered for.
+ *  - Loops sleep in select() until the next room is due, so idle rooms cost nothing.
+ *
+ * Usage: java -cp out com.mycompany.snake.GameServer [--port=7777] [--board=32x32]
+ *            [--tick-ms=100] [--wrap] [--room-size=8] [--threads=N]
+ */
+public final class GameServer {
+    private static final int IN_BUFFER = 1 << 10;      // also the largest frame a client may send
+    private static final int OUT_LIMIT = 1 << 16;
+    private static final int MAX_LATE_TICKS = 5;
+    private static final long STATS_EVERY_MS = 5000;
+
+    private int port = Protocol.DEFAULT_PORT;
+    private int cols = 32, rows = 32;
+    private long tickNanos = 100_000_000L;
+    private boolean wrapWalls;
+    private int roomSize = 8;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private ServerSocketChannel server;
+    private Loop[] loops;
+    private volatile boolean running;
+
+    public GameServer port(int port) { this.port = port; return this; }
+    public GameServer board(int cols, int rows) { this.cols = cols; this.rows = rows; return this; }
+    public GameServer tickMs(int ms) { tickNanos = ms * 1_000_000L; return this; }
+    public GameServer wrapWalls(boolean on) { wrapWalls = on; return this; }
+    public GameServer roomSize(int n) { roomSize = Math.max(1, Math.min(Arena.MAX_PLAYERS, n)); return this; }
+    public GameServer threads(int n) { threads = Math.max(1, n); return this; }
+
+    /** Binds and starts the loops; returns once accepting. Port 0 picks a free port. */
+    public GameServer start() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) loops[i] = new Loop(i);
+        server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        for (Loop l : loops) {
+            Thread t = new Thread(l, "snake-net-" + l.index);
+            t.setDaemon(true);
+            t.start();
+        }
+        return this;
+    }
+
+    public int port() { return server.socket().getLocalPort(); }
+
+    public void stop() {
+        running = false;
+        for (Loop l : loops) l.selector.wakeup();
+        try { server.close(); } catch (IOException ignored) { }
+    }
+
+    /** One line of totals across loops; counters are read racily, fine for monitoring. */
+    public String stats() {
+        long rooms = 0, clients = 0, ticks = 0, bytes = 0, deltaBytes = 0, tickNs = 0, dropped = 0, late = 0;
+        for (Loop l : loops) {
+            rooms += l.rooms.size(); clients += l.clients; ticks += l.ticks; bytes += l.bytesOut;
+            deltaBytes += l.deltaBytes; tickNs += l.tickNanosTotal; dropped += l.dropped; late += l.lateTicks;
+        }
+        return String.format(Locale.ROOT, "rooms=%d clients=%d ticks=%d out=%.1fMB tick=%.1fus bytes/delta=%.1f dropped=%d late=%d",
+                rooms, clients, ticks, bytes / 1e6, ticks == 0 ? 0 : tickNs / 1e3 / ticks,
+                ticks == 0 ? 0 : (double) deltaBytes / ticks, dropped, late);
+    }
+
+    // ---- Event loop ----
+
+    private final class Loop implements Runnable {
+        final int index;
+        final Selector selector;
+        final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final Map<Integer, Room> rooms = new HashMap<>();
+        final List<Room> roomList = new ArrayList<>();
+        final List<Conn> toFlush = new ArrayList<>();
+        boolean emptied;                     // some room in roomList is empty
+        final ByteBuffer pong = ByteBuffer.allocate(16);
+        // Stats, written by this loop only
+        long clients, ticks, bytesOut, deltaBytes, tickNanosTotal, dropped, lateTicks;
+
+        Loop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        @Override public void run() {
+            try {
+                while (running) {
+                    long wait = untilNextTick(System.nanoTime());
+                    if (wait == 0) selector.selectNow();
+                    else selector.select(wait < 0 ? 0 : Math.max(1, wait / 1_000_000));
+                    Runnable r;
+                    while ((r = tasks.poll()) != null) {
+                        try {
+                            r.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("server loop " + index + ": task failed: " + e);
+                        }
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        if (!k.isValid()) continue;
+                        if (k.isAcceptable()) { accept(); continue; }
+                        Conn c = (Conn) k.attachment();
+                        try {
+                            if (k.isReadable()) c.read();
+                            if (k.isValid() && k.isWritable()) c.flush();
+                        } catch (RuntimeException e) {
+                            fail(c, e);
+                        }
+                    }
+                    tickDueRooms(System.nanoTime());
+                    for (Conn c : toFlush) {
+                        try {
+                            c.flush();
+                        } catch (RuntimeException e) {
+                            fail(c, e);
+                        }
+                    }
+                    toFlush.clear();
+                }
+            } catch (IOException e) {
+                System.err.println("server loop " + index + " stopped: " + e);
+            }
+        }
+
+        /** A bug in handling one connection closes it, not the loop and every room on it. */
+        private void fail(Conn c, RuntimeException e) {
+            System.err.println("server loop " + index + ": dropping a connection: " + e);
+            c.close();
+        }
+
+        /** Nanos until the next room is due: 0 if one is, -1 if there are no rooms. */
+        private long untilNextTick(long now) {
+            if (roomList.isEmpty()) return -1;
+            long min = Long.MAX_VALUE;
+            for (Room r : roomList) if (!r.empty) min = Math.min(min, r.nextTick - now);
+            return min == Long.MAX_VALUE ? -1 : Math.max(0, min);
+        }
+
+        private void tickDueRooms(long now) {
+            for (int i = 0; i < roomList.size(); i++) {
+                Room r = roomList.get(i);
+                if (r.empty || now - r.nextTick < 0) continue;
+                long t0 = System.nanoTime();
+                r.tick();
+                tickNanosTotal += System.nanoTime() - t0;
+                ticks++;
+                r.nextTick += tickNanos;
+                if (now - r.nextTick > MAX_LATE_TICKS * tickNanos) { r.nextTick = now + tickNanos; lateTicks++; }
+            }
+            if (emptied) { roomList.removeIf(r -> r.empty); emptied = false; }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel ch;
+            while ((ch = server.accept()) != null) {
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                adopt(new Conn(ch));
+            }
+        }
+
+        void adopt(Conn c) {
+            try {
+                c.loop = this;
+                c.key = c.ch.register(selector, SelectionKey.OP_READ, c);
+                clients++;
+                if (c.out.position() > 0) { c.queued = true; toFlush.add(c); } // replies queued before the hand-off
+                c.parse(); // frames that arrived before a hand-off
+            } catch (IOException e) {
+                c.close();
+            }
+        }
+
+        void join(Conn c, int roomId) {
+            Room room = rooms.get(roomId);
+            if (room == null) {
+                room = new Room(roomId, this);
+                rooms.put(roomId, room);
+                roomList.add(room);
+            }
+            if (room.count >= roomSize || !room.add(c)) c.close();
+        }
+
+        /**
+         * Rooms can empty mid-tick (a failed send closes its connection), so roomList is only
+         * pruned after tickDueRooms' pass; until then the room is skipped.
+         */
+        void removeRoom(Room r) {
+            rooms.remove(r.id);
+            r.empty = true;
+            emptied = true;
+        }
+    }
+
+    // ---- Rooms ----
+
+    private final class Room {
+        final int id;
+        final Loop loop;
+        final Arena arena;
+        final Protocol.Writer writer;
+        final Conn[] players = new Conn[Arena.MAX_PLAYERS];
+        final int[] leaving = new int[Arena.MAX_PLAYERS];
+        int count, leavingCount;
+        boolean empty;                       // left rooms, still in roomList until the tick pass ends
+        long nextTick = System.nanoTime();
+
+        Room(int id, Loop loop) {
+            this.id = id;
+            this.loop = loop;
+            this.arena = new Arena(cols, rows, wrapWalls, System.nanoTime() ^ ((long) id << 32));
+            this.writer = new Protocol.Writer(arena);
+        }
+
+        boolean add(Conn c) {
+            int pid = arena.join();
+            if (pid < 0) return false;
+            players[pid] = c;
+            c.room = this;
+            c.player = pid;
+            count++;
+            c.send(writer.reset().welcome(pid, tickNanos).frame());
+            return true;
+        }
+
+        void remove(Conn c) {
+            players[c.player] = null;
+            leaving[leavingCount++] = c.player; // reported in the next delta
+            if (--count == 0) loop.removeRoom(this);
+        }
+
+        void tick() {
+            writer.reset().beginDelta();
+            for (int i = 0; i < leavingCount; i++) arena.leave(leaving[i], writer);
+            leavingCount = 0;
+            arena.tick(writer);
+            ByteBuffer frame = writer.end().frame();
+            loop.deltaBytes += frame.remaining();
+            for (Conn c : players) if (c != null) c.send(frame.duplicate());
+        }
+    }
+
+    // ---- Connections ----
+
+    private final class Conn {
+        final SocketChannel ch;
+        SelectionKey key;
+        Loop loop;
+        final ByteBuffer in = ByteBuffer.allocate(IN_BUFFER);
+        ByteBuffer out = ByteBuffer.allocate(4096);
+        Room room;
+        int player = -1;
+        boolean closed, queued;
+
+        Conn(SocketChannel ch) { this.ch = ch; }
+
+        void read() {
+            try {
+                if (ch.read(in) < 0) { close(); return; }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            parse();
+        }
+
+        /** Handles whole frames in the input buffer; stops early if handed to another loop. */
+        void parse() {
+            Loop target = null;
+            int roomId = 0;
+            in.flip();
+            try {
+                int len;
+                while (!closed && (len = Protocol.completeFrame(in, IN_BUFFER - 3)) >= 0) {
+                    int end = in.position() + 3 + len;
+                    in.position(in.position() + 3);
+                    byte type = in.get();
+                    if (type == Protocol.JOIN && room == null) {
+                        roomId = (int) Protocol.getVarLong(in);
+                        in.position(end);
+                        target = loops[Math.floorMod(roomId, loops.length)];
+                        if (target != loop) break;
+                        target = null;
+                        loop.join(this, roomId);
+                    } else if (type == Protocol.TURN && room != null) {
+                        Direction d = Protocol.direction(in.get());
+                        int seq = (int) Protocol.getVarLong(in);
+                        room.arena.turn(player, d, seq, Protocol.getVarLong(in));
+                    } else if (type == Protocol.PING) {
+                        ByteBuffer pong = loop.pong.clear();
+                        Protocol.putPing(pong, Protocol.PONG, in.getLong());
+                        send(pong.flip());
+                    }
+                    in.position(end);
+                }
+            } catch (RuntimeException e) {
+                close(); // malformed input
+            } finally {
+                in.compact();
+            }
+            if (target != null && !closed) handOff(target, roomId);
+        }
+
+        /** Moves this connection to the loop that owns its room; the rest of in is parsed there. */
+        private void handOff(Loop target, int roomId) {
+            // The old loop must not flush (and touch the cancelled key) any more; adopt() requeues.
+            if (queued) { loop.toFlush.remove(this); queued = false; }
+            key.cancel();
+            loop.clients--;
+            target.tasks.add(() -> { target.adopt(this); if (!closed) target.join(this, roomId); });
+            target.selector.wakeup();
+        }
+
+        /** Queues a frame; written at the end of the loop pass. */
+        void send(ByteBuffer frame) {
+            if (closed) return;
+            if (out.remaining() < frame.remaining()) {
+                int need = out.position() + frame.remaining();
+                if (need > Math.max(OUT_LIMIT, frame.remaining())) { loop.dropped++; close(); return; }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(need, out.capacity() * 2));
+                out.flip();
+                out = bigger.put(out);
+            }
+            out.put(frame);
+            if (!queued) { queued = true; loop.toFlush.add(this); }
+        }
+
+        void flush() {
+            queued = false;
+            if (closed || out.position() == 0) return;
+            try {
+                out.flip();
+                loop.bytesOut += ch.write(out);
+                out.compact();
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (loop != null) loop.clients--;
+            if (room != null) room.remove(this);
+            if (key != null) key.cancel();
+            try { ch.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    // ---- CLI ----
+
+    public static void main(String[] args) throws Exception {
+        GameServer s = new GameServer();
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--port=")) s.port(Integer.parseInt(v));
+            else if (a.startsWith("--board=")) {
+                String[] wh = v.toLowerCase(Locale.ROOT).split("x");
+                s.board(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+            }
+            else if (a.startsWith("--tick-ms=")) s.tickMs(Integer.parseInt(v));
+            else if (a.equals("--wrap")) s.wrapWalls(true);
+            else if (a.startsWith("--room-size=")) s.roomSize(Integer.parseInt(v));
+            else if (a.startsWith("--threads=")) s.threads(Integer.parseInt(v));
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+        s.start();
+        System.out.println("listening on " + s.port());
+        while (true) {
+            Thread.sleep(STATS_EVERY_MS);
+            System.out.println(s.stats());
+        }
+    }
+}
@@ -1,5 +1,5 @@
 package com.mycompany.snake;
 
 public enum GameState {
-    MENU, RUNNING, PAUSED, GAME_OVER
-}
\ No newline at end of file
+    MENU, RUNNING, PAUSED, GAME_OVER, WON
+}
@@ -0,0 +1,82 @@
+package com.mycompany.snake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * InputQueue
+ * Small bounded, lock-free queue of timestamped turns between input and the tick.
+ * Design notes:
+ *  - Many producers (key listener, menus, controllers), one consumer (whoever holds the
+ *    engine lock and ticks). Slots carry a sequence number, so producers claim a slot with
+ *    one CAS and publish with an ordered store; the consumer never blocks them.
+ *  - Bounded on purpose: a full queue rejects the press (counted) instead of growing
+ *    a backlog of stale turns.
+ *  - Each entry keeps System.nanoTime() of the press so the tick can measure
+ *    input-to-move latency.
+ */
+public final class InputQueue {
+    private static final Direction[] DIRS = Direction.values();
+
+    private final int mask;
+    private final byte[] dirs;
+    private final long[] stamps;
+    private final AtomicLongArray seq;           // seq[i] == pos: free for pos; pos+1: filled for pos
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long head;                            // consumer only
+    private long lastStamp;                       // consumer only
+
+    public InputQueue(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = cap - 1;
+        dirs = new byte[cap];
+        stamps = new long[cap];
+        seq = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) seq.set(i, i);
+    }
+
+    /** Any thread. Returns false (and counts it) if the queue is full. */
+    public boolean offer(Direction d, long nanos) {
+        for (;;) {
+            long pos = tail.get();
+            int i = (int) pos & mask;
+            long dif = seq.get(i) - pos;
+            if (dif == 0) {
+                if (!tail.compareAndSet(pos, pos + 1)) continue;
+                dirs[i] = (byte) d.ordinal();
+                stamps[i] = nanos;
+                seq.lazySet(i, pos + 1); // publish to the consumer
+                return true;
+            }
+            if (dif < 0) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            // Another producer claimed this slot first; reload the tail.
+        }
+    }
+
+    /** Consumer only. Next turn, or null if empty; its press time is then in lastStamp(). */
+    public Direction poll() {
+        int i = (int) head & mask;
+        if (seq.get(i) != head + 1) return null;
+        Direction d = DIRS[dirs[i]];
+        lastStamp = stamps[i];
+        seq.lazySet(i, head + mask + 1); // hand the slot back to producers
+        head++;
+        return d;
+    }
+
+    /** Consumer only. Stamp of the next turn without taking it, or -1 if empty. */
+    public long peekStamp() {
+        int i = (int) head & mask;
+        return seq.get(i) == head + 1 ? stamps[i] : -1;
+    }
+
+    /** Consumer only. */
+    public void clear() { while (poll() != null) { } }
+
+    public long lastStamp() { return lastStamp; }
+    public long rejected() { return rejected.get(); }
+}
@@ -0,0 +1,167 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * LagProxy
+ * Local TCP relay that delays traffic in both directions, to test remote play on one machine.
+ * Design notes:
+ *  - Every chunk read is held for delay ± jitter (uniform, seeded) before it is forwarded.
+ *    A chunk never overtakes the one before it, as on a real TCP path, so jitter shows up
+ *    as bunching rather than reordering.
+ *  - One thread and one Selector for all connections; it sleeps until the next chunk is due,
+ *    or until a socket that was full (a slow peer) takes writes again (OP_WRITE).
+ *  - A test tool: chunks are copied into fresh arrays and there is no backpressure.
+ */
+public final class LagProxy implements Runnable {
+    private final InetSocketAddress target;
+    private final long delayNanos, jitterNanos;
+    private final SplittableRandom rng;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final List<Pipe> pipes = new ArrayList<>();
+    private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+    private volatile boolean running = true;
+
+    /** One direction of one connection. */
+    private final class Pipe {
+        final SocketChannel from, to;
+        final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+        final ArrayDeque<Long> due = new ArrayDeque<>();
+        long lastDue;
+        Pipe peer;
+        SelectionKey key;      // from's key, also the one to watch for OP_WRITE on peer's writes
+        boolean blocked;       // to is full: wait for OP_WRITE instead of polling
+
+        Pipe(SocketChannel from, SocketChannel to) { this.from = from; this.to = to; }
+
+        void read(long now) throws IOException {
+            buf.clear();
+            int n = from.read(buf);
+            if (n < 0) throw new IOException("closed");
+            if (n == 0) return;
+            buf.flip();
+            ByteBuffer copy = ByteBuffer.allocate(n).put(buf).flip();
+            long j = jitterNanos == 0 ? 0 : rng.nextLong(-jitterNanos, jitterNanos + 1);
+            lastDue = Math.max(lastDue, now + Math.max(0, delayNanos + j));
+            chunks.add(copy);
+            due.add(lastDue);
+        }
+
+        void deliver(long now) throws IOException {
+            while (!due.isEmpty() && now - due.peek() >= 0) {
+                ByteBuffer b = chunks.peek();
+                to.write(b);
+                if (b.hasRemaining()) { block(true); return; }
+                chunks.poll();
+                due.poll();
+            }
+            block(false);
+        }
+
+        private void block(boolean full) {
+            if (blocked == full) return;
+            blocked = full;
+            peer.key.interestOps(full ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        void close() {
+            try { from.close(); } catch (IOException ignored) { }
+            try { to.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    /** Listens on listenPort (0: any free port) and relays to target with the given one-way delay. */
+    public LagProxy(int listenPort, InetSocketAddress target, long delayMs, long jitterMs, long seed) throws IOException {
+        this.target = target;
+        this.delayNanos = delayMs * 1_000_000L;
+        this.jitterNanos = jitterMs * 1_000_000L;
+        this.rng = new SplittableRandom(seed);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("localhost", listenPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public LagProxy start() {
+        Thread t = new Thread(this, "snake-lag-proxy");
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+
+    public int port() { return server.socket().getLocalPort(); }
+
+    public void stop() { running = false; selector.wakeup(); }
+
+    @Override public void run() {
+        try {
+            while (running) {
+                long now = System.nanoTime(), wait = Long.MAX_VALUE;
+                for (Pipe p : pipes) if (!p.blocked && !p.due.isEmpty()) wait = Math.min(wait, p.due.peek() - now);
+                if (wait <= 0) selector.selectNow();
+                else selector.select(wait == Long.MAX_VALUE ? 0 : Math.max(1, wait / 1_000_000));
+                now = System.nanoTime();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue; // cancelled by a drop() earlier in this pass
+                    if (k.isAcceptable()) { accept(); continue; }
+                    Pipe p = (Pipe) k.attachment();
+                    try {
+                        if (k.isReadable()) p.read(now);
+                        if (k.isValid() && k.isWritable()) p.peer.deliver(now);
+                    } catch (IOException e) {
+                        drop(p);
+                    }
+                }
+                for (int i = pipes.size() - 1; i >= 0; i--) {
+                    if (i >= pipes.size()) continue; // a drop() took this pipe's pair
+                    Pipe p = pipes.get(i);
+                    if (p.blocked) continue;
+                    try { p.deliver(now); } catch (IOException e) { drop(p); }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("lag proxy stopped: " + e);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            SocketChannel upstream = SocketChannel.open(target); // blocking connect; it's local
+            for (SocketChannel ch : new SocketChannel[]{client, upstream}) {
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            Pipe up = new Pipe(client, upstream), down = new Pipe(upstream, client);
+            up.peer = down;
+            down.peer = up;
+            up.key = client.register(selector, SelectionKey.OP_READ, up);
+            down.key = upstream.register(selector, SelectionKey.OP_READ, down);
+            pipes.add(up);
+            pipes.add(down);
+        }
+    }
+
+    private void drop(Pipe p) {
+        p.close();
+        pipes.remove(p);
+        pipes.remove(p.peer);
+    }
+}
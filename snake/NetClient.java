@@ -0,0 +1,227 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * NetClient
+ * Non-blocking connection to a GameServer room, keeping a local mirror Arena up to date.
+ * Design notes:
+ *  - Driven by a Selector the caller owns (register() then handle() for its keys), so one
+ *    thread can run thousands of clients, as BotSwarm does.
+ *  - WELCOME builds the mirror Arena; each DELTA is decoded straight into arena.mirror,
+ *    then the Listener hears about the new tick. Nothing is allocated per delta.
+ *  - turn() tags each press with a sequence number; the server's ack for our id gives the
+ *    input latency of the last press (from send to the tick that applied it). ping() gives
+ *    the plain network round trip, answered by the server without waiting for a tick.
+ */
+public final class NetClient {
+    private static final int IN_BUFFER = 1 << 16;
+    private static final int OUT_LIMIT = 1 << 16;      // unsent bytes before giving up on the server
+    private static final int MAX_MESSAGE = 32;         // largest TURN or PING frame
+
+    /** Called on the selector thread after the mirror has been updated. */
+    public interface Listener {
+        default void welcome(NetClient c) { }
+        default void delta(NetClient c, long tick) { }
+        default void closed(NetClient c, IOException cause) { }
+    }
+
+    private final SocketChannel ch;
+    private final Listener listener;
+    private final Protocol.Reader reader = new Protocol.Reader();
+    private ByteBuffer in = ByteBuffer.allocate(IN_BUFFER);
+    private ByteBuffer out = ByteBuffer.allocate(1 << 10);
+    private SelectionKey key;
+    private Arena arena;
+    private int player = -1;
+    private long tick, tickNanos;
+    private boolean closed;
+
+    // Input latency (send to applied) and ping round trips
+    private int seq, sentSeq;
+    private long sentAt, inputLast, inputTotal, inputMax, inputCount;
+    private long rttLast, rttTotal, rttMax, rttCount;
+
+    private final Arena.Events events = new Arena.Events() {
+        @Override public void head(int id, int cell) { arena.mirror.head(id, cell); }
+        @Override public void tail(int id) { arena.mirror.tail(id); }
+        @Override public void died(int id) { arena.mirror.died(id); }
+        @Override public void spawned(int id, int[] cells, int length, Direction dir) { arena.mirror.spawned(id, cells, length, dir); }
+        @Override public void apple(int cell) { arena.mirror.apple(cell); }
+        @Override public void golden(int cell) { arena.mirror.golden(cell); }
+        @Override public void score(int id, int score) { arena.mirror.score(id, score); }
+        @Override public void ack(int id, int s) {
+            arena.mirror.ack(id, s);
+            if (id == player && s == sentSeq && sentAt != 0) {
+                inputLast = System.nanoTime() - sentAt;
+                inputTotal += inputLast;
+                inputMax = Math.max(inputMax, inputLast);
+                inputCount++;
+                sentAt = 0;
+            }
+        }
+    };
+
+    private NetClient(SocketChannel ch, Listener listener) {
+        this.ch = ch;
+        this.listener = listener;
+    }
+
+    /** Starts connecting and queues the JOIN; call register() next. */
+    public static NetClient connect(InetSocketAddress server, int room, Listener listener) throws IOException {
+        SocketChannel ch = SocketChannel.open();
+        ch.configureBlocking(false);
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        ch.connect(server);
+        NetClient c = new NetClient(ch, listener);
+        Protocol.putJoin(c.out, room);
+        return c;
+    }
+
+    public void register(Selector selector) throws IOException {
+        key = ch.register(selector, SelectionKey.OP_CONNECT, this);
+    }
+
+    /** Handles a selected key of this client. */
+    public void handle(SelectionKey k) {
+        try {
+            if (k.isConnectable()) {
+                ch.finishConnect();
+                k.interestOps(SelectionKey.OP_READ);
+                flush();
+            }
+            if (k.isValid() && k.isReadable()) read();
+            if (k.isValid() && k.isWritable()) flush();
+        } catch (IOException | RuntimeException e) {
+            close(e instanceof IOException io ? io : new IOException(e));
+        }
+    }
+
+    /** Sends a turn for the server's next tick; returns its sequence number, or 0 if not joined yet. */
+    public int turn(Direction d) { return turn(d, 0); }
+
+    /** Sends a turn the server should apply at tick atTick (or next, if that has passed). */
+    public int turn(Direction d, long atTick) {
+        if (player < 0 || closed) return 0;
+        if (!reserve()) return 0;
+        sentSeq = ++seq;
+        sentAt = System.nanoTime();
+        Protocol.putTurn(out, d, sentSeq, atTick);
+        send();
+        return sentSeq;
+    }
+
+    /** Measures the network round trip; the answer updates rttLastNanos() and friends. */
+    public void ping() {
+        if (closed || !reserve()) return;
+        Protocol.putPing(out, Protocol.PING, System.nanoTime());
+        send();
+    }
+
+    private void send() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            close(e instanceof IOException io ? io : new IOException(e));
+        }
+    }
+
+    /**
+     * Room in out for one more message, growing it while still connecting or backed up;
+     * past OUT_LIMIT the server isn't reading and the connection is closed instead.
+     */
+    private boolean reserve() {
+        if (out.remaining() >= MAX_MESSAGE) return true;
+        if (out.capacity() >= OUT_LIMIT) {
+            close(new IOException("send buffer full: " + out.position() + " bytes not taken by the server"));
+            return false;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(out.capacity() * 2);
+        out.flip();
+        out = bigger.put(out);
+        return true;
+    }
+
+    private void read() throws IOException {
+        if (ch.read(in) < 0) { close(null); return; }
+        in.flip();
+        int len;
+        while ((len = Protocol.completeFrame(in)) >= 0) {
+            int end = in.position() + 3 + len;
+            ByteBuffer frame = in.duplicate().position(in.position() + 4).limit(end);
+            byte type = in.get(in.position() + 3);
+            if (type == Protocol.WELCOME) welcome(frame);
+            else if (type == Protocol.PONG) {
+                rttLast = System.nanoTime() - frame.getLong();
+                rttTotal += rttLast;
+                rttMax = Math.max(rttMax, rttLast);
+                rttCount++;
+            }
+            else if (type == Protocol.DELTA && arena != null) {
+                tick = Protocol.getVarLong(frame);
+                arena.setTicks(tick);
+                reader.events(frame, arena, events);
+                listener.delta(this, tick);
+            }
+            in.position(end);
+        }
+        if (in.position() == 0 && in.limit() == in.capacity()) grow(); // one frame larger than the buffer
+        in.compact();
+    }
+
+    private void welcome(ByteBuffer f) {
+        player = f.get();
+        int cols = f.getShort() & 0xFFFF, rows = f.getShort() & 0xFFFF;
+        boolean wrap = (f.get() & 1) != 0;
+        arena = new Arena(cols, rows, wrap, 0);
+        tickNanos = Protocol.getVarLong(f) * 1000;
+        tick = Protocol.getVarLong(f);
+        arena.setTicks(tick);
+        reader.events(f, arena, arena.mirror);
+        listener.welcome(this);
+    }
+
+    private void grow() {
+        ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+        bigger.put(in);
+        bigger.flip();
+        in = bigger;
+    }
+
+    private void flush() throws IOException {
+        if (key == null || !ch.isConnected()) return;
+        out.flip();
+        ch.write(out);
+        out.compact();
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    public void close(IOException cause) {
+        if (closed) return;
+        closed = true;
+        if (key != null) key.cancel();
+        try { ch.close(); } catch (IOException ignored) { }
+        listener.closed(this, cause);
+    }
+
+    public boolean isClosed() { return closed; }
+    /** Null until the WELCOME arrives. */
+    public Arena arena() { return arena; }
+    public int playerId() { return player; }
+    public long tick() { return tick; }
+    /** The server's tick length, from the WELCOME. */
+    public long tickNanos() { return tickNanos; }
+    public long inputLatencyMaxNanos() { return inputMax; }
+    public long inputLatencyCount() { return inputCount; }
+    public double inputLatencyMeanNanos() { return inputCount == 0 ? 0 : (double) inputTotal / inputCount; }
+    public long rttLastNanos() { return rttLast; }
+    public long rttMaxNanos() { return rttMax; }
+    public long rttCount() { return rttCount; }
+    public double rttMeanNanos() { return rttCount == 0 ? 0 : (double) rttTotal / rttCount; }
+}
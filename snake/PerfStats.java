@@ -0,0 +1,271 @@
+package com.mycompany.snake;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PerfStats
+ * Counters for how the game actually runs: tick timing, paint time, fps, allocation, GC
+ * and sound latency.
+ * Design notes:
+ *  - Recording is a couple of array stores into fixed rings, one writer each: GameLoop
+ *    records ticks, the EDT records frames (total paint time of each). Nothing is
+ *    allocated on those paths.
+ *  - Readers (HUD, JMX, the CSV log) go through snapshot(), which recomputes at most every
+ *    SAMPLE_NANOS from the rings, so reads stay cheap and rates have a stable window.
+ *    A reader may see a ring slot mid-update; fine for monitoring numbers.
+ *  - Allocation comes from per-thread allocated-bytes counters, GC from the collector beans
+ *    plus pause notifications; both are JDK-provided, no agent or profiler attached. The
+ *    pause listener is hooked up by register(), which GamePanel defers past the first frame.
+ *  - -Dsnake.perf.log=FILE appends one CSV row per second for whole-session profiles.
+ */
+public final class PerfStats implements PerfStatsMXBean {
+    private static final int RING = 512;                       // power of two
+    private static final long SAMPLE_NANOS = 250_000_000L;
+    /** Upper bounds (ms) of the tick jitter histogram buckets; the last bucket is open. */
+    public static final double[] JITTER_BUCKETS_MS = {0.5, 1, 2, 4, 8, 16};
+
+    private static final AtomicLong gcMaxPauseNanos = new AtomicLong(); // since the last snapshot
+    private static boolean listening;                                    // guarded by PerfStats.class
+
+    private final GameEngine engine;
+    private final GameLoop loop;
+    private volatile String renderer = "not shown yet";
+    private volatile AudioMixer audio;
+
+    // Rings: single writer each, count is the number of samples ever written
+    private final long[] tickInterval = new long[RING], tickStep = new long[RING];
+    private volatile long tickCount;
+    private final long[] frameNanos = new long[RING];
+    private volatile long frameCount;
+
+    // Snapshot state (guarded by this)
+    private final long[] scratch = new long[RING];
+    private Snapshot snap = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, new int[JITTER_BUCKETS_MS.length + 1]);
+    private long lastSampleAt = System.nanoTime(), lastFrameCount, lastAllocated = -1;
+
+    /** One window's worth of numbers; times in ms. */
+    public record Snapshot(int speedMs, double tickMeanMs, double jitterP50Ms, double jitterP99Ms,
+                           double paintP50Ms, double paintP99Ms, double fps, double allocMBps,
+                           long gcCount, long gcTimeMs, double gcMaxPauseMs, long slips,
+                           double inputLatencyMs, double audioLatencyMs, long audioUnderruns,
+                           int[] jitterHistogram) { }
+
+    public PerfStats(GameEngine engine, GameLoop loop) {
+        this.engine = engine;
+        this.loop = loop;
+        String log = System.getProperty("snake.perf.log");
+        if (log != null) startCsvLog(Path.of(log));
+    }
+
+    // ---- Recording ----
+
+    /** GameLoop thread: one tick ran intervalNanos after the previous one, on a stepNanos clock. */
+    public void recordTick(long intervalNanos, long stepNanos) {
+        int i = (int) tickCount & (RING - 1);
+        tickInterval[i] = intervalNanos;
+        tickStep[i] = stepNanos;
+        tickCount++;
+    }
+
+    /** EDT: one frame was shown, spending nanos in paintComponent (across all its dirty rects). */
+    public void recordFrame(long nanos) {
+        frameNanos[(int) frameCount & (RING - 1)] = nanos;
+        frameCount++;
+    }
+
+    /** Which RenderBackend and Java2D pipeline the frames go through, as shown to people. */
+    public void setRenderer(String description) { renderer = description; }
+    public String renderer() { return renderer; }
+
+    /** The mixer whose play-to-speaker latency and underruns get reported; AudioMixer measures them itself. */
+    public void setAudio(AudioMixer mixer) { audio = mixer; }
+    public String audio() { AudioMixer a = audio; return a == null ? "none" : a.status(); }
+
+    // ---- Snapshot ----
+
+    public synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        if (now - lastSampleAt < SAMPLE_NANOS) return snap;
+        double secs = (now - lastSampleAt) / 1e9;
+        lastSampleAt = now;
+
+        // Tick interval and |interval - step| over the ring
+        int n = (int) Math.min(tickCount, RING);
+        double sum = 0;
+        int[] hist = new int[JITTER_BUCKETS_MS.length + 1];
+        for (int i = 0; i < n; i++) {
+            long jitter = Math.abs(tickInterval[i] - tickStep[i]);
+            sum += tickInterval[i];
+            scratch[i] = jitter;
+            int b = 0;
+            while (b < JITTER_BUCKETS_MS.length && jitter > JITTER_BUCKETS_MS[b] * 1e6) b++;
+            hist[b]++;
+        }
+        double tickMean = n == 0 ? 0 : sum / n / 1e6;
+        Arrays.sort(scratch, 0, n);
+        double j50 = pct(n, 50) / 1e6, j99 = pct(n, 99) / 1e6;
+
+        long frames = frameCount;
+        n = (int) Math.min(frames, RING);
+        System.arraycopy(frameNanos, 0, scratch, 0, n);
+        Arrays.sort(scratch, 0, n);
+        double p50 = pct(n, 50) / 1e6, p99 = pct(n, 99) / 1e6;
+        double fps = (frames - lastFrameCount) / secs;
+        lastFrameCount = frames;
+
+        long allocated = allocatedBytes();
+        double allocRate = lastAllocated < 0 || allocated < lastAllocated ? 0 : (allocated - lastAllocated) / secs / (1 << 20);
+        lastAllocated = allocated;
+
+        long gcCount = 0, gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcTime += Math.max(0, gc.getCollectionTime());
+        }
+        double maxPause = gcMaxPauseNanos.getAndSet(0) / 1e6;
+
+        AudioMixer a = audio;
+        snap = new Snapshot(engine.speedMs(), tickMean, j50, j99, p50, p99, fps, allocRate,
+                gcCount, gcTime, maxPause, loop.slips(), engine.meanInputLatencyNanos() / 1e6,
+                a == null ? 0 : a.meanLatencyNanos() / 1e6, a == null ? 0 : a.underruns(), hist);
+        return snap;
+    }
+
+    private long pct(int n, int p) {
+        if (n == 0) return 0;
+        return scratch[Math.min(n - 1, (int) Math.ceil(p / 100.0 * n) - 1)];
+    }
+
+    /** Bytes allocated so far by all live threads; -1 if the JVM can't tell. */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t)
+                || !t.isThreadAllocatedMemorySupported() || !t.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long b : t.getThreadAllocatedBytes(t.getAllThreadIds())) if (b > 0) total += b;
+        return total;
+    }
+
+    private static synchronized void listenForGcPauses() {
+        if (listening) return;
+        listening = true;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter emitter)) continue;
+            emitter.addNotificationListener((note, hb) -> {
+                if (!note.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) note.getUserData());
+                long pause = info.getGcInfo().getDuration() * 1_000_000L;
+                gcMaxPauseNanos.accumulateAndGet(pause, Math::max);
+            }, null, null);
+        }
+    }
+
+    // ---- JMX ----
+
+    /** Registers this instance as com.mycompany.snake:type=PerfStats, replacing any earlier one. */
+    public void register() {
+        listenForGcPauses();
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.mycompany.snake:type=PerfStats");
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            System.err.println("could not register PerfStats MBean: " + e);
+        }
+    }
+
+    @Override public int getSpeedMs() { return snapshot().speedMs(); }
+    @Override public double getTickIntervalMeanMs() { return snapshot().tickMeanMs(); }
+    @Override public double getTickJitterP50Ms() { return snapshot().jitterP50Ms(); }
+    @Override public double getTickJitterP99Ms() { return snapshot().jitterP99Ms(); }
+    @Override public double getPaintP50Ms() { return snapshot().paintP50Ms(); }
+    @Override public double getPaintP99Ms() { return snapshot().paintP99Ms(); }
+    @Override public double getFramesPerSecond() { return snapshot().fps(); }
+    @Override public double getAllocatedMBPerSecond() { return snapshot().allocMBps(); }
+    @Override public long getGcCountTotal() { return snapshot().gcCount(); }
+    @Override public long getGcTimeMsTotal() { return snapshot().gcTimeMs(); }
+    @Override public double getGcMaxPauseMs() { return snapshot().gcMaxPauseMs(); }
+    @Override public long getSlipsTotal() { return snapshot().slips(); }
+    @Override public double getInputLatencyMeanMs() { return snapshot().inputLatencyMs(); }
+    @Override public String getRenderer() { return renderer; }
+    @Override public double getAudioLatencyMeanMs() { return snapshot().audioLatencyMs(); }
+    @Override public double getAudioLatencyMaxMs() { AudioMixer a = audio; return a == null ? 0 : a.maxLatencyNanos() / 1e6; }
+    @Override public long getAudioUnderrunsTotal() { return snapshot().audioUnderruns(); }
+    @Override public String getAudio() { return audio(); }
+
+    // ---- Dumps ----
+
+    private static final String CSV_HEADER = "epoch_ms,speed_ms,tick_mean_ms,jitter_p50_ms,jitter_p99_ms,"
+            + "paint_p50_ms,paint_p99_ms,fps,alloc_mb_s,gc_count,gc_time_ms,gc_max_pause_ms,slips,input_latency_ms,"
+            + "audio_latency_ms,audio_underruns";
+
+    private static String csvRow(Snapshot s) {
+        return String.format(Locale.ROOT, "%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%.2f,%d,%d,%.1f,%d,%.3f,%.3f,%d",
+                System.currentTimeMillis(), s.speedMs(), s.tickMeanMs(), s.jitterP50Ms(), s.jitterP99Ms(),
+                s.paintP50Ms(), s.paintP99Ms(), s.fps(), s.allocMBps(), s.gcCount(), s.gcTimeMs(),
+                s.gcMaxPauseMs(), s.slips(), s.inputLatencyMs(), s.audioLatencyMs(), s.audioUnderruns());
+    }
+
+    /** One JSON object: the snapshot plus the render path and audio status it was taken with. */
+    public static String toJson(Snapshot s, String renderer, String audio) {
+        return String.format(Locale.ROOT, "{\"speedMs\":%d,\"tickMeanMs\":%.3f,\"jitterP50Ms\":%.3f,\"jitterP99Ms\":%.3f,"
+                        + "\"paintP50Ms\":%.3f,\"paintP99Ms\":%.3f,\"fps\":%.1f,\"allocMBps\":%.2f,\"gcCount\":%d,"
+                        + "\"gcTimeMs\":%d,\"gcMaxPauseMs\":%.1f,\"slips\":%d,\"inputLatencyMs\":%.3f,"
+                        + "\"audioLatencyMs\":%.3f,\"audioUnderruns\":%d,"
+                        + "\"jitterBucketsMs\":%s,\"jitterHistogram\":%s,\"renderer\":%s,\"audio\":%s}",
+                s.speedMs(), s.tickMeanMs(), s.jitterP50Ms(), s.jitterP99Ms(), s.paintP50Ms(), s.paintP99Ms(),
+                s.fps(), s.allocMBps(), s.gcCount(), s.gcTimeMs(), s.gcMaxPauseMs(), s.slips(), s.inputLatencyMs(),
+                s.audioLatencyMs(), s.audioUnderruns(), Arrays.toString(JITTER_BUCKETS_MS), Arrays.toString(s.jitterHistogram()),
+                jsonString(renderer), jsonString(audio));
+    }
+
+    /** v as a quoted JSON string. */
+    private static String jsonString(String v) {
+        StringBuilder b = new StringBuilder(v.length() + 2).append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '"' || c == '\\') b.append('\\').append(c);
+            else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+            else b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+    @Override public void dumpJson(String file) throws IOException {
+        Files.writeString(Path.of(file), toJson(snapshot(), renderer, audio()) + System.lineSeparator());
+    }
+
+    private void startCsvLog(Path file) {
+        Thread t = new Thread(() -> {
+            try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                if (Files.size(file) == 0) w.println(CSV_HEADER);
+                while (true) {
+                    Thread.sleep(1000);
+                    w.println(csvRow(snapshot()));
+                    w.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("perf log stopped: " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "snake-perf-log");
+        t.setDaemon(true);
+        t.start();
+    }
+}
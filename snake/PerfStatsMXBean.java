@@ -0,0 +1,35 @@
+package com.mycompany.snake;
+
+/**
+ * PerfStatsMXBean
+ * JMX view of PerfStats, registered as com.mycompany.snake:type=PerfStats.
+ * Snapshots are recomputed at most every 250 ms (PerfStats.SAMPLE_NANOS). Rates and the
+ * max GC pause cover the time since the previous snapshot, so at least that window; tick
+ * and paint figures cover the last 512 of each (PerfStats.RING). Totals are cumulative.
+ */
+public interface PerfStatsMXBean {
+    int getSpeedMs();
+    double getTickIntervalMeanMs();
+    double getTickJitterP50Ms();
+    double getTickJitterP99Ms();
+    double getPaintP50Ms();
+    double getPaintP99Ms();
+    double getFramesPerSecond();
+    double getAllocatedMBPerSecond();
+    long getGcCountTotal();
+    long getGcTimeMsTotal();
+    double getGcMaxPauseMs();
+    long getSlipsTotal();
+    double getInputLatencyMeanMs();
+    /** RenderBackend and Java2D pipeline, e.g. "flip on OpenGL, accelerated, page flipping". */
+    String getRenderer();
+    /** Mean time from a sound being triggered to its first sample leaving the output buffer, whole session. */
+    double getAudioLatencyMeanMs();
+    double getAudioLatencyMaxMs();
+    long getAudioUnderrunsTotal();
+    /** Output format and buffer, "muted", or why there is no sound. */
+    String getAudio();
+
+    /** Writes the current snapshot as JSON to the given file. */
+    void dumpJson(String file) throws java.io.IOException;
+}
@@ -0,0 +1,195 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Prediction
+ * Client-side prediction for one NetClient: a local Arena that runs ahead of the server
+ * and is rolled back and replayed whenever an authoritative tick arrives.
+ * Design notes:
+ *  - The predicted Arena steps on the client's own clock with Arena.predict(), the same
+ *    movement and collision rules as the server's tick() minus anything only the server
+ *    knows (apple spawns, deaths, respawns), so the view never waits for the network.
+ *  - Each local turn is sent at once, tagged with the predicted tick it applies at (one per
+ *    tick, like the server's queue), and kept. The server holds it until that tick, so a
+ *    turn that arrives in time needs no correction. On each delta: drop the turns the
+ *    server acked, copy its state, replay the kept turns up to the current predicted tick.
+ *    A local head that ends up somewhere else than before counts as a correction.
+ *  - The lead over the server is one network round trip (PING, smoothed, plus two
+ *    deviations as a jitter margin, the way TCP sizes its timeout), so turns arrive before
+ *    their tick. The clock catches up or holds a tick to track that lead.
+ *  - Single-threaded: everything runs on the NetClient's selector thread. A renderer on
+ *    another thread reads arena() while holding this object's lock.
+ */
+public final class Prediction implements NetClient.Listener {
+    private static final int MAX_LEAD = 32;       // ticks; beyond this the prediction is noise
+    private static final int PENDING = 64;        // power of two
+    private static final long PING_EVERY_NANOS = 250_000_000L;
+
+    private NetClient client;
+    private Arena predicted;
+    private long tickNanos, nextTickAt, nextPingAt;
+    private long predictedTick, serverTick;
+    private int player = -1;
+
+    // Sent but not yet acked turns, oldest first
+    private final int[] pendSeq = new int[PENDING];
+    private final Direction[] pendDir = new Direction[PENDING];
+    private final long[] pendTick = new long[PENDING];
+    private int pendHead, pendCount;
+
+    // Round trip smoothing (nanos) and stats
+    private double srtt, rttvar;
+    private long rttSeen;
+    private long reconciles, corrections, correctionCells, replayed, maxReplay, snaps, lateInputs;
+
+    // ---- NetClient.Listener (selector thread) ----
+
+    @Override public synchronized void welcome(NetClient c) {
+        client = c;
+        player = c.playerId();
+        tickNanos = c.tickNanos();
+        Arena server = c.arena();
+        predicted = new Arena(server.cols(), server.rows(), server.isWrapWalls(), 0);
+        predicted.copyFrom(server);
+        predictedTick = serverTick = c.tick();
+        nextTickAt = System.nanoTime() + tickNanos;
+    }
+
+    @Override public synchronized void delta(NetClient c, long tick) {
+        Arena server = c.arena();
+        serverTick = tick;
+        reconciles++;
+        if (c.rttCount() != rttSeen) sampleRtt(c.rttLastNanos(), c.rttCount());
+
+        // Turns the server has consumed are part of its state now
+        int acked = server.ackedSeq(player);
+        while (pendCount > 0 && pendSeq[pendHead] - acked <= 0) pop();
+        // Ones it should have applied by now but hasn't: they arrive late, re-tag after tick
+        long t = tick;
+        for (int i = 0; i < pendCount; i++) {
+            int k = (pendHead + i) & (PENDING - 1);
+            if (pendTick[k] <= t) { pendTick[k] = t + 1; lateInputs++; }
+            t = pendTick[k];
+        }
+
+        if (predictedTick < tick) { predictedTick = tick; snaps++; }
+        if (predictedTick - tick > MAX_LEAD) predictedTick = tick + MAX_LEAD;
+        boolean wasAlive = player >= 0 && predicted.isAlive(player);
+        int oldHead = wasAlive ? predicted.snakeCell(player, 0) : GameEngine.NO_CELL;
+
+        predicted.copyFrom(server);
+        int n = (int) (predictedTick - tick);
+        for (long s = tick + 1; s <= predictedTick; s++) step(s);
+        replayed += n;
+        maxReplay = Math.max(maxReplay, n);
+
+        boolean alive = predicted.isAlive(player);
+        if (wasAlive && alive && predicted.snakeCell(player, 0) != oldHead) {
+            corrections++;
+            int h = predicted.snakeCell(player, 0);
+            correctionCells += Math.abs(predicted.x(h) - predicted.x(oldHead)) + Math.abs(predicted.y(h) - predicted.y(oldHead));
+        }
+    }
+
+    @Override public void closed(NetClient c, IOException cause) {
+        if (cause != null) System.err.println("connection closed: " + cause);
+    }
+
+    // ---- Local clock and input ----
+
+    /**
+     * Runs the predicted ticks due by now; returns how many ran (0 before the WELCOME).
+     * Call again after nanosUntilNextTick().
+     */
+    public synchronized int advance(long now) {
+        if (predicted == null) return 0;
+        if (now - nextPingAt >= 0) { client.ping(); nextPingAt = now + PING_EVERY_NANOS; }
+        int ran = 0;
+        while (now - nextTickAt >= 0) {
+            nextTickAt += tickNanos;
+            long lead = predictedTick - serverTick, target = targetLead();
+            if (lead > target + 1) continue;             // too far ahead: hold this tick
+            int steps = lead < target ? 2 : 1;           // behind: catch up a tick
+            for (int i = 0; i < steps && predictedTick - serverTick < MAX_LEAD; i++) {
+                step(++predictedTick);
+                ran++;
+            }
+        }
+        if (now - nextTickAt > MAX_LEAD * tickNanos) nextTickAt = now + tickNanos; // stalled thread
+        return ran;
+    }
+
+    public synchronized long nanosUntilNextTick(long now) {
+        return predicted == null ? tickNanos : Math.max(0, nextTickAt - now);
+    }
+
+    /** Turns the local snake from the next predicted tick on, and sends the turn. */
+    public synchronized void turn(Direction d) {
+        if (predicted == null || !predicted.isAlive(player)) return;
+        long at = predictedTick + 1;
+        if (pendCount > 0) at = Math.max(at, pendTick[(pendHead + pendCount - 1) & (PENDING - 1)] + 1);
+        int seq = client.turn(d, at);
+        if (seq == 0) return;
+        if (pendCount == PENDING) pop(); // hundreds of presses unacked: the oldest is moot
+        int k = (pendHead + pendCount++) & (PENDING - 1);
+        pendSeq[k] = seq;
+        pendDir[k] = d;
+        pendTick[k] = at;
+    }
+
+    private void step(long tick) {
+        for (int i = 0; i < pendCount; i++) {
+            int k = (pendHead + i) & (PENDING - 1);
+            if (pendTick[k] == tick) predicted.steer(player, pendDir[k]);
+        }
+        predicted.predict(Arena.Events.NONE);
+    }
+
+    private void pop() {
+        pendDir[pendHead] = null;
+        pendHead = (pendHead + 1) & (PENDING - 1);
+        pendCount--;
+    }
+
+    private void sampleRtt(long rtt, long count) {
+        rttSeen = count;
+        if (srtt == 0) { srtt = rtt; rttvar = rtt / 2.0; return; }
+        rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rtt);
+        srtt = 0.875 * srtt + 0.125 * rtt;
+    }
+
+    /**
+     * Ticks to run ahead of the last server tick: by the time a turn sent now arrives, the
+     * server has moved on by about one round trip, and the turn must still be in the future.
+     */
+    private long targetLead() {
+        return Math.min(MAX_LEAD, Math.max(1, (long) Math.ceil((srtt + 2 * rttvar) / tickNanos)));
+    }
+
+    // ---- Reading ----
+
+    /** The predicted state; read it while holding this object's lock. Null before the WELCOME. */
+    public Arena arena() { return predicted; }
+    public int playerId() { return player; }
+    public NetClient client() { return client; }
+
+    public synchronized long lead() { return predictedTick - serverTick; }
+    public synchronized double rttMs() { return srtt / 1e6; }
+    public synchronized double rttJitterMs() { return rttvar / 1e6; }
+    public synchronized long reconciles() { return reconciles; }
+    public synchronized long corrections() { return corrections; }
+    public synchronized long correctionCells() { return correctionCells; }
+    public synchronized long replayedTicks() { return replayed; }
+    public synchronized long snaps() { return snaps; }
+    public synchronized long lateInputs() { return lateInputs; }
+
+    public synchronized String stats() {
+        return String.format(Locale.ROOT, "rtt=%.1fms dev=%.1fms lead=%d corrections=%d/%d (%.2f%%, avg %.1f cells) replay avg=%.1f max=%d late=%d snaps=%d",
+                srtt / 1e6, rttvar / 1e6, predictedTick - serverTick, corrections, reconciles,
+                reconciles == 0 ? 0 : 100.0 * corrections / reconciles,
+                corrections == 0 ? 0 : (double) correctionCells / corrections,
+                reconciles == 0 ? 0 : (double) replayed / reconciles, maxReplay, lateInputs, snaps);
+    }
+}
@@ -0,0 +1,258 @@
+package com.mycompany.snake;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Protocol
+ * Wire format between GameServer and its clients: framed messages carrying Arena.Events.
+ * Design notes:
+ *  - Every message is a frame: a 3-byte big-endian payload length, then a type byte and body.
+ *  - Clients send JOIN(room) once and TURN(dir, seq, tick) per key press; PING is echoed
+ *    at once as PONG for round-trip times. The server answers JOIN
+ *    with WELCOME (player id, board, tick length and number, and a keyframe: the whole state
+ *    as spawn/apple/score events), then one DELTA per tick holding only what it changed.
+ *  - Events are one op byte (op << 5 | player id) plus a few varint bytes. A move is a
+ *    direction, not a cell, with the "tail removed" flag folded in: a snake moving costs
+ *    2 bytes per tick whatever the board size. Spawns send the head cell then 2-bit steps.
+ *  - Writer encodes straight from Arena.tick(); Reader decodes into any Events, normally
+ *    a client Arena's mirror, which it also uses to turn directions back into cells.
+ */
+public final class Protocol {
+    public static final int DEFAULT_PORT = 7777;
+    public static final int MAX_FRAME = 1 << 20;
+    private static final Direction[] DIRS = Direction.values();
+
+    // Client -> server
+    public static final byte JOIN = 1, TURN = 2, PING = 3;
+    // Server -> client
+    public static final byte WELCOME = 10, DELTA = 11, PONG = 12;
+
+    // Event ops (top 3 bits of the op byte)
+    private static final int MOVE = 0, TAIL = 1, DIED = 2, SPAWN = 3, SCORE = 4, ACK = 5, APPLE = 6, GOLDEN = 7;
+    private static final int MOVE_TAIL = 4; // in a MOVE's direction byte
+
+    private Protocol() { }
+
+    // ---- Client messages ----
+
+    public static void putJoin(ByteBuffer out, int room) {
+        int start = begin(out, JOIN);
+        putVarLong(out, room);
+        end(out, start);
+    }
+
+    /** atTick 0: apply on the server's next tick. */
+    public static void putTurn(ByteBuffer out, Direction d, int seq, long atTick) {
+        int start = begin(out, TURN);
+        out.put((byte) d.ordinal());
+        putVarLong(out, seq & 0xFFFFFFFFL);
+        putVarLong(out, atTick);
+        end(out, start);
+    }
+
+    /** PING and PONG carry the same opaque value: the client's send time. */
+    public static void putPing(ByteBuffer out, byte type, long stamp) {
+        int start = begin(out, type);
+        out.putLong(stamp);
+        end(out, start);
+    }
+
+    public static Direction direction(int ordinal) { return DIRS[ordinal & 3]; }
+
+    // ---- Framing ----
+
+    /** Starts a frame at out's position; returns where it starts, for end(). */
+    public static int begin(ByteBuffer out, byte type) {
+        int start = out.position();
+        out.put((byte) 0).put((byte) 0).put((byte) 0).put(type);
+        return start;
+    }
+
+    /** Fills in the length of the frame begun at start. */
+    public static void end(ByteBuffer out, int start) {
+        int len = out.position() - start - 3;
+        out.put(start, (byte) (len >>> 16)).put(start + 1, (byte) (len >>> 8)).put(start + 2, (byte) len);
+    }
+
+    /**
+     * Payload length of the frame at in's position if it has fully arrived, else -1.
+     * Throws on a length over MAX_FRAME (a broken or hostile peer).
+     */
+    public static int completeFrame(ByteBuffer in) { return completeFrame(in, MAX_FRAME); }
+
+    /**
+     * Same, for a reader that never needs frames over maxLen (the server: clients only send
+     * JOIN, TURN and PING); a longer one throws rather than waiting for a buffer it can't fill.
+     */
+    public static int completeFrame(ByteBuffer in, int maxLen) {
+        if (in.remaining() < 3) return -1;
+        int p = in.position();
+        int len = (in.get(p) & 0xFF) << 16 | (in.get(p + 1) & 0xFF) << 8 | (in.get(p + 2) & 0xFF);
+        if (len == 0 || len > maxLen) throw new IllegalStateException("bad frame length " + len);
+        return in.remaining() - 3 >= len ? len : -1;
+    }
+
+    // ---- Varints (LEB128, unsigned) ----
+
+    public static void putVarLong(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+
+    // ---- Server side: events to bytes ----
+
+    /**
+     * Encodes Events into frames in one growing buffer. Reused for every tick of a room;
+     * frame() is valid until the next reset().
+     */
+    public static final class Writer implements Arena.Events {
+        private final Arena arena;
+        private ByteBuffer buf = ByteBuffer.allocate(512);
+        private int start = -1;
+        private int moveId = -1, movePos; // last MOVE, so a following TAIL can fold into it
+
+        public Writer(Arena arena) { this.arena = arena; }
+
+        public Writer reset() {
+            buf.clear();
+            start = moveId = -1;
+            return this;
+        }
+
+        /** DELTA header for the tick about to run; feed this writer to arena.tick(), then end(). */
+        public Writer beginDelta() {
+            start = Protocol.begin(room(16), DELTA);
+            putVarLong(buf, arena.ticks() + 1);
+            return this;
+        }
+
+        /** WELCOME for player id: board, tick length and current tick, and a keyframe of the arena. */
+        public Writer welcome(int id, long tickNanos) {
+            start = Protocol.begin(room(24), WELCOME);
+            buf.put((byte) id).putShort((short) arena.cols()).putShort((short) arena.rows());
+            buf.put((byte) (arena.isWrapWalls() ? 1 : 0));
+            putVarLong(buf, tickNanos / 1000);
+            putVarLong(buf, arena.ticks());
+            arena.describe(this);
+            return end();
+        }
+
+        public Writer end() {
+            Protocol.end(buf, start);
+            moveId = -1;
+            return this;
+        }
+
+        /** The frames written since reset(), as a read-only view. */
+        public ByteBuffer frame() { return buf.asReadOnlyBuffer().flip(); }
+
+        private ByteBuffer room(int bytes) {
+            if (buf.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+            return buf;
+        }
+
+        private void op(int op, int id) {
+            room(16).put((byte) (op << 5 | id));
+            moveId = -1;
+        }
+
+        @Override public void head(int id, int cell) {
+            op(MOVE, id);
+            movePos = buf.position();
+            buf.put((byte) arena.direction(id).ordinal());
+            moveId = id;
+        }
+
+        @Override public void tail(int id) {
+            if (moveId == id && movePos == buf.position() - 1) {
+                buf.put(movePos, (byte) (buf.get(movePos) | MOVE_TAIL));
+                moveId = -1;
+            } else {
+                op(TAIL, id);
+            }
+        }
+
+        @Override public void died(int id) { op(DIED, id); }
+
+        @Override public void spawned(int id, int[] cells, int length, Direction dir) {
+            op(SPAWN, id);
+            room(16 + length / 4).put((byte) dir.ordinal());
+            putVarLong(buf, length);
+            putVarLong(buf, cells[0]);
+            int packed = 0, n = 0;
+            for (int i = 1; i < length; i++) {
+                packed |= arena.step(cells[i - 1], cells[i]).ordinal() << (2 * n);
+                if (++n == 4) { buf.put((byte) packed); packed = n = 0; }
+            }
+            if (n > 0) buf.put((byte) packed);
+        }
+
+        @Override public void apple(int cell) { op(APPLE, 0); putVarLong(buf, cell + 1L); }
+        @Override public void golden(int cell) { op(GOLDEN, 0); putVarLong(buf, cell + 1L); }
+        @Override public void score(int id, int score) { op(SCORE, id); putVarLong(buf, score); }
+        @Override public void ack(int id, int seq) { op(ACK, id); putVarLong(buf, seq & 0xFFFFFFFFL); }
+    }
+
+    // ---- Client side: bytes to events ----
+
+    /** Decodes event lists; keeps a scratch array for spawns. */
+    public static final class Reader {
+        private int[] cells = new int[64];
+
+        /**
+         * Decodes events from in's position to its limit into out. arena must be the state the
+         * events apply to, and out must update it as it goes (moves are relative to the head).
+         */
+        public void events(ByteBuffer in, Arena arena, Arena.Events out) {
+            while (in.hasRemaining()) {
+                int b = in.get() & 0xFF, op = b >>> 5, id = b & 31;
+                switch (op) {
+                    case MOVE -> {
+                        int d = in.get();
+                        out.head(id, arena.neighbor(arena.snakeCell(id, 0), direction(d)));
+                        if ((d & MOVE_TAIL) != 0) out.tail(id);
+                    }
+                    case TAIL -> out.tail(id);
+                    case DIED -> out.died(id);
+                    case SPAWN -> {
+                        Direction dir = direction(in.get());
+                        int length = (int) getVarLong(in);
+                        if (cells.length < length) cells = new int[Integer.highestOneBit(length) << 1];
+                        cells[0] = (int) getVarLong(in);
+                        int packed = 0;
+                        for (int i = 1; i < length; i++) {
+                            if ((i - 1) % 4 == 0) packed = in.get();
+                            cells[i] = arena.neighbor(cells[i - 1], direction(packed >>> (2 * ((i - 1) % 4))));
+                        }
+                        out.spawned(id, cells, length, dir);
+                    }
+                    case SCORE -> out.score(id, (int) getVarLong(in));
+                    case ACK -> out.ack(id, (int) getVarLong(in));
+                    case APPLE -> out.apple((int) getVarLong(in) - 1);
+                    case GOLDEN -> out.golden((int) getVarLong(in) - 1);
+                    default -> throw new IllegalStateException("bad op " + op);
+                }
+            }
+        }
+    }
+}
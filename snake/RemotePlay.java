@@ -0,0 +1,225 @@
+package com.mycompany.snake;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * RemotePlay
+ * Plays on a GameServer with client-side prediction: a window for a person, or headless bots.
+ * Design notes:
+ *  - One "snake-net-client" thread owns the Selector, the NetClients and their Predictions;
+ *    it sleeps until the next predicted tick or network data, whichever comes first.
+ *  - The window never waits for the network: a Swing timer repaints at the display rate
+ *    from the predicted Arena (held under the Prediction's lock for the few microseconds a
+ *    paint takes), and key presses go through an InputQueue to the client thread.
+ *  - GamePanel stays the single-player view of a GameEngine; View here draws an Arena
+ *    (any number of snakes) with plain fills in the first theme's colors.
+ *  - --delay-ms/--jitter-ms put a LagProxy in front of the server, and --server starts one
+ *    in-process, so prediction and its stats can be exercised on one machine.
+ *
+ * Usage: java -cp out com.mycompany.snake.RemotePlay [--connect=localhost:7777] [--room=0]
+ *            [--server] [--delay-ms=0] [--jitter-ms=0] [--bots=N --seconds=30] [--cell=20]
+ */
+public final class RemotePlay implements Runnable {
+    private final Selector selector;
+    private final List<Prediction> predictions = new ArrayList<>();
+    private final InputQueue keys = new InputQueue(GameEngine.INPUT_QUEUE);
+    private final boolean bots;
+    private volatile boolean running = true;
+
+    private RemotePlay(boolean bots) throws IOException {
+        this.selector = Selector.open();
+        this.bots = bots;
+    }
+
+    private Prediction connect(InetSocketAddress addr, int room) throws IOException {
+        Prediction p = new Prediction();
+        NetClient.connect(addr, room, p).register(selector);
+        predictions.add(p);
+        return p;
+    }
+
+    @Override public void run() {
+        try {
+            while (running) {
+                long now = System.nanoTime(), wait = Long.MAX_VALUE;
+                for (Prediction p : predictions) wait = Math.min(wait, p.nanosUntilNextTick(now));
+                if (wait == 0) selector.selectNow();
+                else selector.select(Math.max(1, wait / 1_000_000));
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    ((NetClient) k.attachment()).handle(k);
+                }
+                now = System.nanoTime();
+                for (Prediction p : predictions) {
+                    if (!bots) {
+                        Direction d;
+                        while ((d = keys.poll()) != null) p.turn(d);
+                    }
+                    if (p.advance(now) > 0 && bots) botTurn(p);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("client stopped: " + e);
+        }
+    }
+
+    private static void botTurn(Prediction p) {
+        Direction d;
+        synchronized (p) {
+            Arena a = p.arena();
+            int id = p.playerId();
+            if (!a.isAlive(id)) return;
+            d = BotSwarm.greedy(a, id);
+            if (d == null || d == a.direction(id)) return;
+        }
+        p.turn(d);
+    }
+
+    // ---- Window ----
+
+    private static final class View extends JPanel {
+        private static final Color BG = new Color(18, 18, 18), HEAD = new Color(0x7FDBFF), BODY = new Color(0x39CCCC);
+        private static final Color OTHER_HEAD = new Color(0xB0B0B0), OTHER_BODY = new Color(0x707070);
+        private static final Color APPLE = new Color(0xFF4136), GOLDEN = new Color(0xFFDC00), TEXT = new Color(230, 230, 230);
+        private final Prediction p;
+        private final int cell;
+
+        View(Prediction p, InputQueue keys, int cell) {
+            this.p = p;
+            this.cell = cell;
+            setBackground(BG);
+            setFocusable(true);
+            setPreferredSize(new Dimension(32 * cell, 32 * cell));
+            addKeyListener(new KeyAdapter() {
+                @Override public void keyPressed(KeyEvent e) {
+                    switch (e.getKeyCode()) {
+                        case KeyEvent.VK_LEFT, KeyEvent.VK_A -> keys.offer(Direction.LEFT, System.nanoTime());
+                        case KeyEvent.VK_RIGHT, KeyEvent.VK_D -> keys.offer(Direction.RIGHT, System.nanoTime());
+                        case KeyEvent.VK_UP, KeyEvent.VK_W -> keys.offer(Direction.UP, System.nanoTime());
+                        case KeyEvent.VK_DOWN, KeyEvent.VK_S -> keys.offer(Direction.DOWN, System.nanoTime());
+                        default -> {}
+                    }
+                }
+            });
+        }
+
+        @Override protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            String hud;
+            synchronized (p) {
+                Arena a = p.arena();
+                if (a == null) { g.setColor(TEXT); g.drawString("Connecting…", 12, 20); return; }
+                Dimension want = new Dimension(a.cols() * cell, a.rows() * cell);
+                if (!want.equals(getPreferredSize())) {
+                    setPreferredSize(want);
+                    SwingUtilities.invokeLater(() -> SwingUtilities.getWindowAncestor(this).pack());
+                }
+                fill(g, a, a.apple(), APPLE);
+                fill(g, a, a.goldenApple(), GOLDEN);
+                int me = p.playerId();
+                for (int id = 0; id < Arena.MAX_PLAYERS; id++) {
+                    if (!a.isAlive(id)) continue;
+                    for (int i = a.snakeLength(id) - 1; i >= 0; i--)
+                        fill(g, a, a.snakeCell(id, i), i == 0 ? (id == me ? HEAD : OTHER_HEAD) : (id == me ? BODY : OTHER_BODY));
+                }
+                hud = String.format(Locale.ROOT, "Score %d   rtt %.0fms   lead %d   corrections %d",
+                        a.isAlive(me) ? a.score(me) : 0, p.rttMs(), p.lead(), p.corrections());
+            }
+            g.setColor(TEXT);
+            g.drawString(hud, 8, 16);
+        }
+
+        private void fill(Graphics g, Arena a, int c, Color color) {
+            if (c == GameEngine.NO_CELL) return;
+            g.setColor(color);
+            g.fillRect(a.x(c) * cell + 1, a.y(c) * cell + 1, cell - 2, cell - 2);
+        }
+    }
+
+    // ---- CLI ----
+
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = Protocol.DEFAULT_PORT, room = 0, bots = 0, seconds = 30, cell = 20;
+        long delayMs = 0, jitterMs = 0;
+        boolean startServer = false;
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--connect=")) {
+                int colon = v.lastIndexOf(':');
+                host = colon < 0 ? v : v.substring(0, colon);
+                if (colon >= 0) port = Integer.parseInt(v.substring(colon + 1));
+            }
+            else if (a.startsWith("--room=")) room = Integer.parseInt(v);
+            else if (a.equals("--server")) startServer = true;
+            else if (a.startsWith("--delay-ms=")) delayMs = Long.parseLong(v);
+            else if (a.startsWith("--jitter-ms=")) jitterMs = Long.parseLong(v);
+            else if (a.startsWith("--bots=")) bots = Integer.parseInt(v);
+            else if (a.startsWith("--seconds=")) seconds = Integer.parseInt(v);
+            else if (a.startsWith("--cell=")) cell = Integer.parseInt(v);
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+        GameServer server = null;
+        if (startServer) { server = new GameServer().port(0).start(); host = "localhost"; port = server.port(); }
+        InetSocketAddress addr = new InetSocketAddress(host, port);
+        LagProxy proxy = null;
+        if (delayMs > 0 || jitterMs > 0) {
+            proxy = new LagProxy(0, addr, delayMs, jitterMs, 1).start();
+            addr = new InetSocketAddress("localhost", proxy.port());
+        }
+
+        RemotePlay client = new RemotePlay(bots > 0);
+        if (bots == 0) {
+            Prediction p = client.connect(addr, room);
+            new Thread(client, "snake-net-client").start();
+            int px = cell;
+            SwingUtilities.invokeLater(() -> {
+                JFrame f = new JFrame("Snake — Remote");
+                f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                View view = new View(p, client.keys, px);
+                f.add(view);
+                f.pack();
+                f.setLocationRelativeTo(null);
+                f.setVisible(true);
+                view.requestFocusInWindow();
+                new Timer(1000 / 60, e -> view.repaint()).start();
+            });
+            return;
+        }
+
+        // Headless: bots spread over rooms of 4, then a stats line per bot group
+        for (int i = 0; i < bots; i++) client.connect(addr, room + i / 4);
+        Thread t = new Thread(client, "snake-net-client");
+        t.start();
+        Thread.sleep(seconds * 1000L);
+        client.running = false;
+        client.selector.wakeup();
+        t.join();
+        long corrections = 0, reconciles = 0, cells = 0, late = 0;
+        double rtt = 0, jitter = 0;
+        for (Prediction p : client.predictions) {
+            corrections += p.corrections(); reconciles += p.reconciles(); cells += p.correctionCells();
+            late += p.lateInputs(); rtt += p.rttMs(); jitter += p.rttJitterMs();
+        }
+        int n = client.predictions.size();
+        System.out.println("first bot: " + client.predictions.get(0).stats());
+        System.out.printf(Locale.ROOT, "%d bots, delay %dms jitter %dms: rtt %.1fms dev %.1fms, corrections %d of %d ticks (%.2f%%, avg %.1f cells), late inputs %d%n",
+                n, delayMs, jitterMs, rtt / n, jitter / n, corrections, reconciles,
+                reconciles == 0 ? 0 : 100.0 * corrections / reconciles, corrections == 0 ? 0 : (double) cells / corrections, late);
+        if (proxy != null) proxy.stop();
+        if (server != null) server.stop();
+    }
+}
@@ -0,0 +1,80 @@
+package com.mycompany.snake;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.util.Locale;
+
+/**
+ * RenderBackend
+ * How frames reach the screen: which Java2D pipeline draws them, and whether GamePanel
+ * paints through Swing's repaint path or flips whole frames itself.
+ * Design notes:
+ *  - Pipelines are process-wide and fixed once AWT starts, so select() sets the
+ *    sun.java2d properties first thing in main(). pipeline() reports what the JDK actually
+ *    gave us: a requested OpenGL pipeline quietly falls back when the driver can't do it.
+ *  - FLIP renders every frame whole into a Canvas BufferStrategy (FlipView): page flipping
+ *    where the device supports it, an accelerated blit otherwise, no RepaintManager.
+ *  - SOFTWARE turns the accelerated pipelines off and draws without antialiasing. Sprites
+ *    and the background are still rasterized once per cell size and device scale, so every
+ *    backend composes a frame from blits.
+ *
+ * Selected with --render=auto|flip|opengl|xrender|software (GameFrame).
+ */
+public enum RenderBackend {
+    /** Whatever the platform picks (XRender on Linux, Direct3D on Windows), through Swing. */
+    AUTO,
+    /** Active rendering: whole frames into a page-flipped BufferStrategy. */
+    FLIP,
+    OPENGL,
+    XRENDER,
+    /** Unaccelerated pipeline, no antialiasing. */
+    SOFTWARE;
+
+    public static RenderBackend parse(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("expected --render=auto|flip|opengl|xrender|software, got " + name);
+        }
+    }
+
+    /** Sets the pipeline properties; call before any AWT class is loaded. Explicit -D flags win. */
+    public void select() {
+        switch (this) {
+            case OPENGL -> set("sun.java2d.opengl", "true");
+            case XRENDER -> { set("sun.java2d.xrender", "true"); set("sun.java2d.opengl", "false"); }
+            case SOFTWARE -> {
+                for (String p : new String[]{"sun.java2d.opengl", "sun.java2d.xrender", "sun.java2d.d3d", "sun.java2d.pmoffscreen"})
+                    set(p, "false");
+            }
+            default -> { }
+        }
+    }
+
+    private static void set(String key, String value) {
+        if (System.getProperty(key) == null) System.setProperty(key, value);
+    }
+
+    public boolean antialias() { return this != SOFTWARE; }
+
+    /** KEY_ANTIALIASING value for sprites and HUD text. */
+    public Object antialiasHint() {
+        return antialias() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF;
+    }
+
+    /** The pipeline behind gc, e.g. "OpenGL, accelerated" or "X11, unaccelerated". */
+    public static String pipeline(GraphicsConfiguration gc) {
+        if (gc == null) return "offscreen";
+        String cls = gc.getClass().getName(), name;
+        if (cls.contains(".opengl.")) name = "OpenGL";
+        else if (cls.contains(".xr.")) name = "XRender";
+        else if (cls.contains(".d3d.")) name = "Direct3D";
+        else if (cls.contains(".metal.")) name = "Metal";
+        else if (cls.contains("X11")) name = "X11";
+        else if (cls.contains("Win32")) name = "GDI";
+        else name = gc.getClass().getSimpleName();
+        return name + (gc.getImageCapabilities().isAccelerated() ? ", accelerated" : ", unaccelerated");
+    }
+
+    @Override public String toString() { return name().toLowerCase(Locale.ROOT); }
+}
@@ -0,0 +1,235 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Replay
+ * A recorded game: board settings, the RNG seed, and the turns applied at each tick.
+ * Design notes:
+ *  - GameEngine is deterministic for a given seed and input stream, so that is all we store;
+ *    re-simulating it reproduces every apple, obstacle and the final score.
+ *  - Turns are a varint stream of (ticksSinceLastTurn << 2 | direction); a turn every few
+ *    ticks costs one byte. A 0 ends the stream, followed by the final tick and score.
+ *  - The GameMode bits are stored as they are; the RNG is only drawn from in mode order, so
+ *    they are all it takes to set a game up again. Version 1 files predate modes: their
+ *    flags were wrap and obstacles, with golden apples always on.
+ *  - Files are read and written whole through a FileChannel; replays are tiny.
+ *
+ * File layout: "SNKR" version(1) modes(1) cols(2) rows(2) seed(8) turns... 0 finalTick score
+ *
+ * Usage: java -cp out com.mycompany.snake.Replay verify <file-or-dir>...
+ */
+public final class Replay {
+    private static final int MAGIC = 0x534E4B52; // "SNKR"
+    private static final int VERSION = 2;
+    public static final String EXTENSION = ".snkr";
+
+    public final int cols, rows;
+    public final int modes;
+    public final long seed;
+    public final long finalTick;
+    public final int score;
+    private final byte[] turns; // encoded stream, without the end marker
+
+    private Replay(int cols, int rows, int modes, long seed, byte[] turns, long finalTick, int score) {
+        this.cols = cols; this.rows = rows;
+        this.modes = modes;
+        this.seed = seed; this.turns = turns;
+        this.finalTick = finalTick; this.score = score;
+    }
+
+    /**
+     * Collects the turns one engine applies. GameEngine calls begin() on every reset and
+     * turn() for each applied turn; finish() snapshots the game so far as a Replay, or
+     * returns null if the game changed rules midway (discard()).
+     */
+    public static final class Recorder {
+        private int cols, rows, modes;
+        private long seed, lastTick;
+        private byte[] buf = new byte[256];
+        private int len;
+        private boolean discarded;
+
+        void begin(GameEngine e) {
+            cols = e.cols(); rows = e.rows();
+            modes = e.modes();
+            seed = e.seed();
+            lastTick = 0;
+            len = 0;
+            discarded = false;
+        }
+
+        void discard() { discarded = true; }
+
+        void turn(long tick, Direction d) {
+            if (len + 10 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            len = putVarLong(buf, len, (tick - lastTick) << 2 | d.ordinal());
+            lastTick = tick;
+        }
+
+        public Replay finish(GameEngine e) {
+            if (discarded) return null;
+            return new Replay(cols, rows, modes, seed, Arrays.copyOf(buf, len), e.ticks(), e.score());
+        }
+    }
+
+    /** Re-simulates the game at full speed and returns the engine in its final state. */
+    public GameEngine play() {
+        GameEngine e = new GameEngine(cols, rows);
+        e.setModes(modes);
+        e.reset(seed);
+        e.start();
+        int pos = 0;
+        long nextTick = Long.MAX_VALUE;
+        Direction nextDir = null;
+        long[] v = new long[1];
+        if (pos < turns.length) {
+            pos = getVarLong(turns, pos, v);
+            nextTick = v[0] >>> 2;
+            nextDir = Direction.values()[(int) (v[0] & 3)];
+        }
+        while (e.state() == GameState.RUNNING && e.ticks() < finalTick) {
+            if (e.ticks() + 1 == nextTick) {
+                e.turn(nextDir);
+                if (pos < turns.length) {
+                    pos = getVarLong(turns, pos, v);
+                    nextTick += v[0] >>> 2;
+                    nextDir = Direction.values()[(int) (v[0] & 3)];
+                } else {
+                    nextTick = Long.MAX_VALUE;
+                }
+            }
+            e.tick();
+        }
+        return e;
+    }
+
+    /** True if re-simulating reproduces the recorded length and score. */
+    public boolean verify() {
+        GameEngine e = play();
+        return e.ticks() == finalTick && e.score() == score;
+    }
+
+    public int turnBytes() { return turns.length; }
+
+    // ---- File I/O ----
+
+    public void write(Path file) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(18 + turns.length + 1 + 20);
+        b.putInt(MAGIC).put((byte) VERSION)
+                .put((byte) modes)
+                .putShort((short) cols).putShort((short) rows).putLong(seed)
+                .put(turns).put((byte) 0);
+        byte[] tail = new byte[20];
+        int n = putVarLong(tail, 0, finalTick);
+        n = putVarLong(tail, n, score);
+        b.put(tail, 0, n).flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) ch.write(b);
+        }
+    }
+
+    public static Replay read(Path file) throws IOException {
+        ByteBuffer b;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            b = ByteBuffer.allocate((int) ch.size());
+            while (b.hasRemaining() && ch.read(b) >= 0) { }
+        }
+        b.flip();
+        if (b.remaining() < 19 || b.getInt() != MAGIC) throw new IOException("not a replay: " + file);
+        int version = b.get();
+        if (version != VERSION && version != 1) throw new IOException("unsupported replay version " + version + ": " + file);
+        int modes = b.get() & 0xFF;
+        if (version == 1) modes = (modes & (GameMode.WRAP.bit() | GameMode.OBSTACLES.bit())) | GameMode.GOLDEN.bit();
+        int cols = Short.toUnsignedInt(b.getShort()), rows = Short.toUnsignedInt(b.getShort());
+        long seed = b.getLong();
+        byte[] rest = new byte[b.remaining()];
+        b.get(rest);
+        // Turns run up to the 0 end marker; every turn value is >= 4, so 0 is unambiguous.
+        long[] v = new long[1];
+        int pos = 0;
+        while (true) {
+            if (pos >= rest.length) throw new IOException("truncated replay: " + file);
+            int next = getVarLong(rest, pos, v);
+            if (v[0] == 0) {
+                byte[] turns = Arrays.copyOf(rest, pos);
+                pos = getVarLong(rest, next, v);
+                long finalTick = v[0];
+                getVarLong(rest, pos, v);
+                return new Replay(cols, rows, modes, seed, turns, finalTick, (int) v[0]);
+            }
+            pos = next;
+        }
+    }
+
+    // ---- Varints (LEB128, unsigned) ----
+
+    private static int putVarLong(byte[] dst, int pos, long v) {
+        while ((v & ~0x7FL) != 0) {
+            dst[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        dst[pos++] = (byte) v;
+        return pos;
+    }
+
+    private static int getVarLong(byte[] src, int pos, long[] out) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = src[pos++];
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        out[0] = v;
+        return pos;
+    }
+
+    // ---- Verification CLI ----
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !args[0].equals("verify")) {
+            System.err.println("usage: Replay verify <file-or-dir>...");
+            System.exit(2);
+        }
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            Path p = Path.of(args[i]);
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> s = Files.walk(p)) {
+                    s.filter(f -> f.toString().endsWith(EXTENSION)).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(p);
+            }
+        }
+        int ok = 0, bad = 0;
+        long ticks = 0, t0 = System.nanoTime();
+        for (Path f : files) {
+            Replay r = read(f);
+            GameEngine e = r.play();
+            ticks += e.ticks();
+            if (e.ticks() == r.finalTick && e.score() == r.score) ok++;
+            else {
+                bad++;
+                System.out.printf("MISMATCH %s: recorded score %d at tick %d, replayed %d at tick %d%n",
+                        f, r.score, r.finalTick, e.score(), e.ticks());
+            }
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d replays, %d ok, %d mismatched, %d ticks in %.2fs (%.0f ticks/s)%n",
+                files.size(), ok, bad, ticks, secs, ticks / Math.max(secs, 1e-9));
+        if (bad > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,304 @@
+package com.mycompany.snake;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * SettingsStore
+ * Settings and the high-score table, kept in memory and written in the background.
+ * Design notes:
+ *  - Reads and writes from the UI only touch a map; a change schedules one flush
+ *    FLUSH_DELAY_MS later on the "snake-store" thread, so a burst of toggles is one write.
+ *  - Settings stay in the same Preferences node as before; scores move to a small binary
+ *    file (~/.snake/scores.bin) holding the top MAX_SCORES with their replay file names.
+ *    An old single "highScore" pref becomes the first entry.
+ *  - Only replays the table refers to are kept: a game that doesn't make the table keeps
+ *    none, and after each table write the replay directory is pruned to what it names
+ *    (written first, deleted last, so the table never points at a missing file).
+ *    Names carry the time, score and seed, plus a counter if that still collides.
+ *  - The default store is one per JVM, however many panels ask for it; only it gets the
+ *    shutdown hook that flushes whatever is still pending. Other stores (tests, benchmarks)
+ *    are close()d by whoever made them.
+ *  - preload() opens the default store off the startup path; openDefault() waits for it.
+ */
+public final class SettingsStore {
+    public static final int MAX_SCORES = 10;
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final int SCORES_MAGIC = 0x534E4B53; // "SNKS"
+    private static final int SCORES_VERSION = 1;
+    private static final DateTimeFormatter REPLAY_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** One row of the high-score table; replay is a file name in the replay directory, or "". */
+    public record HighScore(int score, long ticks, long epochMillis, String replay) { }
+
+    private final Preferences prefs;
+    private final Path dir, scoreFile, replayDir;
+    private final ScheduledExecutorService io;
+
+    // Guarded by this
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> dirty = new HashMap<>();
+    private final List<HighScore> scores = new ArrayList<>();
+    private final List<Replay> pendingReplays = new ArrayList<>();
+    private final List<String> pendingReplayNames = new ArrayList<>();
+    private boolean scoresDirty, flushScheduled;
+    private final Object writeLock = new Object(); // background flush vs. shutdown hook
+
+    public SettingsStore(Preferences prefs, Path dir) {
+        this.prefs = prefs;
+        this.dir = dir;
+        this.scoreFile = dir.resolve("scores.bin");
+        this.replayDir = dir.resolve("replays");
+        this.io = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snake-store");
+            t.setDaemon(true);
+            return t;
+        });
+        loadScores();
+    }
+
+    /**
+     * The default store: the game's Preferences node and ~/.snake, the same instance on every
+     * call. Taken from preload() if one is under way.
+     */
+    public static synchronized SettingsStore openDefault() {
+        if (shared != null) return shared;
+        FutureTask<SettingsStore> f = preloading;
+        preloading = null;
+        if (f != null) {
+            try {
+                return shared = f.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return shared = open();
+    }
+
+    private static SettingsStore open() {
+        SettingsStore s = new SettingsStore(Preferences.userRoot().node("com.mycompany.snake.enhanced"),
+                Path.of(System.getProperty("user.home"), ".snake"));
+        Runtime.getRuntime().addShutdownHook(new Thread(s::flush, "snake-store-shutdown"));
+        return s;
+    }
+
+    // Guarded by SettingsStore.class
+    private static SettingsStore shared;
+    private static FutureTask<SettingsStore> preloading;
+
+    /**
+     * Starts opening the default store on a background thread; the next openDefault() takes
+     * it. Cold, the Preferences backend (an XML parser) and the score file cost tens of ms
+     * that can overlap AWT's own startup instead of coming after it.
+     */
+    public static synchronized void preload() {
+        if (shared != null || preloading != null) return;
+        FutureTask<SettingsStore> f = new FutureTask<>(SettingsStore::open);
+        preloading = f;
+        Thread t = new Thread(f, "snake-preload");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ---- Settings ----
+
+    public synchronized int getInt(String key, int def) {
+        Object v = values.computeIfAbsent(key, k -> prefs.getInt(k, def));
+        return (Integer) v;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean def) {
+        Object v = values.computeIfAbsent(key, k -> prefs.getBoolean(k, def));
+        return (Boolean) v;
+    }
+
+    public void putInt(String key, int v) { put(key, v); }
+    public void putBoolean(String key, boolean v) { put(key, v); }
+
+    private synchronized void put(String key, Object v) {
+        if (v.equals(values.put(key, v))) return; // unchanged
+        dirty.put(key, v);
+        scheduleFlush();
+    }
+
+    // ---- Scores ----
+
+    public synchronized List<HighScore> topScores() { return List.copyOf(scores); }
+
+    public synchronized int highScore() { return scores.isEmpty() ? 0 : scores.get(0).score(); }
+
+    /**
+     * Records a finished game. If it makes the table, its replay (if any) is saved and the
+     * entry refers to it by file name. Returns the rank (0 = best) or -1; files are written in
+     * the background.
+     */
+    public synchronized int recordGame(int score, long ticks, Replay replay) {
+        int rank = 0;
+        while (rank < scores.size() && scores.get(rank).score() >= score) rank++;
+        if (rank >= MAX_SCORES) return -1;
+        String name = replay == null ? "" : replayName(score, replay.seed);
+        if (replay != null) { pendingReplays.add(replay); pendingReplayNames.add(name); }
+        scores.add(rank, new HighScore(score, ticks, System.currentTimeMillis(), name));
+        if (scores.size() > MAX_SCORES) {
+            int i = pendingReplayNames.indexOf(scores.remove(scores.size() - 1).replay());
+            if (i >= 0) { pendingReplays.remove(i); pendingReplayNames.remove(i); } // never written
+        }
+        scoresDirty = true;
+        scheduleFlush();
+        return rank;
+    }
+
+    /** Unique among the table's names: time-score-seed, then -2, -3... if that is taken. */
+    private String replayName(int score, long seed) {
+        String base = LocalDateTime.now().format(REPLAY_NAME) + "-" + score + "-" + Long.toHexString(seed);
+        String name = base + Replay.EXTENSION;
+        for (int n = 2; referenced(name); n++) name = base + "-" + n + Replay.EXTENSION;
+        return name;
+    }
+
+    private boolean referenced(String name) {
+        for (HighScore s : scores) if (s.replay().equals(name)) return true;
+        return false;
+    }
+
+    public Path replayDir() { return replayDir; }
+
+    // ---- Flushing ----
+
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        io.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Writes what is pending and stops the background thread; for stores other than the default. */
+    public void close() {
+        io.shutdownNow();
+        flush();
+    }
+
+    /** Writes everything pending now, on the calling thread. */
+    public void flush() {
+        synchronized (writeLock) { flushLocked(); }
+    }
+
+    private void flushLocked() {
+        Map<String, Object> settings;
+        List<Replay> replays;
+        List<String> names;
+        List<HighScore> table = null;
+        synchronized (this) {
+            flushScheduled = false;
+            settings = new HashMap<>(dirty);
+            dirty.clear();
+            replays = new ArrayList<>(pendingReplays);
+            names = new ArrayList<>(pendingReplayNames);
+            pendingReplays.clear();
+            pendingReplayNames.clear();
+            if (scoresDirty) table = List.copyOf(scores);
+            scoresDirty = false;
+        }
+        if (!settings.isEmpty()) {
+            for (Map.Entry<String, Object> e : settings.entrySet()) {
+                if (e.getValue() instanceof Integer i) prefs.putInt(e.getKey(), i);
+                else if (e.getValue() instanceof Boolean b) prefs.putBoolean(e.getKey(), b);
+            }
+            try {
+                prefs.flush();
+            } catch (BackingStoreException e) {
+                System.err.println("could not save settings: " + e);
+            }
+        }
+        try {
+            if (!replays.isEmpty()) {
+                Files.createDirectories(replayDir);
+                for (int i = 0; i < replays.size(); i++) replays.get(i).write(replayDir.resolve(names.get(i)));
+            }
+            if (table != null) {
+                writeScores(table);
+                pruneReplays(table);
+            }
+        } catch (IOException e) {
+            System.err.println("could not save scores/replays: " + e);
+        }
+    }
+
+    /** Deletes replays the just-written table no longer names (dropped out, or left by older versions). */
+    private void pruneReplays(List<HighScore> table) throws IOException {
+        if (!Files.isDirectory(replayDir)) return;
+        List<String> keep = new ArrayList<>();
+        for (HighScore s : table) keep.add(s.replay());
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(replayDir, "*" + Replay.EXTENSION)) {
+            for (Path f : files) if (!keep.contains(f.getFileName().toString())) stale.add(f);
+        }
+        for (Path f : stale) Files.deleteIfExists(f);
+    }
+
+    // ---- Score file ----
+
+    private void loadScores() {
+        if (Files.exists(scoreFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(scoreFile)))) {
+                if (in.readInt() != SCORES_MAGIC || in.readUnsignedByte() != SCORES_VERSION)
+                    throw new IOException("not a score file");
+                int n = in.readUnsignedByte();
+                for (int i = 0; i < n && i < MAX_SCORES; i++) {
+                    int score = in.readInt();
+                    long ticks = in.readLong(), at = in.readLong();
+                    byte[] name = new byte[in.readUnsignedShort()];
+                    in.readFully(name);
+                    scores.add(new HighScore(score, ticks, at, new String(name, StandardCharsets.UTF_8)));
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("ignoring unreadable " + scoreFile + ": " + e);
+                scores.clear();
+            }
+        }
+        int legacy = prefs.getInt("highScore", 0);
+        if (legacy > 0) {
+            scores.add(new HighScore(legacy, 0, 0, ""));
+            scoresDirty = true;
+        }
+    }
+
+    private void writeScores(List<HighScore> table) throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = scoreFile.resolveSibling(scoreFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(SCORES_MAGIC);
+            out.writeByte(SCORES_VERSION);
+            out.writeByte(table.size());
+            for (HighScore s : table) {
+                byte[] name = s.replay().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(s.score());
+                out.writeLong(s.ticks());
+                out.writeLong(s.epochMillis());
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        }
+        Files.move(tmp, scoreFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
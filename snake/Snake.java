@@ -1,7 +1,8 @@
 package com.mycompany.snake;
 
 public class Snake {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        Startup.begin(); // before GameFrame, whose superclass pulls in Swing
         GameFrame.main(args);
     }
 }
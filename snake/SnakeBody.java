@@ -0,0 +1,92 @@
+package com.mycompany.snake;
+
+import java.util.Arrays;
+
+/**
+ * SnakeBody
+ * Circular buffer of packed cell indices; index 0 is the head.
+ * Design notes:
+ *  - O(1) pushHead/popTail with no allocation per step (replaces List<Point> add(0)/remove).
+ *  - Capacity is a power of two so wrap-around is a mask, and it doubles only when the
+ *    snake outgrows it, so memory follows the snake's length rather than the board size.
+ */
+public final class SnakeBody {
+    private int[] cells;
+    private int mask;
+    private int head;   // slot of the head
+    private int length;
+
+    public SnakeBody(int initialCapacity) {
+        int cap = Integer.highestOneBit(Math.max(4, initialCapacity - 1)) << 1;
+        cells = new int[cap];
+        mask = cap - 1;
+    }
+
+    public void clear() { head = 0; length = 0; }
+
+    /** Makes this body a copy of src, growing only if src is longer than our capacity. */
+    public void copyFrom(SnakeBody src) {
+        if (cells.length < src.length) {
+            cells = new int[src.cells.length];
+            mask = cells.length - 1;
+        }
+        for (int i = 0; i < src.length; i++) cells[i] = src.get(i);
+        head = 0;
+        length = src.length;
+    }
+
+    public int length() { return length; }
+
+    /** i = 0 is the head, length()-1 the tail. */
+    public int get(int i) { return cells[(head + i) & mask]; }
+
+    public int head() { return cells[head]; }
+
+    public int tail() { return cells[(head + length - 1) & mask]; }
+
+    public void pushHead(int cell) {
+        if (length == cells.length) grow();
+        head = (head - 1) & mask;
+        cells[head] = cell;
+        length++;
+    }
+
+    /** Removes and returns the tail cell. */
+    public int popTail() {
+        int t = tail();
+        length--;
+        return t;
+    }
+
+    /** Appends behind the tail; used to build the initial body head-first. */
+    public void addTail(int cell) {
+        if (length == cells.length) grow();
+        cells[(head + length) & mask] = cell;
+        length++;
+    }
+
+    public boolean contains(int cell) {
+        for (int i = 0; i < length; i++) if (cells[(head + i) & mask] == cell) return true;
+        return false;
+    }
+
+    private void grow() {
+        // Unroll into a fresh buffer so the head lands back on slot 0.
+        int[] next = new int[cells.length << 1];
+        for (int i = 0; i < length; i++) next[i] = cells[(head + i) & mask];
+        cells = next;
+        mask = next.length - 1;
+        head = 0;
+    }
+
+    /** Copies the body head-first into dst (resized if needed) and returns it. */
+    public int[] toArray(int[] dst) {
+        if (dst == null || dst.length < length) dst = new int[length];
+        for (int i = 0; i < length; i++) dst[i] = cells[(head + i) & mask];
+        return dst;
+    }
+
+    @Override public String toString() {
+        return "SnakeBody" + Arrays.toString(toArray(null));
+    }
+}
@@ -0,0 +1,146 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Startup
+ * Times the way from JVM launch to the first frame on screen, phase by phase.
+ * Design notes:
+ *  - mark() is a nanoTime and two array stores; phases are whatever the launch path marks
+ *    (main, toolkit, panel, window, first frame), each timed from the previous one.
+ *  - Nothing is reported until the first frame is up, so the JMX lookup for the JVM's own
+ *    start time and any file writing stay off the path being measured.
+ *  - Work that isn't needed for the first frame (JMX registration, say) goes to
+ *    afterFirstFrame() and runs on a background thread once the frame is shown.
+ *  - -Dsnake.startup.log=FILE appends one CSV row per launch, and --exit-after-first-frame
+ *    quits right after, so a script can launch it repeatedly to track time-to-first-frame,
+ *    or train a CDS archive on exactly the classes startup needs (build.sh).
+ */
+public final class Startup {
+    private static final int MAX_PHASES = 16;
+
+    // Guarded by Startup.class
+    private static long t0, t0Millis;
+    private static final String[] phase = new String[MAX_PHASES];
+    private static final long[] at = new long[MAX_PHASES];
+    private static int phases;
+    private static boolean started, done, exitAfter;
+    private static final List<Runnable> deferred = new ArrayList<>();
+
+    /** The launch path's phases, in order; the CSV has a column for each. */
+    private static final String[] PHASES = {"main", "toolkit", "panel", "window", "first frame"};
+    private static final String CSV_HEADER = "epoch_ms,jvm_ms,main_ms,toolkit_ms,panel_ms,window_ms,first_frame_ms,"
+            + "total_ms,archive";
+
+    private Startup() { }
+
+    /** Starts the clock: call first thing in main, before Swing classes load. Later calls do nothing. */
+    public static synchronized void begin() {
+        if (started) return;
+        started = true;
+        t0 = System.nanoTime();
+        t0Millis = System.currentTimeMillis();
+    }
+
+    /** The phase that just finished. Later marks of a phase already recorded are ignored. */
+    public static synchronized void mark(String name) {
+        begin();
+        if (done || phases == MAX_PHASES) return;
+        for (int i = 0; i < phases; i++) if (phase[i].equals(name)) return;
+        phase[phases] = name;
+        at[phases++] = System.nanoTime();
+    }
+
+    /** Quit once the first frame is up (and reported). */
+    public static synchronized void exitAfterFirstFrame() { exitAfter = true; }
+
+    /** Runs r on a background thread once the first frame is up (straight away if it already is). */
+    public static void afterFirstFrame(Runnable r) {
+        synchronized (Startup.class) {
+            if (!done) { deferred.add(r); return; }
+        }
+        background(List.of(r));
+    }
+
+    /** The first frame is on screen; how says how it got there ("swing", "flip", "offscreen"). */
+    public static void firstFrame(String how) {
+        List<Runnable> run;
+        boolean exit;
+        synchronized (Startup.class) {
+            if (done) return;
+            mark("first frame");
+            done = true;
+            run = List.copyOf(deferred);
+            deferred.clear();
+            exit = exitAfter;
+        }
+        String log = System.getProperty("snake.startup.log");
+        if (log != null || exit) report(how, log);
+        if (exit) System.exit(0);
+        background(run);
+    }
+
+    private static void background(List<Runnable> work) {
+        if (work.isEmpty()) return;
+        Thread t = new Thread(() -> work.forEach(Runnable::run), "snake-deferred");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ---- Reporting ----
+
+    private static void report(String how, String log) {
+        long jvm = Math.max(0, t0Millis - ManagementFactory.getRuntimeMXBean().getStartTime());
+        String archive = archive();
+        StringBuilder line = new StringBuilder("startup: jvm ").append(jvm).append("ms");
+        long prev = t0;
+        for (int i = 0; i < phases; i++) {
+            line.append(String.format(Locale.ROOT, ", %s %.1fms", phase[i], (at[i] - prev) / 1e6));
+            prev = at[i];
+        }
+        double total = jvm + (prev - t0) / 1e6;
+        line.append(String.format(Locale.ROOT, "; %.0fms to first frame (%s, archive %s)", total, how, archive));
+        System.err.println(line);
+        if (log != null) appendCsv(Path.of(log), jvm, total, archive);
+    }
+
+    private static void appendCsv(Path file, long jvm, double total, String archive) {
+        StringBuilder row = new StringBuilder().append(System.currentTimeMillis()).append(',').append(jvm);
+        for (String p : PHASES) row.append(String.format(Locale.ROOT, ",%.1f", millis(p)));
+        row.append(String.format(Locale.ROOT, ",%.1f,%s", total, archive));
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (Files.size(file) == 0) w.println(CSV_HEADER);
+            w.println(row);
+        } catch (IOException e) {
+            System.err.println("could not write startup log: " + e);
+        }
+    }
+
+    /** Length of one phase in ms; 0 if it wasn't marked. */
+    private static double millis(String name) {
+        long prev = t0;
+        for (int i = 0; i < phases; i++) {
+            if (phase[i].equals(name)) return (at[i] - prev) / 1e6;
+            prev = at[i];
+        }
+        return 0;
+    }
+
+    /** Which class archive the JVM was started with: "aot", "cds" (our own), or "jdk" (the default one). */
+    private static String archive() {
+        for (String a : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (a.startsWith("-XX:AOTCache=")) return "aot";
+            if (a.startsWith("-XX:SharedArchiveFile=")) return "cds";
+            if (a.equals("-Xshare:off")) return "none";
+        }
+        return "jdk";
+    }
+}
@@ -0,0 +1,345 @@
+package com.mycompany.snake;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongUnaryOperator;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.stream.Stream;
+
+/**
+ * SnakeBench
+ * Micro-benchmarks for the hot paths: tick, apple spawn, collision lookups and painting.
+ * Design notes:
+ *  - JMH-style warmup + measured iterations, but dependency-free so it builds with plain
+ *    javac next to the game sources (this tree has no build manifest to pull JMH in).
+ *  - Each benchmark runs its body in batches and reports ns/op (mean +- 99.9% error).
+ *  - Results go to a stable CSV (benchmark,param,ns_per_op,error,iterations) so runs from
+ *    different commits can be diffed; --compare flags anything slower than --threshold.
+ *  - startup launches fresh JVMs (one op = one launch) and takes the time to first frame
+ *    the game itself reports (Startup); --jar adds build.sh's jar and its archives. It is
+ *    slow, so it only runs when asked for (--filter=startup), and each launch gets a scratch
+ *    user.home so it never touches the real settings and scores.
+ *
+ * Usage: java -Djava.awt.headless=true -cp out com.mycompany.snake.SnakeBench
+ *            [--out=bench.csv] [--compare=baseline.csv] [--threshold=10] [--filter=tick]
+ *            [--warmup=5] [--iterations=10] [--iteration-ms=200] [--jar=build/snake.jar]
+ */
+public final class SnakeBench {
+    private static volatile long sink; // keeps results alive, like JMH's Blackhole
+
+    private record Result(String name, String param, double nsPerOp, double error, int iterations) {
+        String key() { return name + "," + param; }
+    }
+
+    private int warmup = 5, iterations = 10;
+    private long iterationNanos = 200_000_000L;
+    private String filter = "";
+    private String jar;
+    private final List<Result> results = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        SnakeBench b = new SnakeBench();
+        String out = null, compare = null;
+        double threshold = 10;
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--out=")) out = v;
+            else if (a.startsWith("--compare=")) compare = v;
+            else if (a.startsWith("--threshold=")) threshold = Double.parseDouble(v);
+            else if (a.startsWith("--filter=")) b.filter = v;
+            else if (a.startsWith("--warmup=")) b.warmup = Integer.parseInt(v);
+            else if (a.startsWith("--iterations=")) b.iterations = Integer.parseInt(v);
+            else if (a.startsWith("--iteration-ms=")) b.iterationNanos = Long.parseLong(v) * 1_000_000L;
+            else if (a.startsWith("--jar=")) b.jar = v;
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+
+        b.benchTick();
+        b.benchSpawn();
+        b.benchCollision();
+        b.benchPaint();
+        b.benchStartup();
+
+        if (out != null) b.write(Path.of(out));
+        if (compare != null && b.compare(Path.of(compare), threshold)) System.exit(1);
+    }
+
+    // ---- Benchmarks ----
+
+    /** Tick throughput at snake lengths from 3 up to a nearly full board (snake walks a Hamiltonian cycle). */
+    private void benchTick() {
+        int cols = GamePanel.COLS, rows = GamePanel.ROWS, area = cols * rows;
+        int[] cycle = hamiltonianCycle(cols, rows);
+        for (int len : new int[]{3, area / 8, area / 2, area - 16}) {
+            GameEngine e = new GameEngine(cols, rows);
+            int[] body = new int[area];
+            Direction[] next = new Direction[area];
+            for (int i = 0; i < area; i++) next[cycle[i]] = dirTo(cols, cycle[i], cycle[(i + 1) % area]);
+            Runnable place = () -> {
+                // Lay the snake backwards along the cycle so its head can keep following it.
+                for (int i = 0; i < len; i++) body[i] = cycle[(len - 1 - i) % area];
+                e.setSnake(body, len, next[cycle[(len - 2 + area) % area]]);
+                if (e.state() != GameState.RUNNING) e.start();
+            };
+            e.reset();
+            place.run();
+            run("tick", "len=" + len, n -> {
+                long acc = 0;
+                for (long i = 0; i < n; i++) {
+                    e.turn(next[e.snakeCell(0)]);
+                    acc += e.tick();
+                    if (e.state() != GameState.RUNNING || e.snakeLength() > len + 8) { e.reset(); place.run(); }
+                }
+                return acc;
+            });
+        }
+    }
+
+    /** Random free-cell pick (what spawnApple does) as the board fills up. */
+    private void benchSpawn() {
+        for (int pct : new int[]{10, 50, 90, 99}) {
+            Board board = filledBoard(256, 256, pct);
+            SplittableRandom r = new SplittableRandom(42);
+            run("spawn", "occupancy=" + pct + "%", n -> {
+                long acc = 0;
+                for (long i = 0; i < n; i++) acc += board.randomEmpty(r);
+                return acc;
+            });
+        }
+    }
+
+    /** Self/obstacle collision lookups; should stay flat as the snake grows. */
+    private void benchCollision() {
+        for (int pct : new int[]{1, 50, 99}) {
+            Board board = filledBoard(256, 256, pct);
+            int size = board.size();
+            run("collision", "occupancy=" + pct + "%", n -> {
+                long acc = 0;
+                int c = 0;
+                for (long i = 0; i < n; i++) {
+                    c += 40503;                  // stride through cells without an RNG in the loop
+                    if (c >= size) c -= size;
+                    if (board.isBlocked(c)) acc++;
+                }
+                return acc;
+            });
+        }
+    }
+
+    /**
+     * Full-frame paintComponent into an offscreen image, per theme, grid and obstacles on/off.
+     * The panel gets a throwaway store, so the toggles never reach the player's settings.
+     */
+    private void benchPaint() throws IOException {
+        Path dir = Files.createTempDirectory("snake-bench-store");
+        Preferences prefs = Preferences.userRoot().node("com.mycompany.snake.bench");
+        SettingsStore store = new SettingsStore(prefs, dir);
+        try {
+            benchPaint(new GamePanel(store));
+        } finally {
+            store.close();
+            try { prefs.removeNode(); } catch (BackingStoreException e) { System.err.println("could not remove " + prefs + ": " + e); }
+            deleteTree(dir);
+        }
+    }
+
+    private void benchPaint(GamePanel panel) {
+        panel.setSize(GamePanel.COLS * GamePanel.CELL, GamePanel.ROWS * GamePanel.CELL);
+        BufferedImage img = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        for (int theme = 0; theme < panel.themeCount(); theme++) {
+            for (boolean grid : new boolean[]{true, false}) {
+                for (boolean obstacles : new boolean[]{false, true}) {
+                    while (panel.themeIndex() != theme) panel.cycleTheme();
+                    if (panel.isGridShown() != grid) panel.toggleGrid();
+                    if (panel.isObstaclesEnabled() != obstacles) panel.toggleObstacles();
+                    run("paint", "theme=" + theme + " grid=" + grid + " obstacles=" + obstacles, n -> {
+                        for (long i = 0; i < n; i++) {
+                            Graphics2D g = img.createGraphics();
+                            panel.paint(g);
+                            g.dispose();
+                        }
+                        return img.getRGB(0, 0);
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Time to first frame of a new JVM running the game with --exit-after-first-frame: from
+     * the classpath, and with --jar also from the jar alone and with each archive build.sh
+     * left next to it. Without a display the game paints its first frame offscreen.
+     */
+    private void benchStartup() throws IOException {
+        if (!filter.startsWith("startup")) return;
+        Map<String, List<String>> launches = new LinkedHashMap<>();
+        launches.put("classpath", List.of("-cp", System.getProperty("java.class.path"), "com.mycompany.snake.Snake"));
+        if (jar != null) {
+            String base = jar.endsWith(".jar") ? jar.substring(0, jar.length() - 4) : jar;
+            launches.put("jar", List.of("-jar", jar));
+            if (Files.exists(Path.of(base + ".jsa"))) launches.put("jar+cds", List.of("-XX:SharedArchiveFile=" + base + ".jsa", "-jar", jar));
+            if (Files.exists(Path.of(base + ".aot"))) launches.put("jar+aot", List.of("-XX:AOTCache=" + base + ".aot", "-jar", jar));
+        }
+        Path log = Files.createTempFile("snake-startup", ".csv");
+        Path home = Files.createTempDirectory("snake-startup-home");
+        try {
+            for (Map.Entry<String, List<String>> l : launches.entrySet()) {
+                String param = "launch=" + l.getKey();
+                if (!("startup " + param).contains(filter)) continue;
+                List<String> cmd = new ArrayList<>();
+                cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+                cmd.add("-Dsnake.startup.log=" + log);
+                cmd.add("-Duser.home=" + home);
+                cmd.addAll(l.getValue());
+                cmd.add("--exit-after-first-frame");
+                double[] samples = new double[iterations];
+                boolean ok = launch(cmd, log) > 0; // a cold one, for the disk cache
+                for (int i = 0; ok && i < iterations; i++) ok = (samples[i] = launch(cmd, log)) > 0;
+                if (ok) record("startup", param, samples);
+                else System.out.printf("%-10s %-40s failed: %s%n", "startup", param, String.join(" ", cmd));
+            }
+        } finally {
+            Files.deleteIfExists(log);
+            deleteTree(home);
+        }
+    }
+
+    /** One launch; its time to first frame in ns from the row it appended to log, or -1. */
+    private static double launch(List<String> cmd, Path log) throws IOException {
+        try {
+            Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (p.waitFor() != 0) return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        List<String> rows = Files.readAllLines(log);
+        if (rows.size() < 2) return -1;
+        String[] f = rows.get(rows.size() - 1).split(",");
+        return Double.parseDouble(f[f.length - 2]) * 1e6; // total_ms
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        List<Path> all;
+        try (Stream<Path> files = Files.walk(dir)) {
+            all = files.sorted(Comparator.reverseOrder()).toList(); // children before their directory
+        }
+        for (Path f : all) Files.deleteIfExists(f);
+    }
+
+    // ---- Harness ----
+
+    /** body.applyAsLong(n) runs n operations and returns something derived from them. */
+    private void run(String name, String param, LongUnaryOperator body) {
+        if (!(name + " " + param).contains(filter)) return;
+        // Calibrate a batch size that takes ~10ms so timer overhead is negligible.
+        long batch = 1;
+        while (true) {
+            long t0 = System.nanoTime();
+            sink += body.applyAsLong(batch);
+            if (System.nanoTime() - t0 > 10_000_000L || batch > (1L << 40)) break;
+            batch <<= 1;
+        }
+        for (int i = 0; i < warmup; i++) measure(body, batch);
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) samples[i] = measure(body, batch);
+        record(name, param, samples);
+    }
+
+    private void record(String name, String param, double[] samples) {
+        double mean = 0;
+        for (double s : samples) mean += s;
+        mean /= samples.length;
+        double var = 0;
+        for (double s : samples) var += (s - mean) * (s - mean);
+        double sd = samples.length > 1 ? Math.sqrt(var / (samples.length - 1)) : 0;
+        double error = 3.29 * sd / Math.sqrt(samples.length); // ~99.9% normal interval
+        Result r = new Result(name, param, mean, error, samples.length);
+        results.add(r);
+        System.out.printf(Locale.ROOT, "%-10s %-40s %14.2f +- %8.2f ns/op%n", name, param, mean, error);
+    }
+
+    /** One iteration: repeat the batch for iterationNanos and return ns/op. */
+    private double measure(LongUnaryOperator body, long batch) {
+        long ops = 0, start = System.nanoTime(), now;
+        do {
+            sink += body.applyAsLong(batch);
+            ops += batch;
+            now = System.nanoTime();
+        } while (now - start < iterationNanos);
+        return (now - start) / (double) ops;
+    }
+
+    private void write(Path file) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            w.println("benchmark,param,ns_per_op,error,iterations");
+            for (Result r : results)
+                w.printf(Locale.ROOT, "%s,%s,%.3f,%.3f,%d%n", r.name, r.param, r.nsPerOp, r.error, r.iterations);
+        }
+        System.out.println("wrote " + file);
+    }
+
+    /** Prints deltas against a previous CSV; returns true if anything regressed past threshold %. */
+    private boolean compare(Path baseline, double thresholdPct) throws IOException {
+        Map<String, Double> base = new HashMap<>();
+        for (String line : Files.readAllLines(baseline)) {
+            String[] f = line.split(",");
+            if (f.length < 3 || f[0].equals("benchmark")) continue;
+            base.put(f[0] + "," + f[1], Double.parseDouble(f[2]));
+        }
+        boolean regressed = false;
+        for (Result r : results) {
+            Double old = base.get(r.key());
+            if (old == null) continue;
+            double pct = (r.nsPerOp - old) / old * 100;
+            boolean bad = pct > thresholdPct;
+            regressed |= bad;
+            System.out.printf(Locale.ROOT, "%-10s %-40s %+7.1f%%%s%n", r.name, r.param, pct, bad ? "  REGRESSION" : "");
+        }
+        return regressed;
+    }
+
+    // ---- Fixtures ----
+
+    /** A board with roughly pct% of its cells marked SNAKE at random positions. */
+    private static Board filledBoard(int cols, int rows, int pct) {
+        Board b = new Board(cols, rows);
+        SplittableRandom r = new SplittableRandom(7);
+        int target = b.size() * pct / 100;
+        while (b.size() - b.freeCount() < target) b.set(r.nextInt(b.size()), Board.SNAKE);
+        return b;
+    }
+
+    /** Cells of a Hamiltonian cycle: rows snake through columns 1..cols-1, column 0 leads back up. */
+    private static int[] hamiltonianCycle(int cols, int rows) {
+        if (rows % 2 != 0) throw new IllegalArgumentException("needs an even number of rows");
+        int[] order = new int[cols * rows];
+        int n = 0;
+        for (int y = 0; y < rows; y++) {
+            if (y % 2 == 0) for (int x = 1; x < cols; x++) order[n++] = y * cols + x;
+            else for (int x = cols - 1; x >= 1; x--) order[n++] = y * cols + x;
+        }
+        for (int y = rows - 1; y >= 0; y--) order[n++] = y * cols;
+        return order;
+    }
+
+    private static Direction dirTo(int cols, int from, int to) {
+        int dx = to % cols - from % cols, dy = to / cols - from / cols;
+        for (Direction d : Direction.values()) if (d.dx == dx && d.dy == dy) return d;
+        throw new IllegalStateException("cells not adjacent: " + from + " -> " + to);
+    }
+}
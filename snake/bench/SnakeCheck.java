@@ -0,0 +1,235 @@
+package com.mycompany.snake;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+/**
+ * SnakeCheck
+ * Headless end-to-end checks behind claims the code relies on, runnable after any change
+ * to the rules or the wire/log formats.
+ * Design notes:
+ *  - Each check plays seeded games through the real encoders and decoders and compares the
+ *    decoded state with the original cell for cell, so a format change that drops or
+ *    misorders an event fails here rather than as a drifting client.
+ *  - Same shape as SnakeBench: plain javac, --filter picks checks by name; any mismatch is
+ *    printed and the run exits non-zero.
+ *  - mirror: an Arena ticking with bots and joins/leaves, every tick sent as a DELTA through
+ *    Protocol.Writer and decoded by Protocol.Reader into a mirror that joined by WELCOME.
+ *  - log: a GameEngine streaming to an EventLog, against a viewer that reads along and one
+ *    that opens the log halfway; enough --ticks (millions) make the log wrap.
+ *  - batch: BatchRunner's per-game results on one thread and on several, and a few games
+ *    re-run alone from their seed; all must agree.
+ *
+ * Usage: java -cp out com.mycompany.snake.SnakeCheck [--filter=mirror|log|batch] [--ticks=20000]
+ *            [--games=200]
+ */
+public final class SnakeCheck {
+    private static final int MAX_REPORTED = 3; // mismatches printed per check
+
+    private String filter = "";
+    private long ticks = 20_000;
+    private int games = 200;
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SnakeCheck c = new SnakeCheck();
+        for (String a : args) {
+            String v = a.substring(a.indexOf('=') + 1);
+            if (a.startsWith("--filter=")) c.filter = v;
+            else if (a.startsWith("--ticks=")) c.ticks = Long.parseLong(v);
+            else if (a.startsWith("--games=")) c.games = Integer.parseInt(v);
+            else throw new IllegalArgumentException("unknown option " + a);
+        }
+
+        c.checkMirror();
+        c.checkLog();
+        c.checkBatch();
+
+        if (!c.failures.isEmpty()) {
+            System.out.println(c.failures.size() + " check(s) failed: " + String.join(", ", c.failures));
+            System.exit(1);
+        }
+    }
+
+    private boolean selected(String name) { return name.contains(filter); }
+
+    private void report(String check, long mismatches, String detail) {
+        System.out.println((mismatches == 0 ? "ok   " : "FAIL ") + check + ": " + detail
+                + (mismatches == 0 ? "" : ", " + mismatches + " mismatches"));
+        if (mismatches != 0) failures.add(check);
+    }
+
+    // ---- mirror: server Arena vs. a client decoding its deltas ----
+
+    private void checkMirror() {
+        if (!selected("mirror")) return;
+        for (boolean wrap : new boolean[] { false, true }) {
+            int cols = 20, rows = 12, players = 6;
+            Arena server = new Arena(cols, rows, wrap, 42);
+            Protocol.Writer w = new Protocol.Writer(server);
+            Protocol.Reader r = new Protocol.Reader();
+            for (int i = 0; i < players; i++) server.join();
+            SplittableRandom rnd = new SplittableRandom(1);
+            Arena client = null;
+            long bytes = 0, deltas = 0, mismatches = 0;
+            for (long t = 0; t < ticks; t++) {
+                if (t == 50) client = welcome(w.reset().welcome(0, 100_000_000L).frame(), r); // joins late
+                for (int id = 0; id < players; id++) {
+                    if (!server.isAlive(id) || rnd.nextInt(3) != 0) continue;
+                    Direction d = BotSwarm.greedy(server, id);
+                    if (d != null) server.turn(id, d, (int) t, 0);
+                }
+                if (t % 500 == 9) server.join();
+                w.reset().beginDelta();
+                if (t % 500 == 7) server.leave(3, w);
+                server.tick(w);
+                ByteBuffer f = w.end().frame();
+                bytes += f.remaining();
+                if (client == null) continue;
+                f.position(4);
+                client.setTicks(Protocol.getVarLong(f));
+                r.events(f, client, client.mirror);
+                deltas++;
+                String diff = diff(server, client);
+                if (diff != null && mismatches++ < MAX_REPORTED) System.out.println("  tick " + t + ": " + diff);
+            }
+            report(wrap ? "mirror/wrap" : "mirror/walled", mismatches,
+                    String.format("%d deltas decoded, %.1f bytes/tick", deltas, (double) bytes / ticks));
+        }
+    }
+
+    /** The mirror a client builds from a WELCOME frame, as NetClient does. */
+    private static Arena welcome(ByteBuffer f, Protocol.Reader r) {
+        f.position(4);
+        f.get(); // player id
+        int cols = f.getShort() & 0xFFFF, rows = f.getShort() & 0xFFFF;
+        Arena a = new Arena(cols, rows, (f.get() & 1) != 0, 0);
+        Protocol.getVarLong(f); // tick length
+        a.setTicks(Protocol.getVarLong(f));
+        r.events(f, a, a.mirror);
+        return a;
+    }
+
+    // ---- log: a streamed game vs. spectators reading the EventLog ----
+
+    private static final int[] LOG_MODES = {
+        GameMode.CLASSIC | GameMode.OBSTACLES.bit(),
+        GameMode.CLASSIC | GameMode.WRAP.bit() | GameMode.OBSTACLES.bit(),
+        GameMode.CLASSIC | GameMode.MOVING_OBSTACLES.bit() | GameMode.PORTALS.bit() | GameMode.SHRINK.bit(),
+    };
+
+    private void checkLog() throws IOException, InterruptedException {
+        if (!selected("log")) return;
+        int cols = 30, rows = 20;
+        Path file = Files.createTempFile("snake-check", EventLog.EXTENSION);
+        try {
+            GameEngine e = new GameEngine(cols, rows);
+            EventLog.Writer w = EventLog.Writer.create(file, cols, rows);
+            e.setStream(w);
+            EventLog.Reader r = EventLog.Reader.open(file, 1000), late = null;
+            GameEngine viewer = new GameEngine(cols, rows), lateViewer = new GameEngine(cols, rows);
+            SplittableRandom rnd = new SplittableRandom(3);
+            long t = 0, games = 0, mismatches = 0;
+            while (t < ticks) {
+                e.setModes(LOG_MODES[(int) (games % LOG_MODES.length)]);
+                e.reset(games++ * 7919);
+                e.start();
+                while (e.state() == GameState.RUNNING && t < ticks) {
+                    Direction d = Direction.values()[rnd.nextInt(4)];
+                    int to = e.neighbor(e.snakeCell(0), d);
+                    if (rnd.nextInt(6) == 0 && to != GameEngine.NO_CELL && !e.isBlocked(to)) e.turn(d);
+                    if (rnd.nextInt(2000) == 0) e.setWrapWalls(!e.isWrapWalls()); // mid-game toggle
+                    e.tick();
+                    t++;
+                    if (t % 1000 == 0) { e.togglePause(); e.togglePause(); }
+                    if (t == ticks / 2) late = EventLog.Reader.open(file, 1000);
+                    if (t % 5 != 0 && e.state() == GameState.RUNNING) continue;
+                    drain(r, viewer);
+                    String diff = diff(e, viewer);
+                    if (diff != null && mismatches++ < MAX_REPORTED) System.out.println("  tick " + t + ": " + diff);
+                }
+            }
+            drain(r, viewer);
+            if (diff(e, viewer) != null) mismatches++;
+            report("log", mismatches, String.format("%d ticks, %d games, %d keyframes, %d wraps, %d resyncs",
+                    t, games, w.keyframes(), w.wraps(), r.syncs()));
+            if (late != null) {
+                drain(late, lateViewer);
+                String diff = diff(e, lateViewer);
+                if (diff != null) System.out.println("  " + diff);
+                report("log/late", diff == null ? 0 : 1, "opened at tick " + ticks / 2 + ", " + late.syncs() + " resyncs");
+                late.close();
+            }
+            r.close();
+            w.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void drain(EventLog.Reader r, GameEngine viewer) { while (r.next(viewer) != 0) { } }
+
+    /** First difference between a game and its viewer, or null. */
+    private static String diff(GameEngine a, GameEngine b) {
+        if (a.state() != b.state() || a.ticks() != b.ticks()) return a.state() + "@" + a.ticks() + " vs " + b.state() + "@" + b.ticks();
+        if (a.score() != b.score() || a.speedMs() != b.speedMs()) return "score/speed " + a.score() + "/" + a.speedMs() + " vs " + b.score() + "/" + b.speedMs();
+        if (a.apple() != b.apple() || a.goldenApple() != b.goldenApple())
+            return "apples " + a.apple() + "/" + a.goldenApple() + " vs " + b.apple() + "/" + b.goldenApple();
+        if (a.direction() != b.direction() || a.isWrapWalls() != b.isWrapWalls()) return "direction or wrap";
+        if (a.snakeLength() != b.snakeLength()) return "length " + a.snakeLength() + " vs " + b.snakeLength();
+        for (int i = 0; i < a.snakeLength(); i++) if (a.snakeCell(i) != b.snakeCell(i)) return "snake cell " + i;
+        for (int c = 0; c < a.cols() * a.rows(); c++)
+            if (a.cellKind(c) != b.cellKind(c)) return "cell " + c + " " + a.cellKind(c) + " vs " + b.cellKind(c);
+        return null;
+    }
+
+    // ---- batch: BatchRunner results whatever the thread count ----
+
+    private void checkBatch() {
+        if (!selected("batch")) return;
+        int threads = Math.max(3, Runtime.getRuntime().availableProcessors());
+        for (String controller : new String[] { "greedy", "autopilot" }) {
+            LongFunction<BatchRunner> from = seed -> new BatchRunner().board(16, 16).seed(seed)
+                    .modes(GameMode.CLASSIC | GameMode.OBSTACLES.bit()).controllers(BatchRunner.controller(controller));
+            BatchRunner.Stats one = from.apply(1).threads(1).run(games), many = from.apply(1).threads(threads).run(games);
+            long mismatches = 0;
+            for (int g = 0; g < games; g++) {
+                String diff = diff(one, g, many, g);
+                if (diff == null && g % 50 == 0) diff = diff(one, g, from.apply(1 + g).threads(1).run(1), 0); // alone
+                if (diff != null && mismatches++ < MAX_REPORTED) System.out.println("  game " + g + ": " + diff);
+            }
+            report("batch/" + controller, mismatches, String.format("%d games on 1 and %d threads, mean score %.1f",
+                    games, threads, one.meanScore()));
+        }
+    }
+
+    private static String diff(BatchRunner.Stats a, int i, BatchRunner.Stats b, int j) {
+        if (a.scores[i] == b.scores[j] && a.ticks[i] == b.ticks[j] && a.endStates[i] == b.endStates[j]) return null;
+        return Arrays.asList(a.scores[i], a.ticks[i], a.endStates[i]) + " vs " + Arrays.asList(b.scores[j], b.ticks[j], b.endStates[j]);
+    }
+
+    /** First difference between two arenas, or null. */
+    private static String diff(Arena a, Arena b) {
+        if (a.ticks() != b.ticks()) return "tick " + a.ticks() + " vs " + b.ticks();
+        if (a.apple() != b.apple() || a.goldenApple() != b.goldenApple())
+            return "apples " + a.apple() + "/" + a.goldenApple() + " vs " + b.apple() + "/" + b.goldenApple();
+        for (int c = 0; c < a.cols() * a.rows(); c++)
+            if (a.cellKind(c) != b.cellKind(c)) return "cell " + c + " " + a.cellKind(c) + " vs " + b.cellKind(c);
+        for (int id = 0; id < Arena.MAX_PLAYERS; id++) {
+            if (a.isAlive(id) != b.isAlive(id)) return "player " + id + " alive " + a.isAlive(id) + " vs " + b.isAlive(id);
+            if (!a.isAlive(id)) continue;
+            if (a.score(id) != b.score(id)) return "player " + id + " score " + a.score(id) + " vs " + b.score(id);
+            if (a.snakeLength(id) != b.snakeLength(id)) return "player " + id + " length " + a.snakeLength(id) + " vs " + b.snakeLength(id);
+            for (int i = 0; i < a.snakeLength(id); i++)
+                if (a.snakeCell(id, i) != b.snakeCell(id, i)) return "player " + id + " cell " + i;
+        }
+        return null;
+    }
+}
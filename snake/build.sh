@@ -0,0 +1,53 @@
+#!/bin/sh
+# build.sh
+# Builds the runnable jar plus the class archives that make it start fast, into build/:
+#   snake.jar   the game: java -jar build/snake.jar
+#   snake.jsa   AppCDS archive of every class a launch loads up to its first frame, already
+#               parsed and verified, mapped in at startup instead (JDK 13+)
+#   snake.aot   AOT cache (JDK 24+, JEP 483): those classes loaded and linked as well
+#   snake       launcher that passes the best of those to java, with any game options
+# Design notes:
+#  - Archives come from a training launch (--exit-after-first-frame) under a scratch
+#    user.home, so they don't depend on, or touch, anyone's settings and scores. Without a
+#    display the launch paints its first frame offscreen, so a build machine can train too.
+#  - An archive only fits the JDK that made it. A different JDK ignores it (with a warning)
+#    and starts as usual; rerun build.sh after a JDK update.
+#  - Time to first frame: java -cp out com.mycompany.snake.SnakeBench --filter=startup
+#    --jar=build/snake.jar, with --out/--compare to keep it from regressing.
+set -eu
+cd "$(dirname "$0")"
+bin=${JAVA_HOME:+$JAVA_HOME/bin/}
+out=build
+
+rm -rf "$out"
+mkdir -p "$out/classes"
+"${bin}javac" -encoding UTF-8 -d "$out/classes" *.java
+"${bin}jar" --create --file "$out/snake.jar" --main-class com.mycompany.snake.Snake -C "$out/classes" .
+rm -rf "$out/classes"
+
+jar="$(pwd)/$out/snake.jar" # absolute, as the launcher will pass it
+train="-Duser.home=$out/train"
+
+echo "Training the CDS archive"
+"${bin}java" -XX:ArchiveClassesAtExit="$out/snake.jsa" -Xlog:cds=off $train -jar "$jar" --exit-after-first-frame
+
+if "${bin}java" -XX:AOTMode=off -version >/dev/null 2>&1; then
+    echo "Training the AOT cache"
+    "${bin}java" -XX:AOTMode=record -XX:AOTConfiguration="$out/snake.aotconf" $train -jar "$jar" --exit-after-first-frame
+    "${bin}java" -XX:AOTMode=create -XX:AOTConfiguration="$out/snake.aotconf" -XX:AOTCache="$out/snake.aot" -jar "$jar"
+    rm -f "$out/snake.aotconf"
+fi
+rm -rf "$out/train"
+
+cat > "$out/snake" <<'EOF'
+#!/bin/sh
+# Starts the game with the class archive build.sh made next to it.
+dir=$(cd "$(dirname "$0")" && pwd)
+java=${JAVA_HOME:+$JAVA_HOME/bin/}java
+if [ -f "$dir/snake.aot" ]; then
+    exec "$java" -XX:AOTCache="$dir/snake.aot" -jar "$dir/snake.jar" "$@"
+fi
+exec "$java" -XX:SharedArchiveFile="$dir/snake.jsa" -Xshare:auto -jar "$dir/snake.jar" "$@"
+EOF
+chmod +x "$out/snake"
+ls -l "$out"